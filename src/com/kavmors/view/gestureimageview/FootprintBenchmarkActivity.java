@@ -0,0 +1,134 @@
+package com.kavmors.view.gestureimageview;
+
+import java.util.ArrayList;
+
+import com.kavmors.view.widget.GestureImageView;
+import com.kavmors.view.widget.OnTouchGestureListener;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.view.ViewCompat;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.widget.TextView;
+
+/**
+ * Measures inflation time and retained heap of each GestureImageView in a grid, on a device.
+ * "lazy" inflates views as they are now, where touch machinery and other helpers are created on first use.
+ * "eager" inflates views and then creates all of them at once, as each view did in its constructor before:
+ * OnTouchGestureListener with its GestureDetector and Handlers, zoom integrators, touch predictors,
+ * the layer controller, the listener dispatcher and the nested scrolling helper.
+ * OnTouchGestureListener is also measured alone. Results are shown and logged with tag FootprintBenchmark:
+ * <pre>
+ * adb shell am start -n com.kavmors.view.gestureimageview/.FootprintBenchmarkActivity
+ * adb logcat -s FootprintBenchmark
+ * </pre>
+ */
+public class FootprintBenchmarkActivity extends Activity {
+	private static final String TAG = "FootprintBenchmark";
+	private static final int COUNT = 300;		//views of a large thumbnail grid
+	private static final int ROUNDS = 3;		//after a round of warm up
+
+	private TextView mText;
+	private final StringBuilder mReport = new StringBuilder();
+
+	private interface Creator {
+		Object create(LayoutInflater inflater);
+	}
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		mText = new TextView(this);
+		mText.setText("Measuring...");
+		setContentView(mText);
+		mText.post(new Runnable() {		//after the window is shown
+			@Override
+			public void run() {
+				runBenchmark();
+			}
+		});
+	}
+
+	private void runBenchmark() {
+		Creator lazy = new Creator() {
+			@Override
+			public Object create(LayoutInflater inflater) {
+				return inflater.inflate(R.layout.footprint_item, null);
+			}
+		};
+		Creator eager = new Creator() {
+			@Override
+			public Object create(LayoutInflater inflater) {
+				GestureImageView view = (GestureImageView) inflater.inflate(R.layout.footprint_item, null);
+				createHelpers(view);
+				return view;
+			}
+		};
+		Creator listener = new Creator() {
+			@Override
+			public Object create(LayoutInflater inflater) {
+				return new OnTouchGestureListener(FootprintBenchmarkActivity.this);
+			}
+		};
+		print(String.format("%-24s %10s %10s", "per instance", "bytes", "us"));
+		LayoutInflater inflater = getLayoutInflater();
+		for (int round = 0; round <= ROUNDS; round++) {
+			boolean warmUp = round == 0;
+			measure("lazy", lazy, inflater, warmUp);
+			measure("eager", eager, inflater, warmUp);
+			measure("OnTouchGestureListener", listener, inflater, warmUp);
+		}
+	}
+
+	//Create what a view used to create in its constructor, through the calls that create them now
+	private static void createHelpers(GestureImageView view) {
+		long now = SystemClock.uptimeMillis();
+		MotionEvent event = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN, 0, 0, 0);
+		view.dispatchTouchEvent(event);
+		event.setAction(MotionEvent.ACTION_CANCEL);
+		view.dispatchTouchEvent(event);
+		event.recycle();
+		view.setTouchPredictionTime(16);
+		view.setTouchPredictionTime(0);		//predictors are kept
+		view.setGestureLayerType(GestureImageView.LAYER_TYPE_HARDWARE);
+		view.setGestureLayerType(GestureImageView.LAYER_TYPE_NONE);		//controller is kept
+		view.setListenerDispatchMode(GestureImageView.DISPATCH_IMMEDIATE);
+		view.setNestedScrollingEnabled(true);
+		view.startNestedScroll(ViewCompat.SCROLL_AXIS_VERTICAL);
+		view.stopNestedScroll();
+	}
+
+	//Time of creating COUNT instances, and heap they retain, per instance
+	private void measure(String name, Creator creator, LayoutInflater inflater, boolean warmUp) {
+		ArrayList<Object> kept = new ArrayList<Object>(COUNT);
+		long before = usedHeap();
+		long start = System.nanoTime();
+		for (int i = 0; i < COUNT; i++) {
+			kept.add(creator.create(inflater));
+		}
+		long nanos = System.nanoTime() - start;
+		long after = usedHeap();
+		if (!warmUp) {
+			print(String.format("%-24s %10d %10.1f", name, (after - before) / COUNT, nanos / 1000.0 / COUNT));
+		}
+		kept.clear();
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			System.runFinalization();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private void print(String line) {
+		Log.i(TAG, line);
+		mReport.append(line).append('\n');
+		mText.setText(mReport);
+	}
+}
@@ -0,0 +1,114 @@
+package com.kavmors.view.widget;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+/**
+ * A thread-safe LRU cache of decoded bitmaps, bounded by bytes. It can be shared by views that show images of the same set.
+ * Bitmaps evicted are not recycled, since they may still be drawn by a view.
+ */
+public class BitmapCache {
+	private final LinkedHashMap<String, Bitmap> mMap = new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+	private long mMaxBytes;
+	private long mBytes = 0;
+
+	/**
+	 * Create a cache.
+	 * @param maxBytes Maximal bytes of bitmaps held by this cache
+	 */
+	public BitmapCache(long maxBytes) {
+		mMaxBytes = maxBytes;
+	}
+
+	/**
+	 * Create a cache that holds at most 1/8 of the maximal heap memory.
+	 * @return The cache
+	 */
+	public static BitmapCache createDefault() {
+		return new BitmapCache(Runtime.getRuntime().maxMemory() / 8);
+	}
+
+	/**
+	 * Get a bitmap and mark it as recently used.
+	 * @param key The key of bitmap
+	 * @return The bitmap, or null if it is not cached
+	 */
+	public synchronized Bitmap get(String key) {
+		return mMap.get(key);
+	}
+
+	/**
+	 * Put a bitmap, and evict the least recently used bitmaps if the cache is full.
+	 * A bitmap larger than the maximal bytes is not cached.
+	 * @param key The key of bitmap
+	 * @param bitmap The bitmap
+	 */
+	public synchronized void put(String key, Bitmap bitmap) {
+		long size = sizeOf(bitmap);
+		if (size > mMaxBytes) {
+			return;
+		}
+		Bitmap previous = mMap.put(key, bitmap);
+		if (previous != null) {
+			mBytes -= sizeOf(previous);
+		}
+		mBytes += size;
+		trimToSize(mMaxBytes);
+	}
+
+	/**
+	 * Remove a bitmap.
+	 * @param key The key of bitmap
+	 * @return The bitmap removed, or null if it is not cached
+	 */
+	public synchronized Bitmap remove(String key) {
+		Bitmap previous = mMap.remove(key);
+		if (previous != null) {
+			mBytes -= sizeOf(previous);
+		}
+		return previous;
+	}
+
+	/**
+	 * Evict the least recently used bitmaps until the cache holds no more than maxBytes.
+	 * @param maxBytes Bytes to keep
+	 */
+	public synchronized void trimToSize(long maxBytes) {
+		Iterator<Map.Entry<String, Bitmap>> iterator = mMap.entrySet().iterator();
+		while (mBytes > maxBytes && iterator.hasNext()) {
+			Bitmap bitmap = iterator.next().getValue();
+			iterator.remove();
+			mBytes -= sizeOf(bitmap);
+		}
+	}
+
+	/**
+	 * Remove all bitmaps.
+	 */
+	public void clear() {
+		trimToSize(0);
+	}
+
+	/**
+	 * Get bytes of bitmaps held by this cache.
+	 * @return Bytes
+	 */
+	public synchronized long size() {
+		return mBytes;
+	}
+
+	/**
+	 * Get maximal bytes of this cache.
+	 * @return Bytes
+	 */
+	public synchronized long maxSize() {
+		return mMaxBytes;
+	}
+
+	private static long sizeOf(Bitmap bitmap) {
+		return (long) bitmap.getRowBytes() * bitmap.getHeight();
+	}
+}
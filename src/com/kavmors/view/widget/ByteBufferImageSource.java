@@ -0,0 +1,76 @@
+package com.kavmors.view.widget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import android.annotation.TargetApi;
+import android.graphics.BitmapRegionDecoder;
+import android.os.Build.VERSION_CODES;
+
+/**
+ * An {@link ImageSource} backed by a {@link ByteBuffer}, which may be direct, heap or mapped.
+ * Region decoders decode a heap buffer in place. A direct or mapped buffer is streamed to each region decoder
+ * without a copy in Java heap, and the decoder keeps the encoded data in native memory while it is alive.
+ */
+public class ByteBufferImageSource implements ImageSource {
+	private ByteBuffer mBuffer;
+
+	/**
+	 * Create a source over the content between position and limit of buffer. The buffer is shared, not copied.
+	 * @param buffer The buffer holding encoded image
+	 */
+	public ByteBufferImageSource(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException("ByteBuffer cannot be null");
+		}
+		mBuffer = buffer.slice();
+	}
+
+	@Override
+	public long length() {
+		return mBuffer.capacity();
+	}
+
+	@Override
+	public int read(long position, byte[] buffer, int offset, int count) throws IOException {
+		ByteBuffer source = buffer();
+		if (position >= source.capacity()) {
+			return -1;
+		}
+		ByteBuffer view = source.duplicate();		//position of a duplicate is independent, so reads can be concurrent
+		view.position((int) position);
+		count = Math.min(count, view.remaining());
+		view.get(buffer, offset, count);
+		return count;
+	}
+
+	@Override
+	public InputStream openStream() throws IOException {
+		return new ByteBufferInputStream(buffer());
+	}
+
+	@Override
+	@TargetApi(VERSION_CODES.GINGERBREAD_MR1)
+	public BitmapRegionDecoder newRegionDecoder() throws IOException {
+		ByteBuffer source = buffer();
+		if (source.hasArray()) {
+			//decode the backing array in place
+			return BitmapRegionDecoder.newInstance(source.array(), source.arrayOffset(), source.capacity(), false);
+		}
+		return BitmapRegionDecoder.newInstance(new ByteBufferInputStream(source), false);
+	}
+
+	@Override
+	public void close() {
+		mBuffer = null;
+	}
+
+	private ByteBuffer buffer() throws IOException {
+		ByteBuffer buffer = mBuffer;
+		if (buffer == null) {
+			throw new IOException("ImageSource has been closed");
+		}
+		return buffer;
+	}
+}
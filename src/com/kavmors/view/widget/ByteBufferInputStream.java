@@ -0,0 +1,63 @@
+package com.kavmors.view.widget;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream that reads from a {@link ByteBuffer} without copying it.
+ */
+class ByteBufferInputStream extends InputStream {
+	private final ByteBuffer mBuffer;
+
+	/**
+	 * @param buffer The buffer to read. Its content between position and limit is read, and it is never modified.
+	 */
+	ByteBufferInputStream(ByteBuffer buffer) {
+		mBuffer = buffer.duplicate();
+	}
+
+	@Override
+	public int read() {
+		return mBuffer.hasRemaining()? mBuffer.get() & 0xff: -1;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int count) {
+		if (count == 0) {
+			return 0;
+		}
+		if (!mBuffer.hasRemaining()) {
+			return -1;
+		}
+		count = Math.min(count, mBuffer.remaining());
+		mBuffer.get(buffer, offset, count);
+		return count;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, mBuffer.remaining()));
+		mBuffer.position(mBuffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return mBuffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readLimit) {
+		mBuffer.mark();
+	}
+
+	@Override
+	public synchronized void reset() {
+		mBuffer.reset();
+	}
+}
@@ -0,0 +1,164 @@
+package com.kavmors.view.widget;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A thread-safe pool of decoders of one source, such as {@link android.graphics.BitmapRegionDecoder}.
+ * A decoder decodes one region at a time, so tiles are decoded on several cores by several decoders of the same source.
+ * Decoders are created when needed, up to the maximal size, and a thread waits when all of them are busy.
+ * It is pure Java and does not depend on Android framework.
+ * @param <D> Type of decoder
+ */
+public class DecoderPool<D> {
+	/**
+	 * Creator of decoders for a pool.
+	 * @param <D> Type of decoder
+	 */
+	public interface Factory<D> {
+		//Called out of lock of pool, so several decoders can be opened at once
+		D create() throws IOException;
+		void recycle(D decoder);
+	}
+
+	private final Factory<D> mFactory;
+	private final int mMaxSize;
+	private final ArrayList<D> mIdle = new ArrayList<D>();
+	private int mSize = 0;		//decoders that are idle, busy or being created
+	private boolean mClosed = false;
+
+	/**
+	 * Create a pool.
+	 * @param factory The creator of decoders
+	 * @param maxSize Maximal count of decoders
+	 */
+	public DecoderPool(Factory<D> factory, int maxSize) {
+		mFactory = factory;
+		mMaxSize = Math.max(1, maxSize);
+	}
+
+	/**
+	 * Calculate a size of pool for a core of each decoder, that all decoders take no more than 1/8 of the maximal heap memory.
+	 * @param bytesPerDecoder Bytes that a decoder holds while decoding, including the bitmap it decodes
+	 * @return Size of pool, at least 1
+	 */
+	public static int defaultSize(long bytesPerDecoder) {
+		long budget = Runtime.getRuntime().maxMemory() / 8;
+		long byMemory = bytesPerDecoder <= 0? Integer.MAX_VALUE: budget / bytesPerDecoder;
+		return (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), byMemory));
+	}
+
+	/**
+	 * Get a decoder that no other thread uses, which must be given back by {@link #release}.
+	 * It waits if all decoders are busy and the pool is full.
+	 * @return The decoder, or null if the pool is closed or the thread is interrupted
+	 * @throws IOException If a new decoder cannot be created
+	 */
+	public D acquire() throws IOException {
+		synchronized (this) {
+			while (true) {
+				if (mClosed) {
+					return null;
+				}
+				if (!mIdle.isEmpty()) {
+					return mIdle.remove(mIdle.size() - 1);
+				}
+				if (mSize < mMaxSize) {
+					mSize++;
+					break;
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+		}
+		try {
+			return mFactory.create();
+		} catch (IOException e) {
+			synchronized (this) {
+				mSize--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Give back a decoder got by {@link #acquire}. It is recycled if the pool has been closed.
+	 * @param decoder The decoder
+	 */
+	public synchronized void release(D decoder) {
+		if (mClosed) {
+			mFactory.recycle(decoder);
+			mSize--;
+		} else {
+			mIdle.add(decoder);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Recycle idle decoders to free memory they hold. Busy ones are kept, and decoders are created again when needed.
+	 * @return Count of decoders recycled
+	 */
+	public int trim() {
+		ArrayList<D> idle;
+		synchronized (this) {
+			if (mIdle.isEmpty()) {
+				return 0;
+			}
+			idle = new ArrayList<D>(mIdle);
+			mIdle.clear();
+			mSize -= idle.size();
+			notifyAll();
+		}
+		for (int i = 0; i < idle.size(); i++) {		//out of lock, recycling may be slow
+			mFactory.recycle(idle.get(i));
+		}
+		return idle.size();
+	}
+
+	/**
+	 * Recycle idle decoders, and wait until busy ones are given back and recycled.
+	 * Threads waiting in {@link #acquire} get null. Should be called in background.
+	 */
+	public synchronized void close() {
+		mClosed = true;
+		for (int i = 0; i < mIdle.size(); i++) {
+			mFactory.recycle(mIdle.get(i));
+		}
+		mSize -= mIdle.size();
+		mIdle.clear();
+		notifyAll();
+		boolean interrupted = false;
+		while (mSize > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Get count of decoders that have been created and not recycled.
+	 * @return Count of decoders
+	 */
+	public synchronized int size() {
+		return mSize;
+	}
+
+	/**
+	 * Get maximal count of decoders.
+	 * @return Maximal count
+	 */
+	public int getMaxSize() {
+		return mMaxSize;
+	}
+}
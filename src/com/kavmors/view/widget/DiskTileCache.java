@@ -0,0 +1,361 @@
+package com.kavmors.view.widget;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * A thread-safe LRU cache of decoded tiles on disk, under the {@link BitmapCache} in memory. Pixels are stored
+ * uncompressed in slots of a file that is mapped into memory, so reading a tile back is a copy of memory,
+ * much faster than decoding it again. It is bounded by bytes and survives restart of process.
+ * <p>
+ * The index of tiles is written to a temporary file and renamed over the old one, and a slot is reused only after
+ * an index without it has been written, so the index never points to pixels of another tile after a crash.
+ * Tiles put after the last index written are lost in a crash, which is only a miss the next time.
+ */
+public class DiskTileCache {
+	private static final String TAG = "DiskTileCache";
+
+	/** Bytes of a slot. A bitmap larger than it, such as an ARGB_8888 bitmap over 512x512, is not cached. */
+	public static final int SLOT_SIZE = 512 * 512 * 4;
+
+	private static final String DATA_FILE = "tiles.dat";
+	private static final String INDEX_FILE = "tiles.idx";
+	private static final String INDEX_TEMP_FILE = "tiles.idx.tmp";
+	private static final int INDEX_MAGIC = 0x544c4331;		//"TLC1"
+	private static final int COMMIT_INTERVAL = 16;		//tiles put between index writes
+
+	private final File mDir;
+	private final int mSlotCount;
+	private RandomAccessFile mDataFile;
+	private MappedByteBuffer mData;
+	private final LinkedHashMap<String, Entry> mMap = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final ArrayList<Integer> mFreeSlots = new ArrayList<Integer>();
+	private final ArrayList<Integer> mReleasedSlots = new ArrayList<Integer>();		//free after the next index is written
+	private int mUncommitted = 0;
+	private long mHitCount = 0, mMissCount = 0;
+
+	private static class Entry {
+		final int slot;
+		final int width, height;
+		final Bitmap.Config config;
+		final int bytes;
+
+		Entry(int slot, int width, int height, Bitmap.Config config, int bytes) {
+			this.slot = slot;
+			this.width = width;
+			this.height = height;
+			this.config = config;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Open a cache in a directory, with the tiles that were cached there before. Should be called in background.
+	 * @param dir The directory, which is created if not exists
+	 * @param maxBytes Maximal bytes of the cache file, rounded down to whole slots and at most 2GB
+	 * @throws IOException If the cache file cannot be created or mapped
+	 */
+	public DiskTileCache(File dir, long maxBytes) throws IOException {
+		mDir = dir;
+		mSlotCount = (int) Math.max(1, Math.min(maxBytes, Integer.MAX_VALUE) / SLOT_SIZE);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create directory " + dir);
+		}
+		RandomAccessFile file = new RandomAccessFile(new File(dir, DATA_FILE), "rw");
+		try {
+			long size = (long) mSlotCount * SLOT_SIZE;
+			if (file.length() != size) {
+				file.setLength(size);		//sparse, disk is used when slots are written
+			}
+			mData = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		mDataFile = file;
+		readIndex();
+	}
+
+	/**
+	 * Get the key of an image file, from its path, length and time of last modification.
+	 * A key of tile is made by appending sample size and position of tile to it.
+	 * @param file The image file
+	 * @return The key
+	 */
+	public static String keyOf(File file) {
+		return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+	}
+
+	/**
+	 * Get a tile and mark it as recently used.
+	 * @param key The key of tile
+	 * @return A new bitmap with pixels of tile, or null if it is not cached
+	 */
+	public synchronized Bitmap get(String key) {
+		Entry entry = mData == null? null: mMap.get(key);
+		if (entry == null) {
+			mMissCount++;
+			return null;
+		}
+		Bitmap bitmap;
+		try {
+			bitmap = Bitmap.createBitmap(entry.width, entry.height, entry.config);
+		} catch (OutOfMemoryError e) {
+			Log.w(TAG, "Out of memory for tile " + entry.width + "x" + entry.height, e);
+			return null;
+		}
+		if (bitmap.getRowBytes() * bitmap.getHeight() != entry.bytes) {		//layout of pixels differs, drop it
+			remove(key);
+			mMissCount++;
+			return null;
+		}
+		bitmap.copyPixelsFromBuffer(slot(entry.slot, entry.bytes));
+		mHitCount++;
+		return bitmap;
+	}
+
+	/**
+	 * Put a tile, and evict the least recently used tiles if the cache is full. Tiles are evicted in batches,
+	 * so a full cache writes the index once for a batch of tiles put. A bitmap larger than {@link #SLOT_SIZE}
+	 * is not cached.
+	 * @param key The key of tile
+	 * @param bitmap The bitmap
+	 */
+	public synchronized void put(String key, Bitmap bitmap) {
+		int bytes = bitmap.getRowBytes() * bitmap.getHeight();
+		if (mData == null || bytes > SLOT_SIZE || bitmap.getConfig() == null || mMap.containsKey(key)) {
+			return;
+		}
+		if (mFreeSlots.isEmpty()) {
+			evict();
+			commit();		//evicted slots are not referred by index any more, so they can be written
+		}
+		if (mFreeSlots.isEmpty()) {
+			return;		//index cannot be written
+		}
+		int slot = mFreeSlots.remove(mFreeSlots.size() - 1);
+		bitmap.copyPixelsToBuffer(slot(slot, bytes));
+		mMap.put(key, new Entry(slot, bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), bytes));
+		if (++mUncommitted >= COMMIT_INTERVAL) {
+			if (mFreeSlots.isEmpty()) {
+				evict();		//slots of the next batch are freed by the same index write
+			}
+			commit();
+		}
+	}
+
+	//Release slots of the least recently used tiles, a batch of COMMIT_INTERVAL. Nothing more is evicted
+	//while released slots are waiting for an index write, such as after the write failed
+	private void evict() {
+		if (!mReleasedSlots.isEmpty()) {
+			return;
+		}
+		Iterator<Map.Entry<String, Entry>> iterator = mMap.entrySet().iterator();
+		for (int i = 0; i < COMMIT_INTERVAL && iterator.hasNext(); i++) {
+			mReleasedSlots.add(iterator.next().getValue().slot);
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Remove a tile.
+	 * @param key The key of tile
+	 */
+	public synchronized void remove(String key) {
+		Entry entry = mMap.remove(key);
+		if (entry != null) {
+			mReleasedSlots.add(entry.slot);
+			mUncommitted++;
+		}
+	}
+
+	/**
+	 * Remove all tiles.
+	 */
+	public synchronized void clear() {
+		for (Entry entry : mMap.values()) {
+			mReleasedSlots.add(entry.slot);
+		}
+		mMap.clear();
+		commit();
+	}
+
+	/**
+	 * Write the index of tiles put so far, so they are kept after process ends.
+	 */
+	public synchronized void flush() {
+		if (mUncommitted > 0 || !mReleasedSlots.isEmpty()) {
+			commit();
+		}
+	}
+
+	/**
+	 * Write the index and unmap the cache file. The cache cannot be used after closed.
+	 */
+	public synchronized void close() {
+		if (mData == null) {
+			return;
+		}
+		flush();
+		mData = null;
+		try {
+			mDataFile.close();
+		} catch (IOException e) {
+			//ignore, nothing can be done
+		}
+	}
+
+	/**
+	 * Get bytes of tiles held by this cache, in whole slots.
+	 * @return Bytes
+	 */
+	public synchronized long size() {
+		return (long) mMap.size() * SLOT_SIZE;
+	}
+
+	/**
+	 * Get maximal bytes of this cache.
+	 * @return Bytes
+	 */
+	public long maxSize() {
+		return (long) mSlotCount * SLOT_SIZE;
+	}
+
+	/**
+	 * Get the number of tiles that were found by {@link #get}.
+	 * @return Count of hits
+	 */
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * Get the number of tiles that were not found by {@link #get}.
+	 * @return Count of misses
+	 */
+	public synchronized long getMissCount() {
+		return mMissCount;
+	}
+
+	private ByteBuffer slot(int slot, int bytes) {
+		ByteBuffer buffer = mData.duplicate();
+		buffer.position(slot * SLOT_SIZE);
+		buffer.limit(slot * SLOT_SIZE + bytes);
+		return buffer.slice();
+	}
+
+	//Write index to a temporary file then rename it, so a crash leaves either the old or the new index
+	private void commit() {
+		File temp = new File(mDir, INDEX_TEMP_FILE);
+		FileOutputStream stream = null;
+		try {
+			mData.force();		//pixels reach disk before the index that refers to them
+			stream = new FileOutputStream(temp);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(SLOT_SIZE);
+			out.writeInt(mSlotCount);
+			out.writeInt(mMap.size());
+			for (Map.Entry<String, Entry> item : mMap.entrySet()) {		//least recently used first
+				Entry entry = item.getValue();
+				out.writeUTF(item.getKey());
+				out.writeInt(entry.slot);
+				out.writeInt(entry.width);
+				out.writeInt(entry.height);
+				out.writeUTF(entry.config.name());
+				out.writeInt(entry.bytes);
+			}
+			out.writeInt(INDEX_MAGIC);		//end mark
+			out.flush();
+			stream.getFD().sync();
+			out.close();
+			stream = null;
+			if (!temp.renameTo(new File(mDir, INDEX_FILE))) {
+				throw new IOException("Cannot rename " + temp);
+			}
+			mFreeSlots.addAll(mReleasedSlots);
+			mReleasedSlots.clear();
+			mUncommitted = 0;
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot write index", e);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
+	//Read index written by last process. A broken or mismatched index is dropped, then all slots are free
+	private void readIndex() {
+		boolean[] used = new boolean[mSlotCount];
+		File file = new File(mDir, INDEX_FILE);
+		if (file.exists()) {
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				if (in.readInt() != INDEX_MAGIC || in.readInt() != SLOT_SIZE || in.readInt() != mSlotCount) {
+					throw new IOException("Index does not match");
+				}
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					String key = in.readUTF();
+					int slot = in.readInt();
+					int width = in.readInt();
+					int height = in.readInt();
+					Bitmap.Config config = Bitmap.Config.valueOf(in.readUTF());
+					int bytes = in.readInt();
+					if (slot < 0 || slot >= mSlotCount || used[slot] || bytes <= 0 || bytes > SLOT_SIZE) {
+						throw new IOException("Broken entry " + key);
+					}
+					used[slot] = true;
+					mMap.put(key, new Entry(slot, width, height, config, bytes));
+				}
+				if (in.readInt() != INDEX_MAGIC) {
+					throw new IOException("Index is truncated");
+				}
+			} catch (IOException e) {
+				Log.w(TAG, "Drop index of disk cache", e);
+				mMap.clear();
+				used = new boolean[mSlotCount];
+			} catch (IllegalArgumentException e) {		//unknown config
+				Log.w(TAG, "Drop index of disk cache", e);
+				mMap.clear();
+				used = new boolean[mSlotCount];
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+						//ignore
+					}
+				}
+			}
+		}
+		for (int i = mSlotCount - 1; i >= 0; i--) {		//slots at the front are used first
+			if (!used[i]) {
+				mFreeSlots.add(i);
+			}
+		}
+	}
+}
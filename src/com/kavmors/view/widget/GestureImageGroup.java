@@ -0,0 +1,91 @@
+package com.kavmors.view.widget;
+
+import java.util.ArrayList;
+
+/**
+ * Links {@link GestureImageView}s so they pan and zoom together, e.g. to compare images side by side.
+ * The group keeps one transform relative to size of views and images: the position of image at center of view
+ * and the zoomed scale. When any view is dragged, zoomed or animated, the transform is read from it once
+ * and the matrix of each other view is set from it as a whole, so the views never drift apart.
+ * A view can be in one group only.
+ */
+public class GestureImageGroup {
+	private final ArrayList<GestureImageView> mViews = new ArrayList<GestureImageView>();
+	private final float[] mTransform = new float[3];
+	private boolean mHasTransform = false;		//false until a view in group is transformed
+	private boolean mSyncing = false;
+
+	/**
+	 * Add a view to this group. If the views in group have been transformed, the view follows them at once.
+	 * @param view The view
+	 */
+	public void add(GestureImageView view) {
+		if (mViews.contains(view)) {
+			return;
+		}
+		if (view.getGroup() != null) {
+			view.getGroup().remove(view);
+		}
+		mViews.add(view);
+		view.setGroup(this);
+		if (mHasTransform) {
+			sync(view);
+		}
+	}
+
+	/**
+	 * Remove a view from this group. It keeps its transform.
+	 * @param view The view
+	 */
+	public void remove(GestureImageView view) {
+		if (mViews.remove(view)) {
+			view.setGroup(null);
+		}
+	}
+
+	/**
+	 * Get count of views in this group.
+	 * @return Count of views
+	 */
+	public int size() {
+		return mViews.size();
+	}
+
+	/**
+	 * Get a view in this group.
+	 * @param index Index in order of adding
+	 * @return The view
+	 */
+	public GestureImageView get(int index) {
+		return mViews.get(index);
+	}
+
+	//A view is transformed by gesture or animation, so others follow it
+	void onMemberTransformed(GestureImageView source) {
+		if (mSyncing || !source.getNormalizedTransform(mTransform)) {
+			return;
+		}
+		mHasTransform = true;
+		mSyncing = true;
+		for (int i = 0; i < mViews.size(); i++) {
+			GestureImageView view = mViews.get(i);
+			if (view != source) {
+				view.setNormalizedTransform(mTransform);
+			}
+		}
+		mSyncing = false;
+	}
+
+	//A view is reset by layout or scale type, so it returns to the transform of group
+	void onMemberReset(GestureImageView view) {
+		if (!mSyncing && mHasTransform) {
+			sync(view);
+		}
+	}
+
+	private void sync(GestureImageView view) {
+		mSyncing = true;
+		view.setNormalizedTransform(mTransform);
+		mSyncing = false;
+	}
+}
@@ -0,0 +1,266 @@
+package com.kavmors.view.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * An overview of the image in a {@link GestureImageView}, with a rectangle of the region that is visible in it.
+ * The image is drawn from a small bitmap, the decoded bitmap of an image source or of a bitmap drawable is reused
+ * and other drawables are rendered once. When the image view moves, only the region of the old and new rectangle
+ * is invalidated. Tap or drag on the overview to move the image view there.
+ */
+public class GestureImageMinimap extends View implements GestureImageView.TransformObserver {
+	private static final int MAX_THUMBNAIL_SIZE = 256;		//size of rendered thumbnail for other drawables
+
+	private GestureImageView mImageView;
+	private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private final Paint mViewportPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+	private Drawable mThumbnailDrawable;		//drawable that mThumbnail comes from
+	private Bitmap mThumbnail;
+	private boolean mThumbnailRendered = false;		//whether mThumbnail is rendered by this view
+
+	private final Matrix mFitMatrix = new Matrix();		//maps image after orientation to this view
+	private final Matrix mFitInverse = new Matrix();
+	private final Matrix mThumbnailMatrix = new Matrix();		//maps thumbnail to this view
+	private final Matrix mTempMatrix = new Matrix();
+	private final RectF mViewport = new RectF();		//visible region of image view, in this view
+	private final RectF mNewViewport = new RectF();
+	private final Matrix mLastFitMatrix = new Matrix();
+	private final Rect mDirty = new Rect();
+	private final Rect mTempRect = new Rect();
+	private final float[] mTouchPoint = new float[2];
+
+	public GestureImageMinimap(Context context) {
+		super(context);
+		privateConstructor();
+	}
+
+	public GestureImageMinimap(Context context, AttributeSet attrs) {
+		super(context, attrs);
+		privateConstructor();
+	}
+
+	public GestureImageMinimap(Context context, AttributeSet attrs, int defStyleAttr) {
+		super(context, attrs, defStyleAttr);
+		privateConstructor();
+	}
+
+	private void privateConstructor() {
+		mViewportPaint.setStyle(Paint.Style.STROKE);
+		mViewportPaint.setColor(Color.RED);
+		mViewportPaint.setStrokeWidth(2 * getResources().getDisplayMetrics().density);
+	}
+
+	/**
+	 * Set the image view that this overview shows and controls.
+	 * @param view The image view, or null to unbind
+	 */
+	public void setImageView(GestureImageView view) {
+		if (mImageView != null) {
+			mImageView.removeTransformObserver(this);
+		}
+		mImageView = view;
+		if (view != null) {
+			view.addTransformObserver(this);
+		}
+		updateThumbnail();
+		updateFitMatrix();
+		updateViewport();
+		invalidate();
+	}
+
+	/**
+	 * Get the image view that set by {@link #setImageView}.
+	 * @return The image view
+	 */
+	public GestureImageView getImageView() {
+		return mImageView;
+	}
+
+	/**
+	 * Set color of the rectangle of visible region.
+	 * @param color The color
+	 */
+	public void setViewportColor(int color) {
+		mViewportPaint.setColor(color);
+		invalidate();
+	}
+
+	/**
+	 * Set stroke width of the rectangle of visible region.
+	 * @param width Width in pixels
+	 */
+	public void setViewportStrokeWidth(float width) {
+		mViewportPaint.setStrokeWidth(width);
+		invalidate();
+	}
+
+	@Override
+	public void onTransformChanged(GestureImageView view) {
+		boolean thumbnailChanged = updateThumbnail();
+		mLastFitMatrix.set(mFitMatrix);
+		updateFitMatrix();
+		if (thumbnailChanged || !mFitMatrix.equals(mLastFitMatrix)) {		//image is changed
+			updateViewport();
+			invalidate();
+			return;
+		}
+		mDirty.setEmpty();
+		if (!mViewport.isEmpty()) {
+			mViewport.roundOut(mDirty);
+		}
+		updateViewport();
+		if (!mViewport.isEmpty()) {
+			mViewport.roundOut(mTempRect);
+			mDirty.union(mTempRect);
+		}
+		if (!mDirty.isEmpty()) {
+			//the stroke is drawn across the border of rectangle
+			int inset = (int) Math.ceil(mViewportPaint.getStrokeWidth() / 2) + 1;
+			mDirty.inset(-inset, -inset);
+			invalidate(mDirty);
+		}
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		updateFitMatrix();
+		updateViewport();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if (mImageView == null) {
+			return;
+		}
+		if (mThumbnail != null) {
+			canvas.drawBitmap(mThumbnail, mThumbnailMatrix, mBitmapPaint);
+		}
+		if (!mViewport.isEmpty()) {
+			canvas.drawRect(mViewport, mViewportPaint);
+		}
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		if (mImageView == null || !isEnabled()) {
+			return super.onTouchEvent(event);
+		}
+		switch (event.getActionMasked()) {
+		case MotionEvent.ACTION_DOWN:
+			getParent().requestDisallowInterceptTouchEvent(true);
+			//fall through
+		case MotionEvent.ACTION_MOVE:
+			mTouchPoint[0] = event.getX();
+			mTouchPoint[1] = event.getY();
+			mFitInverse.mapPoints(mTouchPoint);
+			mImageView.animateCenterTo(mTouchPoint[0], mTouchPoint[1]);
+			return true;
+		case MotionEvent.ACTION_UP:
+		case MotionEvent.ACTION_CANCEL:
+			getParent().requestDisallowInterceptTouchEvent(false);
+			return true;
+		default:
+			return true;
+		}
+	}
+
+	//Pick the bitmap to draw from the drawable of image view. Return true if it is changed
+	private boolean updateThumbnail() {
+		Drawable drawable = mImageView == null? null: mImageView.getDrawable();
+		Bitmap bitmap = null;
+		boolean rendered = false;
+		if (drawable instanceof ImageSourceDrawable) {
+			bitmap = ((ImageSourceDrawable) drawable).getBitmap();
+		} else if (drawable instanceof BitmapDrawable) {
+			bitmap = ((BitmapDrawable) drawable).getBitmap();
+		} else if (drawable != null) {
+			if (drawable == mThumbnailDrawable && mThumbnailRendered) {
+				return false;
+			}
+			bitmap = renderThumbnail(drawable);
+			rendered = true;
+		}
+		if (drawable == mThumbnailDrawable && bitmap == mThumbnail) {
+			return false;
+		}
+		if (mThumbnailRendered && mThumbnail != null) {
+			mThumbnail.recycle();
+		}
+		mThumbnailDrawable = drawable;
+		mThumbnail = bitmap;
+		mThumbnailRendered = rendered;
+		return true;
+	}
+
+	private Bitmap renderThumbnail(Drawable drawable) {
+		int width = drawable.getIntrinsicWidth();
+		int height = drawable.getIntrinsicHeight();
+		if (width <= 0 || height <= 0) {
+			return null;
+		}
+		float scale = Math.min(1f, (float) MAX_THUMBNAIL_SIZE / Math.max(width, height));
+		Bitmap bitmap = Bitmap.createBitmap(Math.max(1, (int) (width * scale)), Math.max(1, (int) (height * scale)),
+				Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(bitmap);
+		canvas.scale(scale, scale);
+		//the drawable is shared with image view, so its bounds are restored
+		Rect bounds = drawable.copyBounds();
+		drawable.setBounds(0, 0, width, height);
+		drawable.draw(canvas);
+		drawable.setBounds(bounds);
+		return bitmap;
+	}
+
+	//Fit image in center of this view, and map the thumbnail to it
+	private void updateFitMatrix() {
+		mFitMatrix.reset();
+		mThumbnailMatrix.reset();
+		if (mImageView == null || mThumbnailDrawable == null) {
+			return;
+		}
+		int imageWidth = mImageView.getOrientedImageWidth();
+		int imageHeight = mImageView.getOrientedImageHeight();
+		int width = getWidth() - getPaddingLeft() - getPaddingRight();
+		int height = getHeight() - getPaddingTop() - getPaddingBottom();
+		if (imageWidth <= 0 || imageHeight <= 0 || width <= 0 || height <= 0) {
+			return;
+		}
+		float scale = Math.min((float) width / imageWidth, (float) height / imageHeight);
+		mFitMatrix.setScale(scale, scale);
+		mFitMatrix.postTranslate(getPaddingLeft() + (width - imageWidth * scale) / 2,
+				getPaddingTop() + (height - imageHeight * scale) / 2);
+		mFitMatrix.invert(mFitInverse);
+
+		if (mThumbnail != null) {
+			//thumbnail pixels to drawable pixels, then to image after orientation, then to this view
+			mThumbnailMatrix.setScale((float) mThumbnailDrawable.getIntrinsicWidth() / mThumbnail.getWidth(),
+					(float) mThumbnailDrawable.getIntrinsicHeight() / mThumbnail.getHeight());
+			mImageView.getOrientationMatrix(mTempMatrix);
+			mThumbnailMatrix.postConcat(mTempMatrix);
+			mThumbnailMatrix.postConcat(mFitMatrix);
+		}
+	}
+
+	private void updateViewport() {
+		if (mImageView == null || !mImageView.getVisibleImageRect(mNewViewport)) {
+			mViewport.setEmpty();
+			return;
+		}
+		mFitMatrix.mapRect(mViewport, mNewViewport);
+	}
+}
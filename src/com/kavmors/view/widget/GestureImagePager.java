@@ -0,0 +1,513 @@
+package com.kavmors.view.widget;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.support.v4.view.NestedScrollingParent;
+import android.support.v4.view.NestedScrollingParentHelper;
+import android.support.v4.view.ViewCompat;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.widget.ImageView.ScaleType;
+import android.widget.Scroller;
+
+/**
+ * A horizontal pager of {@link GestureImageView}, for a swipe gallery of images.
+ * Pages next to the current one are created in advance and decoded at the size they will be shown in.
+ * All pages share one {@link BitmapCache} and one decode executor, and only the current page decodes tiles of higher resolution.
+ * A horizontal drag is handled by the image of current page until it reaches the edge, then the pager takes it over.
+ * The remaining distance is received by nested scrolling in the same frame, or by intercepting touch events
+ * if nested scrolling of page is disabled.
+ */
+public class GestureImagePager extends ViewGroup implements NestedScrollingParent {
+	private static final String TAG = "GestureImagePager";
+
+	private static final int SNAP_DURATION = 300;
+	private static final int MIN_FLING_VELOCITY = 400;		//in dips per second
+
+	/**
+	 * A interface that provides images of pages.
+	 */
+	public interface Adapter {
+		/**
+		 * Get the number of pages.
+		 * @return The number
+		 */
+		int getCount();
+
+		/**
+		 * Open the image source of a page. The source will be closed by pager when the page is dropped.
+		 * @param position Position of page
+		 * @return A new source
+		 * @throws IOException If the source cannot be opened
+		 */
+		ImageSource getImageSource(int position) throws IOException;
+
+		/**
+		 * Get a key that identifies the image of a page in the shared cache.
+		 * @param position Position of page
+		 * @return The key, or null if the image should not be cached
+		 */
+		String getKey(int position);
+	}
+
+	/**
+	 * A interface of callback when current page changes.
+	 */
+	public interface OnPageChangeListener {
+		void onPageSelected(int position);
+	}
+
+	private Adapter mAdapter;
+	private OnPageChangeListener mPageListener;
+	private int mCurrent = 0;
+	private int mOffscreenPageLimit = 1;
+	private int mPageMargin = 0;
+	private ScaleType mPageScaleType = ScaleType.FIT_CENTER;
+	private BitmapCache mCache = BitmapCache.createDefault();
+	private Executor mExecutor = ImageSourceDrawable.getDefaultExecutor();
+
+	private final SparseArray<GestureImageView> mPages = new SparseArray<GestureImageView>();
+	private final ArrayList<GestureImageView> mRecycledPages = new ArrayList<GestureImageView>();
+
+	private Scroller mScroller;
+	private VelocityTracker mVelocityTracker;
+	private int mTouchSlop;
+	private int mMinFlingVelocity;
+	private float mDownX, mDownY, mLastX;
+	private boolean mDragging = false;
+
+	private NestedScrollingParentHelper mParentHelper;
+	private boolean mNestedFlung = false;
+
+	public GestureImagePager(Context context) {
+		super(context);
+		privateConstructor(context);
+	}
+
+	public GestureImagePager(Context context, AttributeSet attrs) {
+		super(context, attrs);
+		privateConstructor(context);
+	}
+
+	private void privateConstructor(Context context) {
+		mParentHelper = new NestedScrollingParentHelper(this);
+		mScroller = new Scroller(context);
+		mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+		mMinFlingVelocity = (int) (MIN_FLING_VELOCITY * context.getResources().getDisplayMetrics().density);
+	}
+
+	/**
+	 * Set the adapter that provides images. All pages are dropped and the pager goes to the first page.
+	 * @param adapter The adapter, or null to clear pages
+	 */
+	public void setAdapter(Adapter adapter) {
+		for (int i = 0; i < mPages.size(); i++) {
+			recyclePage(mPages.valueAt(i));
+		}
+		mPages.clear();
+		mAdapter = adapter;
+		mCurrent = 0;
+		mScroller.forceFinished(true);
+		scrollTo(0, 0);
+		populate();
+	}
+
+	/**
+	 * Get the adapter that set by {@link #setAdapter}.
+	 * @return The adapter
+	 */
+	public Adapter getAdapter() {
+		return mAdapter;
+	}
+
+	/**
+	 * Register a callback to be invoked when current page changes.
+	 * @param listener The callback
+	 */
+	public void setOnPageChangeListener(OnPageChangeListener listener) {
+		mPageListener = listener;
+	}
+
+	/**
+	 * Set the number of pages on each side of current page that are created and decoded in advance. Default value is 1.
+	 * @param limit The number, at least 0
+	 */
+	public void setOffscreenPageLimit(int limit) {
+		mOffscreenPageLimit = Math.max(0, limit);
+		populate();
+	}
+
+	/**
+	 * Get the value that set by {@link #setOffscreenPageLimit}.
+	 * @return The number
+	 */
+	public int getOffscreenPageLimit() {
+		return mOffscreenPageLimit;
+	}
+
+	/**
+	 * Set the gap between pages.
+	 * @param margin Gap in pixels
+	 */
+	public void setPageMargin(int margin) {
+		mPageMargin = margin;
+		requestLayout();
+	}
+
+	/**
+	 * Set the scale type of pages created after this call. Default value is {@link ScaleType#FIT_CENTER}.
+	 * @param type The scale type
+	 */
+	public void setPageScaleType(ScaleType type) {
+		mPageScaleType = type;
+	}
+
+	/**
+	 * Set the cache shared by pages. It should be set before {@link #setAdapter}.
+	 * @param cache The cache, or null to disable caching
+	 */
+	public void setBitmapCache(BitmapCache cache) {
+		mCache = cache;
+	}
+
+	/**
+	 * Get the cache shared by pages.
+	 * @return The cache
+	 */
+	public BitmapCache getBitmapCache() {
+		return mCache;
+	}
+
+	/**
+	 * Set the executor that decodes images of pages. Tiles of pages are still decoded by the executor of
+	 * {@link ImageSourceDrawable#getDefaultTileExecutor()}. It should be set before {@link #setAdapter}.
+	 * @param executor The executor, or null to use the default one of {@link ImageSourceDrawable}
+	 */
+	public void setDecodeExecutor(Executor executor) {
+		mExecutor = executor == null? ImageSourceDrawable.getDefaultExecutor(): executor;
+	}
+
+	/**
+	 * Get the position of current page.
+	 * @return The position
+	 */
+	public int getCurrentItem() {
+		return mCurrent;
+	}
+
+	/**
+	 * Get the view of current page.
+	 * @return The view, or null if there is no page
+	 */
+	public GestureImageView getCurrentPage() {
+		return mPages.get(mCurrent);
+	}
+
+	/**
+	 * Go to a page.
+	 * @param position Position of page
+	 * @param smooth True to scroll by animation, false to jump at once
+	 */
+	public void setCurrentItem(int position, boolean smooth) {
+		if (mAdapter == null || mAdapter.getCount() == 0) {
+			return;
+		}
+		position = Math.max(0, Math.min(mAdapter.getCount() - 1, position));
+		if (smooth) {
+			snapTo(position);
+		} else {
+			mScroller.forceFinished(true);
+			selectPage(position);
+			scrollTo(position * getPageStride(), 0);
+		}
+	}
+
+	private int getPageStride() {
+		return getWidth() + mPageMargin;
+	}
+
+	private void selectPage(int position) {
+		if (position == mCurrent && mPages.get(position) != null) {
+			return;
+		}
+		mCurrent = position;
+		populate();
+		if (mPageListener != null) {
+			mPageListener.onPageSelected(position);
+		}
+	}
+
+	//Create pages around current one, and drop the others
+	private void populate() {
+		if (mAdapter == null) {
+			return;
+		}
+		int first = Math.max(0, mCurrent - mOffscreenPageLimit);
+		int last = Math.min(mAdapter.getCount() - 1, mCurrent + mOffscreenPageLimit);
+		for (int i = mPages.size() - 1; i >= 0; i--) {
+			int position = mPages.keyAt(i);
+			if (position < first || position > last) {
+				GestureImageView page = mPages.valueAt(i);
+				mPages.removeAt(i);
+				recyclePage(page);
+			}
+		}
+		for (int position = first; position <= last; position++) {
+			GestureImageView page = mPages.get(position);
+			if (page == null) {
+				page = obtainPage(position);
+				mPages.put(position, page);
+			}
+			//only the visible page holds full-resolution tiles
+			Drawable drawable = page.getDrawable();
+			if (drawable instanceof ImageSourceDrawable) {
+				((ImageSourceDrawable) drawable).setTilesEnabled(position == mCurrent);
+			}
+		}
+	}
+
+	private GestureImageView obtainPage(int position) {
+		GestureImageView page;
+		if (mRecycledPages.isEmpty()) {
+			page = new GestureImageView(getContext());
+		} else {
+			page = mRecycledPages.remove(mRecycledPages.size() - 1);
+		}
+		page.setScaleType(mPageScaleType);
+		addView(page);
+		try {
+			ImageSourceDrawable drawable = new ImageSourceDrawable(mAdapter.getImageSource(position));
+			drawable.setBitmapCache(mCache, mAdapter.getKey(position));
+			drawable.setExecutor(mExecutor);
+			drawable.setTilesEnabled(position == mCurrent);
+			page.setImageSourceDrawable(drawable);
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot open image of page " + position, e);
+			page.setImageDrawable(null);
+		}
+		return page;
+	}
+
+	private void recyclePage(GestureImageView page) {
+		page.setImageDrawable(null);		//releases the drawable of page
+		removeView(page);
+		mRecycledPages.add(page);
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		int width = getDefaultSize(0, widthMeasureSpec);
+		int height = getDefaultSize(0, heightMeasureSpec);
+		setMeasuredDimension(width, height);
+		int childWidthSpec = MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY);
+		int childHeightSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY);
+		for (int i = 0; i < mPages.size(); i++) {
+			mPages.valueAt(i).measure(childWidthSpec, childHeightSpec);
+		}
+	}
+
+	@Override
+	protected void onLayout(boolean changed, int l, int t, int r, int b) {
+		int stride = getPageStride();
+		for (int i = 0; i < mPages.size(); i++) {
+			int left = mPages.keyAt(i) * stride;
+			mPages.valueAt(i).layout(left, 0, left + r - l, b - t);
+		}
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		mScroller.forceFinished(true);
+		scrollTo(mCurrent * (w + mPageMargin), 0);
+	}
+
+	@Override
+	public boolean onInterceptTouchEvent(MotionEvent ev) {
+		trackVelocity(ev);
+		switch (ev.getActionMasked()) {
+		case MotionEvent.ACTION_DOWN:
+			mDownX = mLastX = ev.getX();
+			mDownY = ev.getY();
+			mDragging = !mScroller.isFinished();		//catch a page that is settling
+			mScroller.forceFinished(true);
+			break;
+		case MotionEvent.ACTION_MOVE:
+			if (!mDragging && ev.getPointerCount() == 1) {
+				float dx = ev.getX() - mDownX;
+				float dy = ev.getY() - mDownY;
+				if (Math.abs(dx) > mTouchSlop && Math.abs(dx) > Math.abs(dy)) {
+					GestureImageView page = getCurrentPage();
+					boolean aligned = getScrollX() == mCurrent * getPageStride();
+					//take over only when the image cannot be dragged further in this direction
+					if (page == null || !aligned || !page.canScrollHorizontally(dx > 0? -1: 1)) {
+						mDragging = true;
+						mLastX = ev.getX();
+					}
+				}
+			}
+			break;
+		case MotionEvent.ACTION_UP:
+		case MotionEvent.ACTION_CANCEL:
+			mDragging = false;
+			releaseVelocityTracker();
+			break;
+		default:
+			break;
+		}
+		return mDragging;
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent ev) {
+		trackVelocity(ev);
+		switch (ev.getActionMasked()) {
+		case MotionEvent.ACTION_DOWN:
+			mDownX = mLastX = ev.getX();
+			mDownY = ev.getY();
+			mScroller.forceFinished(true);
+			mDragging = true;
+			break;
+		case MotionEvent.ACTION_MOVE:
+			if (mDragging) {
+				int dx = (int) (mLastX - ev.getX());
+				mLastX -= dx;		//keep the fraction for next move
+				int maxScrollX = mAdapter == null? 0: Math.max(0, (mAdapter.getCount() - 1) * getPageStride());
+				scrollTo(Math.max(0, Math.min(maxScrollX, getScrollX() + dx)), 0);
+			}
+			break;
+		case MotionEvent.ACTION_UP:
+			if (mDragging) {
+				mVelocityTracker.computeCurrentVelocity(1000);
+				snapTo(determineTargetPage(mVelocityTracker.getXVelocity()));
+			}
+			mDragging = false;
+			releaseVelocityTracker();
+			break;
+		case MotionEvent.ACTION_CANCEL:
+			if (mDragging) {
+				snapTo(determineTargetPage(0));
+			}
+			mDragging = false;
+			releaseVelocityTracker();
+			break;
+		default:
+			break;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean onStartNestedScroll(View child, View target, int nestedScrollAxes) {
+		return mAdapter != null && (nestedScrollAxes & ViewCompat.SCROLL_AXIS_HORIZONTAL) != 0;
+	}
+
+	@Override
+	public void onNestedScrollAccepted(View child, View target, int axes) {
+		mParentHelper.onNestedScrollAccepted(child, target, axes);
+		mScroller.forceFinished(true);
+		mNestedFlung = false;
+	}
+
+	@Override
+	public void onNestedPreScroll(View target, int dx, int dy, int[] consumed) {
+		//bring a page that has not settled back before the image moves
+		int offset = getScrollX() - mCurrent * getPageStride();
+		if (offset != 0 && dx != 0 && (offset > 0) != (dx > 0)) {
+			int scroll = dx > 0? Math.min(dx, -offset): Math.max(dx, -offset);
+			scrollBy(scroll, 0);
+			consumed[0] = scroll;
+		}
+	}
+
+	@Override
+	public void onNestedScroll(View target, int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed) {
+		if (dxUnconsumed != 0) {
+			int maxScrollX = Math.max(0, (mAdapter.getCount() - 1) * getPageStride());
+			scrollTo(Math.max(0, Math.min(maxScrollX, getScrollX() + dxUnconsumed)), 0);
+		}
+	}
+
+	@Override
+	public boolean onNestedPreFling(View target, float velocityX, float velocityY) {
+		return false;
+	}
+
+	@Override
+	public boolean onNestedFling(View target, float velocityX, float velocityY, boolean consumed) {
+		if (consumed || getScrollX() == mCurrent * getPageStride()) {
+			return false;
+		}
+		mNestedFlung = true;
+		snapTo(determineTargetPage(-velocityX));		//velocity of scrolling is opposite to finger
+		return true;
+	}
+
+	@Override
+	public void onStopNestedScroll(View target) {
+		mParentHelper.onStopNestedScroll(target);
+		if (!mNestedFlung && getScrollX() != mCurrent * getPageStride()) {
+			snapTo(determineTargetPage(0));
+		}
+	}
+
+	@Override
+	public int getNestedScrollAxes() {
+		return mParentHelper.getNestedScrollAxes();
+	}
+
+	private int determineTargetPage(float velocityX) {
+		int stride = getPageStride();
+		if (stride <= 0 || mAdapter == null) {
+			return mCurrent;
+		}
+		float offset = (float) getScrollX() / stride;
+		int target;
+		if (Math.abs(velocityX) > mMinFlingVelocity) {
+			target = velocityX < 0? (int) Math.ceil(offset): (int) Math.floor(offset);
+		} else {
+			target = Math.round(offset);
+		}
+		target = Math.max(mCurrent - 1, Math.min(mCurrent + 1, target));
+		return Math.max(0, Math.min(mAdapter.getCount() - 1, target));
+	}
+
+	private void snapTo(int position) {
+		int dx = position * getPageStride() - getScrollX();
+		mScroller.startScroll(getScrollX(), 0, dx, 0, SNAP_DURATION);
+		selectPage(position);
+		invalidate();
+	}
+
+	@Override
+	public void computeScroll() {
+		if (mScroller.computeScrollOffset()) {
+			scrollTo(mScroller.getCurrX(), 0);
+			invalidate();
+		}
+	}
+
+	private void trackVelocity(MotionEvent ev) {
+		if (mVelocityTracker == null) {
+			mVelocityTracker = VelocityTracker.obtain();
+		}
+		mVelocityTracker.addMovement(ev);
+	}
+
+	private void releaseVelocityTracker() {
+		if (mVelocityTracker != null) {
+			mVelocityTracker.recycle();
+			mVelocityTracker = null;
+		}
+	}
+}
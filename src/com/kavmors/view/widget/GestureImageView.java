@@ -1,18 +1,35 @@
 package com.kavmors.view.widget;
 
+import java.io.IOException;
+import java.util.ArrayList;
+
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
+import android.support.v4.view.NestedScrollingChild;
+import android.support.v4.view.NestedScrollingChildHelper;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewParent;
+import android.view.animation.AnimationUtils;
 import android.widget.ImageView;
 import android.widget.OverScroller;
 import android.widget.Scroller;
@@ -20,7 +37,7 @@ import android.widget.Scroller;
 /**
  * An ImageView that supports translate and zoom by user gesture.
  */
-public class GestureImageView extends ImageView {
+public class GestureImageView extends ImageView implements NestedScrollingChild {
 //	Last modify: 2016-03-22
 
 	private static final String TAG = "GestureImageView";
@@ -42,8 +59,12 @@ public class GestureImageView extends ImageView {
 	private ScaleType mScaleType = ScaleType.CENTER;
 
 	private OnDoubleClickListener mDblListener;
+	private OnImageTapListener mTapListener, mDblTapListener, mLongPressListener;
+	private OnClickCancelListener mClickCancelListener;
+	private boolean mSpeculativeClick = false;
 	private OnLongClickListener mLongListener;
-	private OnZoomListener mZoomListener = emptyZoomListener;
+	private TransformListenerDispatcher mListenerDispatcher;		//created when a listener or mode is set
+	private OnZoomListener mZoomListener = emptyZoomListener;		//callbacks go to listeners through dispatcher
 	private OnDragListener mDragListener = emptyDragListener;
 
 	private boolean mQuickZoomable = true;
@@ -53,18 +74,69 @@ public class GestureImageView extends ImageView {
 	private boolean mDraggable = true;
 
 	private Matrix mMatrixOrigin;			//Matrix that set after setScaleType
-	private int mImgHeight, mImgWidth;
+	private int mImgHeight, mImgWidth;		//Size of image after orientation
+	private int mOrientation = ImageHeaderParser.ORIENTATION_NORMAL;
+	private Matrix mOrientationMatrix = new Matrix();		//Matrix that maps drawable to oriented image
+	private Matrix mDrawMatrix = new Matrix();				//mMatrix with orientation, which is set to ImageView
+	private Matrix mInverseMatrix;		//created for drawables of image source only
+	private RectF mViewportRect;		//visible region in drawable pixels
+	private Matrix mImageInverse = new Matrix();		//inverse of mMatrix, maps view to image after orientation
+	private RectF mVisibleViewRect = new RectF();		//visible region of image in view
+	private RectF mVisibleImageRect = new RectF();		//visible region in image pixels after orientation
+	private RectF mDrawClipF = new RectF();
+	private Rect mDrawClip = new Rect();		//visible region of image as drawn by the snapped matrix, rounded out
+	private Rect mGlobalRect;		//visible region of view on screen, reused in memory trimming
+	private boolean mImageInverseValid = false;
+	private ArrayList<TransformObserver> mTransformObservers = new ArrayList<TransformObserver>();
+	private CenterAnimation mCenterAnimation;
+	private EnterTransition mEnterTransition;
+	private GestureImageGroup mGroup;
+	private float[] mTapPoint = new float[2];
+	private ArrayList<ImageOverlay<?>> mOverlays = new ArrayList<ImageOverlay<?>>();
+	private float[] mValues = new float[9];
+	private RectF mBounds = new RectF();		//borders of image, reused in limit checks
+	private PointF mZoomPivot = new PointF();		//pivot of zoom, reused in limit checks
 	private float mMinScale = 1f/2f, mMaxScale = 2f;
 	private int mExtendLimitTop = 0, mExtendLimitLeft = 0, mExtendLimitBottom = 0, mExtendLimitRight = 0;
 
 	private Handler mHandler;
 	private Message mMsg;
+
+	private NestedScrollingChildHelper mNestedHelper;		//created on the first nested scroll
+	private boolean mNestedScrollingEnabled = true;		//kept until mNestedHelper is created
+	private int[] mNestedOffset = new int[2];
+	private int[] mNestedConsumed = new int[2];
+	private int mNestedOffsetX, mNestedOffsetY;		//offset of this view in window, moved by parent in this gesture
+
+	private long mLastEventTime;		//time of the touch event that is being dispatched
+	private ZoomIntegrator mSlideZoom;
+	private ZoomIntegrator mPinchZoom;
+
+	private long mPredictTime = 0;		//0 if touch prediction is disabled
+	private TouchPredictor mDragPredictor;		//created when prediction is enabled
+	private TouchPredictor mPinchPredictor;		//predicts span of two fingers
+	private float[] mPredicted = new float[2];
+	private float mPredictDx = 0, mPredictDy = 0;		//predicted move that is applied to mMatrix
+	private float mPredictScale = 1f, mPredictCenterX, mPredictCenterY;		//predicted zoom that is applied to mMatrix
+
+	private int mGestureLayerType = LAYER_TYPE_NONE;
+	private GestureLayer mLayer;		//created by setGestureLayerType
+
 	private static final int MSG_AFTER_DRAG = 2;
+	private static final float EDGE_EPSILON = 0.01f;		//distance in pixels that an edge of image is regarded at limit
 
 	private static final float DEFAULT_ZOOM_SCALE = 1.5f;
 	private static final long ANIMATE_DURATION = 500;
-	private static final float SLIDE_ZOOM_WEIGHT = 192f;		//weight in slide zooming
-	private static final float SCALE_ZOOM_WEIGHT = 480f;		//weight in scale zooming
+	private static final long ENTER_DURATION = 300;
+	/** Call zoom and drag listeners in each step */
+	public static final int DISPATCH_IMMEDIATE = 0;
+	/** Merge steps of zoom and drag, and call listeners at most once per frame */
+	public static final int DISPATCH_PER_FRAME = 1;
+	/** Merge steps of zoom and drag, and call listeners at most once per interval */
+	public static final int DISPATCH_THROTTLED = 2;
+
+	private static final float SLIDE_ZOOM_WEIGHT = 96f;		//distance in dp that doubles scale in slide zooming
+	private static final float SCALE_ZOOM_WEIGHT = 240f;		//distance in dp that doubles scale in scale zooming
 
 	/**
 	 * A interface of callback in double-click event.
@@ -73,6 +145,28 @@ public class GestureImageView extends ImageView {
 		void onDoubleClick(View view);
 	}
 
+	/**
+	 * A interface of callback when a speculative click is cancelled by a double click.
+	 */
+	public interface OnClickCancelListener {
+		void onClickCancel(View view);
+	}
+
+	/**
+	 * A interface of callback in tap events, with the position on view and on image.
+	 */
+	public interface OnImageTapListener {
+		/**
+		 * Call when the view is tapped.
+		 * @param view The view
+		 * @param viewX Position on X axis in view
+		 * @param viewY Position on Y axis in view
+		 * @param imageX Position on X axis in image pixels after orientation, may be out of image
+		 * @param imageY Position on Y axis in image pixels after orientation, may be out of image
+		 */
+		void onImageTap(View view, float viewX, float viewY, float imageX, float imageY);
+	}
+
 	/**
 	 * A interface of callback in zoom event.
 	 */
@@ -165,14 +259,561 @@ public class GestureImageView extends ImageView {
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 		Drawable drawable = getDrawable();
 		if (drawable!=null) {
-			mImgHeight = drawable.getIntrinsicHeight();
-			mImgWidth = drawable.getIntrinsicWidth();
+			int width = drawable.getIntrinsicWidth();
+			int height = drawable.getIntrinsicHeight();
+			updateOrientationMatrix(width, height);
+			mImgHeight = isOrientationTransposed()? width: height;
+			mImgWidth = isOrientationTransposed()? height: width;
 		}
 		setScaleType(mScaleType);
-		super.setOnTouchListener(mOnTouchListener);
 		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 	}
 
+	/**
+	 * Set an image source as the content of this view. Only the header of image is read here,
+	 * so the view can be laid out and react gestures at once, while pixels are decoded in background.
+	 * @param source The source of image
+	 * @throws IOException If the header cannot be read or the format is not supported
+	 */
+	public void setImageSource(ImageSource source) throws IOException {
+		setImageSourceDrawable(new ImageSourceDrawable(source));
+	}
+
+	/**
+	 * Set a drawable of image source as the content of this view, which may have been configured with
+	 * a shared cache or executor. Pixels are decoded in background after this view is laid out.
+	 * The drawable is released when other content replaces it.
+	 * @param drawable The drawable
+	 */
+	public void setImageSourceDrawable(final ImageSourceDrawable drawable) {
+		if (mEnterTransition != null && mEnterTransition.drawable != drawable) {
+			mEnterTransition.finish();
+		}
+		setImageOrientation(drawable.getHeader().orientation);
+		setImageDrawable(drawable);
+		requestLayout();		//reset matrix even if the new image has the same size
+		post(new Runnable() {
+			@Override
+			public void run() {
+				//decode after layout, so that the sample size fits this view
+				if (getDrawable() == drawable) {
+					int width = getWidth() > 0? getWidth(): getResources().getDisplayMetrics().widthPixels;
+					int height = getHeight() > 0? getHeight(): getResources().getDisplayMetrics().heightPixels;
+					if (isOrientationTransposed()) {
+						drawable.load(height, width);
+					} else {
+						drawable.load(width, height);
+					}
+					updateVisibleRect(true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Set an animated GIF as the content of this view and start playing it. Frames are rendered in background with
+	 * a sample size that follows the scale of image, so gestures are as smooth as with a static image.
+	 * The drawable is stopped and released when other content replaces it.
+	 * @param drawable The drawable
+	 */
+	public void setMovieDrawable(MovieDrawable drawable) {
+		setImageOrientation(drawable.getHeader().orientation);
+		setImageDrawable(drawable);
+		requestLayout();		//reset matrix even if the new image has the same size
+		drawable.start();
+	}
+
+	@Override
+	public void setImageDrawable(Drawable drawable) {
+		Drawable old = getDrawable();
+		super.setImageDrawable(drawable);
+		releaseReplaced(old);
+	}
+
+	@Override
+	public void setImageResource(int resId) {
+		Drawable old = getDrawable();
+		super.setImageResource(resId);
+		releaseReplaced(old);
+	}
+
+	@Override
+	public void setImageURI(Uri uri) {
+		Drawable old = getDrawable();
+		super.setImageURI(uri);
+		releaseReplaced(old);
+	}
+
+	//A replaced drawable of image source holds bitmaps and region decoders, and a movie keeps rendering frames
+	//in background, so they are released at once instead of when collected
+	private void releaseReplaced(Drawable old) {
+		if (old == null || old == getDrawable()) {
+			return;
+		}
+		if (old instanceof ImageSourceDrawable) {
+			((ImageSourceDrawable) old).release();
+		} else if (old instanceof MovieDrawable) {
+			((MovieDrawable) old).release();		//stops it as well
+		}
+	}
+
+	/**
+	 * Set a drawable of image source as the content of this view, and animate it from a thumbnail on screen
+	 * to the transform of scale type, in the first frame after layout. The thumbnail bitmap is drawn at once
+	 * until pixels of drawable are decoded, and tiles of higher resolution are decoded only after the animation ends.
+	 * The image starts filling the thumbnail bounds and clipped by them, like a thumbnail in CENTER_CROP.
+	 * Touching this view ends the animation at once.
+	 * @param drawable The drawable
+	 * @param thumbnail Bitmap of the whole image that has been decoded, in the orientation stored in file,
+	 * or null to draw nothing until decoded
+	 * @param screenRect Bounds of thumbnail on screen, such as from {@link View#getLocationOnScreen} of thumbnail view
+	 */
+	public void startEnterTransition(ImageSourceDrawable drawable, Bitmap thumbnail, Rect screenRect) {
+		if (mEnterTransition != null) {
+			mEnterTransition.finish();
+		}
+		drawable.setPlaceholder(thumbnail);
+		setImageSourceDrawable(drawable);
+		mEnterTransition = new EnterTransition(drawable, screenRect);
+	}
+
+	/**
+	 * Get the image source that set by {@link #setImageSource}.
+	 * @return The source, or null if the content is not set by an image source
+	 */
+	public ImageSource getImageSource() {
+		Drawable drawable = getDrawable();
+		return drawable instanceof ImageSourceDrawable? ((ImageSourceDrawable) drawable).getSource(): null;
+	}
+
+	/**
+	 * Get bytes of bitmaps held by the content of this view, if it is set by an image source or an animated GIF.
+	 * @return Bytes, or 0 for other drawables
+	 */
+	public long getMemoryUsage() {
+		Drawable drawable = getDrawable();
+		if (drawable instanceof ImageSourceDrawable) {
+			return ((ImageSourceDrawable) drawable).getByteCount();
+		} else if (drawable instanceof MovieDrawable) {
+			return ((MovieDrawable) drawable).getByteCount();
+		}
+		return 0;
+	}
+
+	/**
+	 * Free memory of the content by the stage of {@link MemoryTrimmer}, usually called by it. Tiles are dropped
+	 * if this view is not visible on screen, and decoded again when it is drawn.
+	 * @param stage The stage of trimming
+	 */
+	public void trimMemory(int stage) {
+		Drawable drawable = getDrawable();
+		if (drawable instanceof ImageSourceDrawable) {
+			if (mGlobalRect == null) {
+				mGlobalRect = new Rect();
+			}
+			boolean offscreen = !isShown() || !getGlobalVisibleRect(mGlobalRect);
+			((ImageSourceDrawable) drawable).trimMemory(stage, offscreen);
+		} else if (drawable instanceof MovieDrawable) {
+			((MovieDrawable) drawable).trimMemory(stage);
+		}
+		if (mLayer != null) {
+			mLayer.recycleSnapshot();		//kept while the view is promoted with it
+		}
+	}
+
+	/**
+	 * Decode the content at full resolution again after {@link #trimMemory} reduced it.
+	 */
+	public void restoreQuality() {
+		Drawable drawable = getDrawable();
+		if (drawable instanceof ImageSourceDrawable) {
+			((ImageSourceDrawable) drawable).restoreQuality();
+		}
+	}
+
+	/**
+	 * Set orientation of image, in value of EXIF orientation tag. The image is rotated or flipped by the matrix of this view,
+	 * and all sizes and positions of image, such as {@link #getImageWidth}, are measured after orientation.
+	 * @param orientation EXIF orientation from 1 to 8, where 1 means no transform
+	 */
+	public void setImageOrientation(int orientation) {
+		if (orientation < 1 || orientation > 8) {
+			throw new IllegalArgumentException("Orientation must be from 1 to 8: " + orientation);
+		}
+		if (mOrientation != orientation) {
+			mOrientation = orientation;
+			requestLayout();
+		}
+	}
+
+	/**
+	 * Get orientation of image that set by {@link #setImageOrientation}.
+	 * @return EXIF orientation from 1 to 8
+	 */
+	public int getImageOrientation() {
+		return mOrientation;
+	}
+
+	/**
+	 * Set the layer type that this view is promoted to while the image is dragged, zoomed or animated.
+	 * While promoted, the content is drawn once and the transform is applied to that drawing as a whole,
+	 * by properties of this view on a hardware layer, or by a cached snapshot for a software one, so the image
+	 * is not drawn again in each frame. It is drawn again when the transform goes far from the drawing,
+	 * and at the real transform once the drag or zoom ends. It works since API 11.
+	 * @param layerType {@link #LAYER_TYPE_HARDWARE}, {@link #LAYER_TYPE_SOFTWARE} for a cached snapshot,
+	 * or {@link #LAYER_TYPE_NONE} to disable promotion, which is the default value
+	 */
+	public void setGestureLayerType(int layerType) {
+		if (layerType != LAYER_TYPE_NONE && layerType != LAYER_TYPE_HARDWARE && layerType != LAYER_TYPE_SOFTWARE) {
+			throw new IllegalArgumentException("Unknown layer type: " + layerType);
+		}
+		mGestureLayerType = layerType;
+		if (mLayer == null) {
+			if (layerType == LAYER_TYPE_NONE || VERSION.SDK_INT < VERSION_CODES.HONEYCOMB) {
+				return;
+			}
+			mLayer = new GestureLayer();
+		}
+		mLayer.setType(layerType);
+	}
+
+	/**
+	 * Get the layer type that set by {@link #setGestureLayerType}.
+	 * @return The layer type
+	 */
+	public int getGestureLayerType() {
+		return mGestureLayerType;
+	}
+
+	/**
+	 * Get statistics of layer promotion by {@link #setGestureLayerType}.
+	 * @return A snapshot of statistics
+	 */
+	public LayerStats getLayerStats() {
+		if (mLayer == null) {
+			return new LayerStats(false, 0, 0, 0, 0);
+		}
+		TransformLayerController controller = mLayer.mController;
+		long now = SystemClock.uptimeMillis();
+		return new LayerStats(controller.isPromoted(), controller.getPromotions(),
+				controller.getPromotedFrames(), controller.getPromotedTime(now), mLayer.mRedraws);
+	}
+
+	/**
+	 * Statistics of layer promotion.
+	 */
+	public static class LayerStats {
+		/** Whether the view is promoted now */
+		public final boolean promoted;
+		/** Times that the view has been promoted */
+		public final int promotions;
+		/** Frames that the image is transformed while promoted */
+		public final long promotedFrames;
+		/** Milliseconds that the view has been promoted in total */
+		public final long promotedTime;
+		/** Frames that the content is drawn again while promoted, since the transform went far from its drawing */
+		public final long redraws;
+
+		LayerStats(boolean promoted, int promotions, long promotedFrames, long promotedTime, long redraws) {
+			this.promoted = promoted;
+			this.promotions = promotions;
+			this.promotedFrames = promotedFrames;
+			this.promotedTime = promotedTime;
+			this.redraws = redraws;
+		}
+	}
+
+	@TargetApi(VERSION_CODES.HONEYCOMB)
+	private int compatGetLayerType() {
+		return VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB? getLayerType(): LAYER_TYPE_NONE;
+	}
+
+	@TargetApi(VERSION_CODES.HONEYCOMB)
+	private void compatSetLayerType(int layerType) {
+		if (VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB && getLayerType() != layerType) {
+			setLayerType(layerType, null);
+		}
+	}
+
+	//Observer of changes of transform or visible region, for companion views in this package
+	interface TransformObserver {
+		void onTransformChanged(GestureImageView view);
+	}
+
+	void addTransformObserver(TransformObserver observer) {
+		if (!mTransformObservers.contains(observer)) {
+			mTransformObservers.add(observer);
+		}
+	}
+
+	void removeTransformObserver(TransformObserver observer) {
+		mTransformObservers.remove(observer);
+	}
+
+	void setGroup(GestureImageGroup group) {
+		mGroup = group;
+	}
+
+	GestureImageGroup getGroup() {
+		return mGroup;
+	}
+
+	/**
+	 * Get the transform independent of size of view and image: position of image at center of view content
+	 * inside padding, in fraction of image width and height, and scale that has been zoomed.
+	 * @param out Receives (centerX, centerY, scale)
+	 * @return False if the view is not laid out or has no image
+	 */
+	boolean getNormalizedTransform(float[] out) {
+		if (mMatrixOrigin == null || mImgWidth == 0 || mImgHeight == 0 || !mImageInverseValid) {
+			return false;
+		}
+		//mMatrix maps image to content, which is offset by padding
+		out[0] = (getWidth() - getPaddingLeft() - getPaddingRight()) / 2f;
+		out[1] = (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f;
+		mImageInverse.mapPoints(out, 0, out, 0, 1);
+		out[0] /= mImgWidth;
+		out[1] /= mImgHeight;
+		out[2] = getImageScale();
+		return true;
+	}
+
+	/**
+	 * Set the transform that got by {@link #getNormalizedTransform}, from another view. The matrix is set as a whole,
+	 * so views that follow one transform never drift apart.
+	 */
+	void setNormalizedTransform(float[] transform) {
+		if (mMatrixOrigin == null || mImgWidth == 0 || mImgHeight == 0) {
+			return;
+		}
+		mMatrixOrigin.getValues(mValues);
+		float scaleX = mValues[Matrix.MSCALE_X] * transform[2];
+		float scaleY = mValues[Matrix.MSCALE_Y] * transform[2];
+		mMatrix.setScale(scaleX, scaleY);
+		mMatrix.postTranslate((getWidth() - getPaddingLeft() - getPaddingRight()) / 2f - transform[0] * mImgWidth * scaleX,
+				(getHeight() - getPaddingTop() - getPaddingBottom()) / 2f - transform[1] * mImgHeight * scaleY);
+		transformImage();
+	}
+
+	//Size of image after orientation, before zoom
+	int getOrientedImageWidth() {
+		return mImgWidth;
+	}
+
+	int getOrientedImageHeight() {
+		return mImgHeight;
+	}
+
+	void getOrientationMatrix(Matrix out) {
+		out.set(mOrientationMatrix);
+	}
+
+	//Orientation from 5 to 8 swaps width and height
+	private boolean isOrientationTransposed() {
+		return mOrientation >= 5;
+	}
+
+	//Drawable of width*height is mapped to an image of its oriented size, whose left-top is at (0, 0)
+	private void updateOrientationMatrix(int width, int height) {
+		float w = width, h = height;
+		float[] values;
+		switch (mOrientation) {
+		case 2: values = new float[]{-1, 0, w, 0, 1, 0, 0, 0, 1}; break;		//flip horizontal
+		case 3: values = new float[]{-1, 0, w, 0, -1, h, 0, 0, 1}; break;		//rotate 180
+		case 4: values = new float[]{1, 0, 0, 0, -1, h, 0, 0, 1}; break;		//flip vertical
+		case 5: values = new float[]{0, 1, 0, 1, 0, 0, 0, 0, 1}; break;			//transpose
+		case 6: values = new float[]{0, -1, h, 1, 0, 0, 0, 0, 1}; break;		//rotate 90 clockwise
+		case 7: values = new float[]{0, -1, h, -1, 0, w, 0, 0, 1}; break;		//transverse
+		case 8: values = new float[]{0, 1, 0, -1, 0, w, 0, 0, 1}; break;		//rotate 270 clockwise
+		default: values = new float[]{1, 0, 0, 0, 1, 0, 0, 0, 1}; break;
+		}
+		mOrientationMatrix.setValues(values);
+	}
+
+	//Set mMatrix to ImageView that is transformed by gesture or animation
+	private void applyImageMatrix() {
+		transformImage();
+		if (mGroup != null) {
+			mGroup.onMemberTransformed(this);
+		}
+	}
+
+	//Apply mMatrix to the drawing in layer while promoted, or set it to ImageView
+	private void transformImage() {
+		if (mLayer != null) {
+			mLayer.mController.onTransform(SystemClock.uptimeMillis());
+			if (mLayer.transform()) {
+				return;
+			}
+		}
+		updateImageMatrix();
+	}
+
+	//Set mMatrix to ImageView, with orientation of image
+	private void updateImageMatrix() {
+		mDrawMatrix.set(mMatrix);
+		//snap translation to whole pixels, so the image is drawn sharply
+		mDrawMatrix.getValues(mValues);
+		float snapX = Math.round(mValues[Matrix.MTRANS_X]) - mValues[Matrix.MTRANS_X];
+		float snapY = Math.round(mValues[Matrix.MTRANS_Y]) - mValues[Matrix.MTRANS_Y];
+		mDrawMatrix.postTranslate(snapX, snapY);
+		mDrawMatrix.preConcat(mOrientationMatrix);
+		setImageMatrix(mDrawMatrix);
+		//clip of drawing follows the image where it is drawn, not the float position
+		mDrawClipF.set(0, 0, mImgWidth, mImgHeight);
+		mMatrix.mapRect(mDrawClipF);
+		mDrawClipF.offset(snapX, snapY);
+		if (mLayer != null && mLayer.mController.isPromoted()) {
+			mLayer.redraw(mDrawClipF);		//before clipping to view, a snapshot covers more
+		}
+		if (mDrawClipF.intersect(-getPaddingLeft(), -getPaddingTop(), getWidth() - getPaddingLeft(), getHeight() - getPaddingTop())) {
+			mDrawClipF.roundOut(mDrawClip);
+		} else {
+			mDrawClip.setEmpty();
+		}
+		updateVisibleRect(true);
+	}
+
+	//Compute the region of image that is visible in view, and tell it to a drawable of image source if updateViewport,
+	//which is skipped while the layer is transformed, for the drawable is still drawn at the matrix of layer
+	private void updateVisibleRect(boolean updateViewport) {
+		//visible part of image in content coordinates, the bounds of view are offset by padding
+		mVisibleViewRect.set(0, 0, mImgWidth, mImgHeight);
+		mMatrix.mapRect(mVisibleViewRect);
+		if (!mVisibleViewRect.intersect(-getPaddingLeft(), -getPaddingTop(),
+				getWidth() - getPaddingLeft(), getHeight() - getPaddingTop())) {
+			mVisibleViewRect.setEmpty();
+		}
+		mImageInverseValid = mMatrix.invert(mImageInverse);
+		if (mVisibleViewRect.isEmpty() || !mImageInverseValid) {
+			mVisibleImageRect.setEmpty();
+		} else {
+			mVisibleImageRect.set(mVisibleViewRect);
+			mImageInverse.mapRect(mVisibleImageRect);
+		}
+		for (int i = 0; i < mTransformObservers.size(); i++) {
+			mTransformObservers.get(i).onTransformChanged(this);
+		}
+		if (!updateViewport) {
+			return;
+		}
+
+		Drawable drawable = getDrawable();
+		if (drawable instanceof MovieDrawable) {		//frames of animation are rendered at the scale of view
+			mMatrix.getValues(mValues);
+			((MovieDrawable) drawable).setScale(Math.max(Math.abs(mValues[Matrix.MSCALE_X]), Math.abs(mValues[Matrix.MSCALE_Y])));
+			return;
+		}
+		if (!(drawable instanceof ImageSourceDrawable) || getWidth() == 0 || getHeight() == 0) {
+			return;
+		}
+		if (mInverseMatrix == null) {
+			mInverseMatrix = new Matrix();
+			mViewportRect = new RectF();
+		}
+		if (!mDrawMatrix.invert(mInverseMatrix)) {
+			return;
+		}
+		mViewportRect.set(mVisibleViewRect);
+		mInverseMatrix.mapRect(mViewportRect);
+		mMatrix.getValues(mValues);
+		float scale = Math.max(Math.abs(mValues[Matrix.MSCALE_X]), Math.abs(mValues[Matrix.MSCALE_Y]));
+		((ImageSourceDrawable) drawable).setViewport(mViewportRect, scale);
+	}
+
+	/**
+	 * Get the region of image that is visible in view, in pixels of image after orientation.
+	 * It is updated with the transform and does not allocate, so it can be called in each frame to skip drawing
+	 * of content out of view.
+	 * @param out Rect to receive the region, set to empty if nothing of image is visible
+	 * @return True if any part of image is visible
+	 */
+	public boolean getVisibleImageRect(RectF out) {
+		out.set(mVisibleImageRect);
+		return !out.isEmpty();
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		if (mLayer != null) {
+			mLayer.mController.demote(SystemClock.uptimeMillis());
+		}
+		updateVisibleRect(true);
+	}
+
+	@Override
+	protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+		super.onLayout(changed, left, top, right, bottom);
+		if (mEnterTransition != null && !mEnterTransition.started && getWidth() > 0 && getHeight() > 0) {
+			mEnterTransition.start();
+		}
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		if (getDrawable() == null || mImgWidth == 0 || mImgHeight == 0) {
+			super.onDraw(canvas);
+			return;
+		}
+		int count = canvas.save();
+		canvas.translate(getPaddingLeft(), getPaddingTop());
+		if (mEnterTransition != null && mEnterTransition.started) {
+			canvas.clipRect(mEnterTransition.clip);		//clip from bounds of thumbnail
+		}
+		if (mLayer == null || !mLayer.drawSnapshot(canvas)) {
+			drawContent(canvas, mDrawClip, -getPaddingLeft(), -getPaddingTop(),
+					getWidth() - getPaddingLeft(), getHeight() - getPaddingTop());
+		}
+		canvas.restoreToCount(count);
+	}
+
+	//Draw image clipped to clip, and overlays in left, top, right and bottom, in content coordinates
+	private void drawContent(Canvas canvas, Rect clip, float left, float top, float right, float bottom) {
+		if (!clip.isEmpty()) {		//skip image if it is out of view
+			//clip to visible part of image, so drawables can skip content out of view
+			canvas.save();
+			canvas.clipRect(clip);
+			canvas.translate(-getPaddingLeft(), -getPaddingTop());
+			super.onDraw(canvas);
+			canvas.restore();
+		}
+		//overlays follow the matrix that image is drawn at, which is behind mMatrix while the layer is transformed
+		Matrix matrix = mMatrix, inverse = mImageInverse;
+		if (mLayer != null && mLayer.isDrawn()) {
+			matrix = mLayer.mBase;
+			inverse = mLayer.mBaseInverse;
+		} else if (!mImageInverseValid) {
+			return;
+		}
+		for (int i = 0; i < mOverlays.size(); i++) {
+			mOverlays.get(i).draw(canvas, matrix, inverse, left, top, right, bottom);
+		}
+	}
+
+	/**
+	 * Add an overlay that is drawn over the image and moves with it. Overlays are drawn in order of adding.
+	 * @param overlay The overlay
+	 */
+	public void addOverlay(ImageOverlay<?> overlay) {
+		if (!mOverlays.contains(overlay)) {
+			mOverlays.add(overlay);
+			overlay.attach(this);
+			invalidate();
+		}
+	}
+
+	/**
+	 * Remove an overlay that added by {@link #addOverlay}.
+	 * @param overlay The overlay
+	 */
+	public void removeOverlay(ImageOverlay<?> overlay) {
+		if (mOverlays.remove(overlay)) {
+			overlay.detach();
+			invalidate();
+		}
+	}
+
 	/**
 	 * Set a value to enable or disable a quick zoom gesture(a double-click to zoom in and a multi-click to zoom out). 
 	 * @param quickZoomable True for enable the gesture, false otherwise
@@ -231,6 +872,7 @@ public class GestureImageView extends ImageView {
 	 */
 	public void setDoubleClickable(boolean dblClickable) {
 		mDblClickable = dblClickable;
+		updateDoubleTapDetection();
 	}
 
 	/**
@@ -256,6 +898,129 @@ public class GestureImageView extends ImageView {
 		mDblListener = listener;
 	}
 
+	/**
+	 * Enables or disables speculative clicks. By default a click waits for the double-tap timeout, to tell it from
+	 * a double click. If enabled, the click is performed at once when finger up, and {@link OnClickCancelListener}
+	 * is called if a second tap follows. If the view is neither double clickable nor zoomable, clicks never wait.
+	 * @param speculative True to perform clicks speculatively, false otherwise
+	 */
+	public void setSpeculativeClick(boolean speculative) {
+		mSpeculativeClick = speculative;
+		if (mOnTouchListener != null) {
+			mOnTouchListener.setSpeculativeClick(speculative);
+		}
+	}
+
+	/**
+	 * Get whether clicks are performed speculatively.
+	 * @return True if clicks are performed speculatively, false otherwise
+	 */
+	public boolean isSpeculativeClick() {
+		return mSpeculativeClick;
+	}
+
+	/**
+	 * Register a callback to be invoked when a speculative click turns out to be the first tap of a double click.
+	 * @param listener The callback
+	 */
+	public void setOnClickCancelListener(OnClickCancelListener listener) {
+		mClickCancelListener = listener;
+	}
+
+	//A double tap is detected only if some gesture uses it, otherwise clicks need not wait for double-tap timeout.
+	//Zooming uses it for both quick zoom by double click and slide zoom by double tap and move
+	private void updateDoubleTapDetection() {
+		if (mOnTouchListener != null) {
+			mOnTouchListener.setDoubleTapEnabled(isDoubleClickable() || isZoomable());
+		}
+	}
+
+	/**
+	 * Register a callback to be invoked when this view is clicked, with the position of click on image.
+	 * It is called along with OnClickListener.
+	 * @param listener The callback
+	 */
+	public void setOnImageTapListener(OnImageTapListener listener) {
+		mTapListener = listener;
+	}
+
+	/**
+	 * Register a callback to be invoked when this view is double clicked, with the position of click on image.
+	 * It is called along with OnDoubleClickListener.
+	 * @param listener The callback
+	 */
+	public void setOnImageDoubleTapListener(OnImageTapListener listener) {
+		mDblTapListener = listener;
+	}
+
+	/**
+	 * Register a callback to be invoked when this view is long clicked, with the position of click on image.
+	 * It is called along with OnLongClickListener.
+	 * @param listener The callback
+	 */
+	public void setOnImageLongPressListener(OnImageTapListener listener) {
+		mLongPressListener = listener;
+	}
+
+	/**
+	 * Map points in view to pixels of image after orientation, by the current transform.
+	 * @param points Pairs of (x, y) in view, replaced by the mapped positions
+	 * @return False if the image has no size, and points are not changed
+	 */
+	public boolean mapViewToImage(float[] points) {
+		if (!mImageInverseValid) {
+			return false;
+		}
+		for (int i = 0; i + 1 < points.length; i += 2) {
+			points[i] -= getPaddingLeft();
+			points[i + 1] -= getPaddingTop();
+		}
+		mImageInverse.mapPoints(points);
+		return true;
+	}
+
+	/**
+	 * Map pixels of image after orientation to points in view, by the current transform.
+	 * @param points Pairs of (x, y) in image pixels, replaced by the mapped positions
+	 */
+	public void mapImageToView(float[] points) {
+		mMatrix.mapPoints(points);
+		for (int i = 0; i + 1 < points.length; i += 2) {
+			points[i] += getPaddingLeft();
+			points[i + 1] += getPaddingTop();
+		}
+	}
+
+	/**
+	 * Find the item of an overlay at a point in view. An item is hit if the point is within
+	 * the margin of overlay from it, see {@link ImageOverlay#setMargin}.
+	 * @param overlay The overlay
+	 * @param viewX Position on X axis in view
+	 * @param viewY Position on Y axis in view
+	 * @return The nearest item that is hit, or null if none
+	 */
+	public <T> T hitTestOverlay(ImageOverlay<T> overlay, float viewX, float viewY) {
+		mTapPoint[0] = viewX;
+		mTapPoint[1] = viewY;
+		if (!mapViewToImage(mTapPoint)) {
+			return null;
+		}
+		mMatrix.getValues(mValues);
+		float radius = overlay.getMargin() / Math.abs(mValues[Matrix.MSCALE_X]);
+		return overlay.hitTest(mTapPoint[0], mTapPoint[1], radius);
+	}
+
+	private void dispatchImageTap(OnImageTapListener listener, PointF point) {
+		if (listener == null) {
+			return;
+		}
+		mTapPoint[0] = point.x;
+		mTapPoint[1] = point.y;
+		if (mapViewToImage(mTapPoint)) {
+			listener.onImageTap(this, point.x, point.y, mTapPoint[0], mTapPoint[1]);
+		}
+	}
+
 	/**
 	 * Indicates whether this view reacts to zoom events or not.
 	 * @return True if the view is draggable, false otherwise
@@ -286,6 +1051,7 @@ public class GestureImageView extends ImageView {
 	 */
 	public void setZoomable(boolean zoomable) {
 		mZoomable = zoomable;
+		updateDoubleTapDetection();
 	}
 
 	/**
@@ -295,12 +1061,22 @@ public class GestureImageView extends ImageView {
 	 * @return True if this event has been performed, false otherwise
 	 */
 	public boolean performDrag(int dx, int dy) {
+		return performDrag((float) dx, (float) dy);
+	}
+
+	/**
+	 * Perform a drag event in sub-pixel distance, and will call {@link OnDragListener#onDragEnd} if it is moved.
+	 * @param dx The distance of X axis that should be translate
+	 * @param dy The distance of Y axis that should be translate
+	 * @return True if this event has been performed, false otherwise
+	 */
+	public boolean performDrag(float dx, float dy) {
 		mDragListener.onDragStart(false);
 		return privatePerformDrag(false, dx, dy, true);
 	}
 
-	private boolean privatePerformDrag(boolean byGesture, int dx, int dy, boolean shouldCallback) {
-		int[] realDistance = checkRealDistance(dx, dy);
+	private boolean privatePerformDrag(boolean byGesture, float dx, float dy, boolean shouldCallback) {
+		float[] realDistance = checkRealDistance(dx, dy);
 		//cannot drag anymore
 		if (realDistance[0]==0 && realDistance[1]==0) {
 			fitTranslate();
@@ -314,6 +1090,36 @@ public class GestureImageView extends ImageView {
 		return true;
 	}
 
+	/**
+	 * Check if the image can be dragged further in a direction, so a parent that scrolls horizontally, such as
+	 * {@link GestureImagePager}, can take over the drag once the edge of image is reached.
+	 * @param direction Negative to check scrolling left (image moves right), positive to check scrolling right
+	 * @return True if the image can be dragged in that direction
+	 */
+	@Override
+	public boolean canScrollHorizontally(int direction) {
+		if (!isDraggable() || getDrawable() == null) {
+			return false;
+		}
+		//the image moves opposite to scrolling. A distance of opposite sign means it is over limit and springs back
+		float real = checkRealDistance(direction > 0? -1f: 1f, 0)[0];
+		return direction > 0? real < 0: real > 0;
+	}
+
+	/**
+	 * Check if the image can be dragged further in a vertical direction.
+	 * @param direction Negative to check scrolling up (image moves down), positive to check scrolling down
+	 * @return True if the image can be dragged in that direction
+	 */
+	@Override
+	public boolean canScrollVertically(int direction) {
+		if (!isDraggable() || getDrawable() == null) {
+			return false;
+		}
+		float real = checkRealDistance(0, direction > 0? -1f: 1f)[1];
+		return direction > 0? real < 0: real > 0;
+	}
+
 	/**
 	 * Reset drag the initialized state.
 	 */
@@ -332,17 +1138,28 @@ public class GestureImageView extends ImageView {
 	 * @return True if zoom event has been performed, false otherwise(may reach the min or max scale)
 	 */
 	public boolean performZoom(float scale, int centerX, int centerY) {
+		return performZoom(scale, (float) centerX, (float) centerY);
+	}
+
+	/**
+	 * Perform a zoom event around a sub-pixel center, and will call {@link OnZoomListener#onZoomEnd} if it is zoomed.
+	 * @param scale The scale that should be zoom
+	 * @param centerX The pointX of center point of this zoom
+	 * @param centerY The pointY of center point of this zoom
+	 * @return True if zoom event has been performed, false otherwise(may reach the min or max scale)
+	 */
+	public boolean performZoom(float scale, float centerX, float centerY) {
 		mZoomListener.onZoomStart(false);
 		return privatePerformZoom(false, scale, centerX, centerY, true);
 	}
 
 	//private
-	private boolean privatePerformZoom(boolean byGesture, float scale, int centerX, int centerY, boolean shouldCallback) {
+	private boolean privatePerformZoom(boolean byGesture, float scale, float centerX, float centerY, boolean shouldCallback) {
 		float realScale = checkRealScale(scale);
 		//cannot zoom anymore
 		if (realScale==1f) {
 			fitTranslate();
-			mZoomListener.onZoomEnd(byGesture, 1, centerX, centerY);
+			mZoomListener.onZoomEnd(byGesture, 1, (int) centerX, (int) centerY);
 			return false;
 		}
 		zoomAnimated(byGesture, realScale, centerX, centerY, shouldCallback);
@@ -394,6 +1211,57 @@ public class GestureImageView extends ImageView {
 		performDrag(viewCenterX - imageCenterX, 0);
 	}
 
+	/**
+	 * Move a point of image to center of this view by animation, as far as the drag limit allows.
+	 * If it is called again before the animation ends, the running animation turns to the new point
+	 * instead of starting over, so it can follow a finger, e.g. on a minimap.
+	 * @param imageX Position on X axis in image pixels after orientation
+	 * @param imageY Position on Y axis in image pixels after orientation
+	 */
+	public void animateCenterTo(float imageX, float imageY) {
+		mMatrix.getValues(mValues);
+		float targetX = getWidth() / 2f - getPaddingLeft() - imageX * mValues[Matrix.MSCALE_X];
+		float targetY = getHeight() / 2f - getPaddingTop() - imageY * mValues[Matrix.MSCALE_Y];
+		if (!canDragOverLimit()) {
+			float[] limit = computeTranslateLimit();
+			targetX = Math.max(limit[0], Math.min(limit[1], targetX));
+			targetY = Math.max(limit[2], Math.min(limit[3], targetY));
+		}
+		if (mCenterAnimation != null && !mCenterAnimation.finished) {
+			mCenterAnimation.targetX = targetX;
+			mCenterAnimation.targetY = targetY;
+			return;
+		}
+		if (mFling != null) {
+			mFling.cancel();
+		}
+		mDragListener.onDragStart(false);
+		mCenterAnimation = new CenterAnimation(targetX, targetY);
+		compatPostOnAnimation(mCenterAnimation);
+	}
+
+	//Bounds of translation that keep image in drag limit: minX, maxX, minY, maxY
+	private float[] computeTranslateLimit() {
+		getImageBounds(mBounds);
+		float minX, maxX, minY, maxY;
+		if (mBounds.width() > getWidth() + mExtendLimitLeft + mExtendLimitRight) {
+			maxX = 0 - mExtendLimitLeft;
+			minX = getWidth() + mExtendLimitRight - mBounds.width();
+		} else {
+			minX = 0 - mExtendLimitLeft;
+			maxX = getWidth() + mExtendLimitRight - mBounds.width();
+		}
+
+		if (mBounds.height() > getHeight() + mExtendLimitTop + mExtendLimitBottom) {
+			maxY = 0 - mExtendLimitTop;
+			minY = getHeight() + mExtendLimitBottom - mBounds.height();
+		} else {
+			minY = 0 - mExtendLimitTop;
+			maxY = getHeight() + mExtendLimitBottom - mBounds.height();
+		}
+		return new float[]{minX, maxX, minY, maxY};
+	}
+
 	/**
 	 * Set image to center of this view by animation.
 	 */
@@ -414,7 +1282,7 @@ public class GestureImageView extends ImageView {
 		if (!isZoomable()) {
 			setZoomable(true);
 		}
-		mZoomListener = listener == null ? emptyZoomListener : listener;
+		listenerDispatcher().setZoomListener(listener == null ? emptyZoomListener : listener);
 	}
 
 	/**
@@ -426,7 +1294,60 @@ public class GestureImageView extends ImageView {
 		if (!isDraggable()) {
 			setDraggable(true);
 		}
-		mDragListener = listener == null ? emptyDragListener : listener;
+		listenerDispatcher().setDragListener(listener == null ? emptyDragListener : listener);
+	}
+
+	/**
+	 * Set how {@link OnZoomListener#onZooming} and {@link OnDragListener#onDragging} are called.
+	 * In merged modes, the step of a callback is the product of zoom steps or the sum of drag steps since
+	 * the last callback, and getters such as {@link #getImageScale} return the current transform.
+	 * Start and end callbacks are called in order after the merged steps before them.
+	 * @param mode {@link #DISPATCH_IMMEDIATE} to call in each step, which is the default value,
+	 * {@link #DISPATCH_PER_FRAME} to call at most once per frame,
+	 * or {@link #DISPATCH_THROTTLED} to call at most once per interval set by {@link #setListenerDispatchInterval}
+	 */
+	public void setListenerDispatchMode(int mode) {
+		if (mode != DISPATCH_IMMEDIATE && mode != DISPATCH_PER_FRAME && mode != DISPATCH_THROTTLED) {
+			throw new IllegalArgumentException("Unknown dispatch mode: " + mode);
+		}
+		listenerDispatcher().setMode(mode);
+	}
+
+	/**
+	 * Get the mode that set by {@link #setListenerDispatchMode}.
+	 * @return The mode
+	 */
+	public int getListenerDispatchMode() {
+		return mListenerDispatcher == null? DISPATCH_IMMEDIATE: mListenerDispatcher.getMode();
+	}
+
+	/**
+	 * Set the interval of callbacks in {@link #DISPATCH_THROTTLED} mode. Default value is 100 milliseconds.
+	 * @param millis Interval in milliseconds
+	 */
+	public void setListenerDispatchInterval(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("Interval must not be negative: " + millis);
+		}
+		listenerDispatcher().setInterval(millis);
+	}
+
+	/**
+	 * Get the interval that set by {@link #setListenerDispatchInterval}.
+	 * @return Interval in milliseconds
+	 */
+	public long getListenerDispatchInterval() {
+		return mListenerDispatcher == null? TransformListenerDispatcher.DEFAULT_INTERVAL: mListenerDispatcher.getInterval();
+	}
+
+	//Views without listeners call the empty ones directly, the dispatcher is created when it has something to do
+	private TransformListenerDispatcher listenerDispatcher() {
+		if (mListenerDispatcher == null) {
+			mListenerDispatcher = new TransformListenerDispatcher(this, emptyZoomListener, emptyDragListener);
+			mZoomListener = mListenerDispatcher;
+			mDragListener = mListenerDispatcher;
+		}
+		return mListenerDispatcher;
 	}
 
 	/**
@@ -437,12 +1358,23 @@ public class GestureImageView extends ImageView {
 	 * @return True if it has been scaled, false otherwise(will reach the min or max scale after setScale so it is prevented)
 	 */
 	public boolean postImageScale(float scale, int centerX, int centerY) {
+		return postImageScale(scale, (float) centerX, (float) centerY);
+	}
+
+	/**
+	 * Set scale to this ImageView around a sub-pixel center.
+	 * @param scale The scale that should be set
+	 * @param centerX The pointX of center point of this zoom
+	 * @param centerY The pointY of center point of this zoom
+	 * @return True if it has been scaled, false otherwise(will reach the min or max scale after setScale so it is prevented)
+	 */
+	public boolean postImageScale(float scale, float centerX, float centerY) {
 		//cannot zoom by this scale
 		if (checkRealScale(scale)!=scale) {
 			return false;
 		}
 		mMatrix.postScale(scale, scale, centerX, centerY);
-		setImageMatrix(mMatrix);
+		applyImageMatrix();
 		return true;
 	}
 
@@ -453,13 +1385,23 @@ public class GestureImageView extends ImageView {
 	 * @return True if this event has been performed, false otherwise(will reach border after setTranslate so it is prevented)
 	 */
 	public boolean postImageTranslate(int dx, int dy) {
-		int[] realDistance = checkRealDistance(dx, dy);
+		return postImageTranslate((float) dx, (float) dy);
+	}
+
+	/**
+	 * Set translate to this ImageView in sub-pixel distance.
+	 * @param dx The distance of X axis that should be translate
+	 * @param dy The distance of Y axis that should be translate
+	 * @return True if this event has been performed, false otherwise(will reach border after setTranslate so it is prevented)
+	 */
+	public boolean postImageTranslate(float dx, float dy) {
+		float[] realDistance = checkRealDistance(dx, dy);
 		//cannot translate by this distance
 		if (realDistance[0]-dx!=0 || realDistance[1]-dy!=0) {
 			return false;
 		}
 		mMatrix.postTranslate(dx, dy);
-		setImageMatrix(mMatrix);
+		applyImageMatrix();
 		return true;
 	}
 
@@ -649,8 +1591,251 @@ public class GestureImageView extends ImageView {
 	}
 
 	@Override
-	public void setOnTouchListener(OnTouchListener l) {
-		mOnTouchListener.setUserTouchListener(l);
+	public void setOnTouchListener(OnTouchListener l) {
+		mUserTouchListener = l;
+		if (mOnTouchListener != null) {
+			mOnTouchListener.setUserTouchListener(l);
+		}
+	}
+
+	@Override
+	public boolean dispatchTouchEvent(MotionEvent event) {
+		ensureTouchListener();
+		if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+			mNestedOffsetX = 0;
+			mNestedOffsetY = 0;
+		}
+		mLastEventTime = event.getEventTime();
+		boolean viewTransformed = mLayer != null && mLayer.isViewTransformed();
+		if (!viewTransformed && mNestedOffsetX == 0 && mNestedOffsetY == 0) {
+			if (mPredictTime > 0) {
+				addPredictorSamples(event);
+			}
+			return super.dispatchTouchEvent(event);
+		}
+		MotionEvent offsetEvent = MotionEvent.obtain(event);
+		if (viewTransformed) {
+			//the event comes in coordinates of the scaled layer, map it back to the view as laid out
+			mLayer.mapTouchEvent(offsetEvent);
+		}
+		if (mPredictTime > 0) {
+			addPredictorSamples(offsetEvent);
+		}
+		//parent has moved this view in this gesture, so the event is offset back to keep distance continuous
+		offsetEvent.offsetLocation(mNestedOffsetX, mNestedOffsetY);
+		boolean handled = super.dispatchTouchEvent(offsetEvent);
+		offsetEvent.recycle();
+		return handled;
+	}
+
+	@Override
+	public void invalidateDrawable(Drawable dr) {
+		if (mLayer != null && dr == getDrawable()) {
+			mLayer.invalidateSnapshot();		//e.g. a tile or a frame of animation is ready
+		}
+		super.invalidateDrawable(dr);
+	}
+
+	/**
+	 * Set how far ahead the image is moved along the velocity of fingers in drag and pinch, to cut the latency
+	 * between touch and display. It should be about the time from a touch event to the display of its frame.
+	 * The prediction is replaced by the real position on each touch event, and removed when fingers up.
+	 * @param millis Time to predict in milliseconds, up to 32. 0 to disable prediction, which is the default value
+	 */
+	public void setTouchPredictionTime(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("Prediction time must not be negative: " + millis);
+		}
+		mPredictTime = Math.min(millis, TouchPredictor.MAX_HORIZON);
+		if (mDragPredictor == null) {
+			if (mPredictTime == 0) {
+				return;
+			}
+			mDragPredictor = new TouchPredictor();
+			mPinchPredictor = new TouchPredictor();
+		}
+		mDragPredictor.reset();
+		mPinchPredictor.reset();
+	}
+
+	/**
+	 * Get the time of touch prediction that set by {@link #setTouchPredictionTime}.
+	 * @return Time to predict in milliseconds, 0 if prediction is disabled
+	 */
+	public long getTouchPredictionTime() {
+		return mPredictTime;
+	}
+
+	//Feed position of single finger and span of two fingers, including historical samples that batched in event
+	private void addPredictorSamples(MotionEvent event) {
+		int action = event.getActionMasked();
+		if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN || action == MotionEvent.ACTION_POINTER_UP) {
+			mDragPredictor.reset();
+			mPinchPredictor.reset();
+			return;
+		}
+		if (action != MotionEvent.ACTION_MOVE) {
+			return;
+		}
+		if (event.getPointerCount() == 1) {
+			for (int i = 0; i < event.getHistorySize(); i++) {
+				mDragPredictor.addSample(event.getHistoricalEventTime(i),
+						event.getHistoricalX(i) + mNestedOffsetX, event.getHistoricalY(i) + mNestedOffsetY);
+			}
+			mDragPredictor.addSample(event.getEventTime(), event.getX() + mNestedOffsetX, event.getY() + mNestedOffsetY);
+		} else {
+			for (int i = 0; i < event.getHistorySize(); i++) {
+				float dx = event.getHistoricalX(1, i) - event.getHistoricalX(0, i);
+				float dy = event.getHistoricalY(1, i) - event.getHistoricalY(0, i);
+				mPinchPredictor.addSample(event.getHistoricalEventTime(i), (float) Math.sqrt(dx * dx + dy * dy), 0);
+			}
+			float dx = event.getX(1) - event.getX(0);
+			float dy = event.getY(1) - event.getY(0);
+			mPinchPredictor.addSample(event.getEventTime(), (float) Math.sqrt(dx * dx + dy * dy), 0);
+		}
+	}
+
+	//Move image further by the predicted move of finger from the real position
+	private void applyDragPrediction(PointF real) {
+		if (mPredictTime <= 0 || !mDragPredictor.predict(mLastEventTime + mPredictTime, mPredicted)) {
+			return;
+		}
+		float dx = mPredicted[0] - real.x;
+		float dy = mPredicted[1] - real.y;
+		if (mCanDragOverLimit != OverlimitFlag.OVER) {
+			float[] r = checkRealDistance(dx, dy);
+			dx = r[0];
+			dy = r[1];
+		}
+		mPredictDx = dx;
+		mPredictDy = dy;
+		mMatrix.postTranslate(dx, dy);
+	}
+
+	//Remove the predicted move from image. Return true if mMatrix is changed
+	private boolean clearDragPrediction() {
+		if (mPredictDx == 0 && mPredictDy == 0) {
+			return false;
+		}
+		mMatrix.postTranslate(-mPredictDx, -mPredictDy);
+		mPredictDx = 0;
+		mPredictDy = 0;
+		return true;
+	}
+
+	//Zoom image further by the predicted span of fingers
+	private void applyPinchPrediction(float realSpan, float centerX, float centerY) {
+		if (mPredictTime <= 0 || !mPinchPredictor.predict(mLastEventTime + mPredictTime, mPredicted)) {
+			return;
+		}
+		float scale = mPinchZoom.scaleOf(mPredicted[0] - realSpan);
+		if (mCanZoomOverLimit != OverlimitFlag.OVER) {
+			scale = checkRealScale(scale);
+		}
+		mPredictScale = scale;
+		mPredictCenterX = centerX;
+		mPredictCenterY = centerY;
+		mMatrix.postScale(scale, scale, centerX, centerY);
+	}
+
+	//Remove the predicted zoom from image. Return true if mMatrix is changed
+	private boolean clearPinchPrediction() {
+		if (mPredictScale == 1f) {
+			return false;
+		}
+		mMatrix.postScale(1f / mPredictScale, 1f / mPredictScale, mPredictCenterX, mPredictCenterY);
+		mPredictScale = 1f;
+		return true;
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		if (mNestedHelper != null) {
+			mNestedHelper.onDetachedFromWindow();
+		}
+		if (mLayer != null) {
+			mLayer.mController.demote(SystemClock.uptimeMillis());
+			mLayer.recycleSnapshot();
+		}
+		if (mListenerDispatcher != null) {
+			mListenerDispatcher.flush();
+		}
+		if (mEnterTransition != null) {
+			mEnterTransition.finish();
+		}
+		super.onDetachedFromWindow();
+	}
+
+	private void requestParentDisallowIntercept(boolean disallow) {
+		ViewParent parent = getParent();
+		if (parent != null) {
+			parent.requestDisallowInterceptTouchEvent(disallow);
+		}
+	}
+
+	/**
+	 * Enables or disables nested scrolling. It is enabled by default, then a drag that is clamped at the edge of image
+	 * passes the remaining distance to a nested scrolling parent, such as {@link GestureImagePager} or NestedScrollView.
+	 * @param enabled True to enable nested scrolling, false otherwise
+	 */
+	@Override
+	public void setNestedScrollingEnabled(boolean enabled) {
+		mNestedScrollingEnabled = enabled;
+		if (mNestedHelper != null) {
+			mNestedHelper.setNestedScrollingEnabled(enabled);
+		}
+	}
+
+	@Override
+	public boolean isNestedScrollingEnabled() {
+		return mNestedHelper != null? mNestedHelper.isNestedScrollingEnabled(): mNestedScrollingEnabled;
+	}
+
+	@Override
+	public boolean startNestedScroll(int axes) {
+		if (mNestedHelper == null) {
+			if (!mNestedScrollingEnabled) {
+				return false;
+			}
+			mNestedHelper = new NestedScrollingChildHelper(this);
+			mNestedHelper.setNestedScrollingEnabled(true);
+		}
+		return mNestedHelper.startNestedScroll(axes);
+	}
+
+	//Before the first nested scroll there is no parent, so the methods below have nothing to dispatch
+
+	@Override
+	public void stopNestedScroll() {
+		if (mNestedHelper != null) {
+			mNestedHelper.stopNestedScroll();
+		}
+	}
+
+	@Override
+	public boolean hasNestedScrollingParent() {
+		return mNestedHelper != null && mNestedHelper.hasNestedScrollingParent();
+	}
+
+	@Override
+	public boolean dispatchNestedScroll(int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed, int[] offsetInWindow) {
+		return mNestedHelper != null
+				&& mNestedHelper.dispatchNestedScroll(dxConsumed, dyConsumed, dxUnconsumed, dyUnconsumed, offsetInWindow);
+	}
+
+	@Override
+	public boolean dispatchNestedPreScroll(int dx, int dy, int[] consumed, int[] offsetInWindow) {
+		return mNestedHelper != null && mNestedHelper.dispatchNestedPreScroll(dx, dy, consumed, offsetInWindow);
+	}
+
+	@Override
+	public boolean dispatchNestedFling(float velocityX, float velocityY, boolean consumed) {
+		return mNestedHelper != null && mNestedHelper.dispatchNestedFling(velocityX, velocityY, consumed);
+	}
+
+	@Override
+	public boolean dispatchNestedPreFling(float velocityX, float velocityY) {
+		return mNestedHelper != null && mNestedHelper.dispatchNestedPreFling(velocityX, velocityY);
 	}
 
 	@Override
@@ -690,7 +1875,7 @@ public class GestureImageView extends ImageView {
 			mMatrix.postScale(scale, scale, vW/2, vH/2);
 		} else if (type==ScaleType.FIT_END) {
 			mMatrix.postTranslate((int)(vW-bW), (int)(vH-bH));
-			setImageMatrix(mMatrix);
+			updateImageMatrix();
 			float scale = sW<sH? sW: sH;		//switch the min
 			mMatrix.postScale(scale, scale, vW, vH);
 		} else if (type==ScaleType.FIT_START) {
@@ -703,7 +1888,14 @@ public class GestureImageView extends ImageView {
 			throw new UnsupportedOperationException("Unsupported ScaleType");
 		}
 		mMatrixOrigin = new Matrix(mMatrix);
-		setImageMatrix(mMatrix);
+		if (mEnterTransition != null && mEnterTransition.started) {
+			mEnterTransition.apply();		//keep animating to the new base transform
+		} else {
+			updateImageMatrix();
+		}
+		if (mGroup != null) {
+			mGroup.onMemberReset(this);
+		}
 	}
 
 	/**
@@ -747,6 +1939,17 @@ public class GestureImageView extends ImageView {
 		return (int)(values[Matrix.MTRANS_X] + values[Matrix.MSCALE_X]*mImgWidth);
 	}
 
+	/**
+	 * Get the borders of image after translated or zoomed, in sub-pixel precision.
+	 * @param out Rect to receive the borders
+	 */
+	public void getImageBounds(RectF out) {
+		mMatrix.getValues(mValues);
+		out.set(mValues[Matrix.MTRANS_X], mValues[Matrix.MTRANS_Y],
+				mValues[Matrix.MTRANS_X] + mValues[Matrix.MSCALE_X]*mImgWidth,
+				mValues[Matrix.MTRANS_Y] + mValues[Matrix.MSCALE_Y]*mImgHeight);
+	}
+
 	/**
 	 * Get the width of image after zoomed.
 	 * @return Width value
@@ -767,7 +1970,7 @@ public class GestureImageView extends ImageView {
 		return (int)(values[Matrix.MSCALE_Y]*mImgHeight);
 	}
 
-	private void zoomAnimated(final boolean byGesture, float scale, final int centerX, final int centerY, boolean shouldCallback) {
+	private void zoomAnimated(final boolean byGesture, float scale, final float centerX, final float centerY, boolean shouldCallback) {
 		mAnimator = CompatAnimator.ofFloat(1, scale);
 		mAnimator.setDuration(ANIMATE_DURATION);
 		mAnimator.addUpdateListener(new CompatAnimator.AnimatorUpdateListener() {
@@ -776,51 +1979,15 @@ public class GestureImageView extends ImageView {
 			public void onAnimationUpdate(CompatAnimator animation) {
 				float scale = (Float) animation.getAnimatedValue();
 				zoomProcess(scale / preValue, centerX, centerY);
-				setImageMatrix(mMatrix);
+				applyImageMatrix();
 				preValue = scale;
 			}
 
-			private void zoomProcess(float value, int pointX, int pointY) {
-				if (mCanDragOverLimit != OverlimitFlag.OVER) {
-					int tx = 0, ty = 0;
-					if (value > 1.0f) {
-						if (getImageTop() <= 0 - mExtendLimitTop && getImageBottom() < getHeight() + mExtendLimitBottom) {
-							ty = 0 - mExtendLimitTop - getImageTop();
-							pointY = 0 - mExtendLimitTop;
-						} else if (getImageBottom() >= getHeight() + mExtendLimitBottom && getImageTop() > 0 - mExtendLimitTop) {
-							ty = getHeight() + mExtendLimitBottom - getImageBottom();
-							pointY = getHeight() + mExtendLimitBottom;
-						}
-						if (getImageLeft() <= 0 - mExtendLimitLeft && getImageRight() < getWidth() + mExtendLimitRight) {
-							tx = 0 - mExtendLimitLeft - getImageLeft();
-							pointX = 0 - mExtendLimitLeft;
-						} else if (getImageRight() >= getWidth() + mExtendLimitRight && getImageLeft() > 0 - mExtendLimitLeft) {
-							tx = getWidth() + mExtendLimitRight - getImageRight();
-							pointX = getWidth() + mExtendLimitRight;
-						}
-					} else if (value < 1.0f) {
-						if (getImageTop() >= 0 - mExtendLimitTop && getImageBottom() > getHeight() + mExtendLimitBottom) {
-							ty = 0 - mExtendLimitTop - getImageTop();
-							pointY = 0 - mExtendLimitTop;
-						} else if (getImageBottom() <= getHeight() + mExtendLimitBottom && getImageTop() < 0 - mExtendLimitTop) {
-							ty = getHeight() + mExtendLimitBottom - getImageBottom();
-							pointY = getHeight() + mExtendLimitBottom;
-						}
-						if (getImageLeft() >= 0 - mExtendLimitLeft && getImageRight() > getWidth() + mExtendLimitRight) {
-							tx = 0 - mExtendLimitLeft - getImageLeft();
-							pointX = 0 - mExtendLimitLeft;
-						} else if (getImageRight() <= getWidth() + mExtendLimitRight && getImageLeft() < 0 - mExtendLimitLeft) {
-							tx = getWidth() + mExtendLimitRight - getImageRight();
-							pointX = getWidth() + mExtendLimitRight;
-						}
-					}
-					if (tx!=0 || ty!=0) {
-						mMatrix.postTranslate(tx, ty);
-					}
-				}
-
-				mMatrix.postScale(value, value, pointX, pointY);
-				mZoomListener.onZooming(byGesture, value, pointX, pointY);
+			private void zoomProcess(float value, float pointX, float pointY) {
+				mZoomPivot.set(pointX, pointY);
+				pinEdgesForZoom(value, mZoomPivot);
+				mMatrix.postScale(value, value, mZoomPivot.x, mZoomPivot.y);
+				mZoomListener.onZooming(byGesture, value, (int) mZoomPivot.x, (int) mZoomPivot.y);
 			}
 		});
 		if (shouldCallback) {
@@ -835,7 +2002,51 @@ public class GestureImageView extends ImageView {
 		mAnimator.start(this);
 	}
 
-	private void dragAnimated(final boolean byGesture, final int dx, final int dy, boolean shouldCallback) {
+	//Keep an edge of image that is at limit on it while zooming by scale, by moving the image and the pivot of zoom to that edge.
+	//The pivot is passed in and out by pivot
+	private void pinEdgesForZoom(float scale, PointF pivot) {
+		if (mCanDragOverLimit == OverlimitFlag.OVER) {
+			return;
+		}
+		float tx = 0, ty = 0;
+		getImageBounds(mBounds);
+		if (scale > 1.0f) {
+			if (mBounds.top <= 0 - mExtendLimitTop && mBounds.bottom < getHeight() + mExtendLimitBottom) {
+				ty = 0 - mExtendLimitTop - mBounds.top;
+				pivot.y = 0 - mExtendLimitTop;
+			} else if (mBounds.bottom >= getHeight() + mExtendLimitBottom && mBounds.top > 0 - mExtendLimitTop) {
+				ty = getHeight() + mExtendLimitBottom - mBounds.bottom;
+				pivot.y = getHeight() + mExtendLimitBottom;
+			}
+			if (mBounds.left <= 0 - mExtendLimitLeft && mBounds.right < getWidth() + mExtendLimitRight) {
+				tx = 0 - mExtendLimitLeft - mBounds.left;
+				pivot.x = 0 - mExtendLimitLeft;
+			} else if (mBounds.right >= getWidth() + mExtendLimitRight && mBounds.left > 0 - mExtendLimitLeft) {
+				tx = getWidth() + mExtendLimitRight - mBounds.right;
+				pivot.x = getWidth() + mExtendLimitRight;
+			}
+		} else if (scale < 1.0f) {
+			if (mBounds.top >= 0 - mExtendLimitTop && mBounds.bottom > getHeight() + mExtendLimitBottom) {
+				ty = 0 - mExtendLimitTop - mBounds.top;
+				pivot.y = 0 - mExtendLimitTop;
+			} else if (mBounds.bottom <= getHeight() + mExtendLimitBottom && mBounds.top < 0 - mExtendLimitTop) {
+				ty = getHeight() + mExtendLimitBottom - mBounds.bottom;
+				pivot.y = getHeight() + mExtendLimitBottom;
+			}
+			if (mBounds.left >= 0 - mExtendLimitLeft && mBounds.right > getWidth() + mExtendLimitRight) {
+				tx = 0 - mExtendLimitLeft - mBounds.left;
+				pivot.x = 0 - mExtendLimitLeft;
+			} else if (mBounds.right <= getWidth() + mExtendLimitRight && mBounds.left < 0 - mExtendLimitLeft) {
+				tx = getWidth() + mExtendLimitRight - mBounds.right;
+				pivot.x = getWidth() + mExtendLimitRight;
+			}
+		}
+		if (tx!=0 || ty!=0) {
+			mMatrix.postTranslate(tx, ty);
+		}
+	}
+
+	private void dragAnimated(final boolean byGesture, final float dx, final float dy, boolean shouldCallback) {
 		mAnimator = CompatAnimator.ofFloat(0, 1);
 		mAnimator.setDuration(ANIMATE_DURATION);
 		mAnimator.addUpdateListener(new CompatAnimator.AnimatorUpdateListener() {
@@ -844,8 +2055,9 @@ public class GestureImageView extends ImageView {
 			public void onAnimationUpdate(CompatAnimator animation) {
 				float factor = (Float) animation.getAnimatedValue();
 				mMatrix.postTranslate((factor-preFactor)*dx, (factor-preFactor)*dy);
-				mDragListener.onDragging(byGesture, (int) (factor-preFactor)*dx, (int) (factor-preFactor)*dy);
-				setImageMatrix(mMatrix);
+				//whole pixels of each step, so the steps add up to the whole distance
+				mDragListener.onDragging(byGesture, (int) (factor*dx) - (int) (preFactor*dx), (int) (factor*dy) - (int) (preFactor*dy));
+				applyImageMatrix();
 				preFactor = factor;
 			}
 		});
@@ -861,39 +2073,47 @@ public class GestureImageView extends ImageView {
 		mAnimator.start(this);
 	}
 
-	private int[] checkRealDistance(int dx, int dy) {
+	private float[] checkRealDistance(float dx, float dy) {
 		if (mCanDragOverLimit==OverlimitFlag.OVER) {
-			return new int[]{dx, dy};
+			return new float[]{dx, dy};
 		}
-		int realX, realY;
-		if (getImageWidth() > getWidth() + mExtendLimitLeft + mExtendLimitRight) {
+		getImageBounds(mBounds);
+		float realX, realY;
+		if (mBounds.width() > getWidth() + mExtendLimitLeft + mExtendLimitRight) {
 			if (dx > 0) {
-				realX = Math.min(dx, 0 - mExtendLimitLeft - getImageLeft());
+				realX = Math.min(dx, 0 - mExtendLimitLeft - mBounds.left);
 			} else {
-				realX = Math.max(dx, getWidth() + mExtendLimitRight - getImageRight());
+				realX = Math.max(dx, getWidth() + mExtendLimitRight - mBounds.right);
 			}
 		} else {
 			if (dx > 0) {
-				realX = Math.min(dx, getWidth() + mExtendLimitRight - getImageRight());
+				realX = Math.min(dx, getWidth() + mExtendLimitRight - mBounds.right);
 			} else {
-				realX = Math.max(dx, 0 -mExtendLimitLeft - getImageLeft());
+				realX = Math.max(dx, 0 -mExtendLimitLeft - mBounds.left);
 			}
 		}
 
-		if (getImageHeight() > getHeight() + mExtendLimitTop + mExtendLimitLeft) {
+		if (mBounds.height() > getHeight() + mExtendLimitTop + mExtendLimitLeft) {
 			if (dy > 0) {
-				realY = Math.min(dy, 0 - mExtendLimitTop - getImageTop());
+				realY = Math.min(dy, 0 - mExtendLimitTop - mBounds.top);
 			} else {
-				realY = Math.max(dy, getHeight() + mExtendLimitBottom - getImageBottom());
+				realY = Math.max(dy, getHeight() + mExtendLimitBottom - mBounds.bottom);
 			}
 		} else {
 			if (dy > 0) {
-				realY = Math.min(dy, getHeight() + mExtendLimitBottom - getImageBottom());
+				realY = Math.min(dy, getHeight() + mExtendLimitBottom - mBounds.bottom);
 			} else {
-				realY = Math.max(dy, 0 - mExtendLimitTop - getImageTop());
+				realY = Math.max(dy, 0 - mExtendLimitTop - mBounds.top);
 			}
 		}
-		return new int[]{realX, realY};
+		//an edge that is within error of float at limit is at limit
+		if (realX != dx && Math.abs(realX) < EDGE_EPSILON) {
+			realX = 0;
+		}
+		if (realY != dy && Math.abs(realY) < EDGE_EPSILON) {
+			realY = 0;
+		}
+		return new float[]{realX, realY};
 	}
 
 	private float checkRealScale(float scale) {
@@ -915,35 +2135,42 @@ public class GestureImageView extends ImageView {
 		if (mCanDragOverLimit==OverlimitFlag.OVER) {
 			callAfterDrag(true, movedX, movedY);
 		} else if (mCanDragOverLimit==OverlimitFlag.SPRING_BACK) {
-			int fixX = 0, fixY = 0;
-			if (getImageWidth() > getWidth() + mExtendLimitLeft + mExtendLimitRight) {
-				if (movedX > 0 && getImageLeft() > 0 - mExtendLimitLeft) {
-					fixX = 0 - mExtendLimitLeft - getImageLeft();
-				} else if (movedX < 0 && getImageRight() < getWidth() + mExtendLimitRight) {
-					fixX = getWidth() + mExtendLimitRight - getImageRight();
+			getImageBounds(mBounds);
+			float fixX = 0, fixY = 0;
+			if (mBounds.width() > getWidth() + mExtendLimitLeft + mExtendLimitRight) {
+				if (movedX > 0 && mBounds.left > 0 - mExtendLimitLeft) {
+					fixX = 0 - mExtendLimitLeft - mBounds.left;
+				} else if (movedX < 0 && mBounds.right < getWidth() + mExtendLimitRight) {
+					fixX = getWidth() + mExtendLimitRight - mBounds.right;
 				}
 			} else {
-				if (movedX > 0 && getImageRight() > getWidth() + mExtendLimitRight) {
-					fixX = getWidth() + mExtendLimitRight - getImageRight();
-				} else if (movedX < 0 && getImageLeft() < 0 - mExtendLimitLeft) {
-					fixX = 0 - mExtendLimitLeft - getImageLeft();
+				if (movedX > 0 && mBounds.right > getWidth() + mExtendLimitRight) {
+					fixX = getWidth() + mExtendLimitRight - mBounds.right;
+				} else if (movedX < 0 && mBounds.left < 0 - mExtendLimitLeft) {
+					fixX = 0 - mExtendLimitLeft - mBounds.left;
 				}
 			}
 
-			if (getImageHeight() > getHeight() + mExtendLimitTop + mExtendLimitBottom) {
-				if (movedY > 0 && getImageTop() > 0 - mExtendLimitTop) {
-					fixY = 0 - mExtendLimitTop - getImageTop();
-				} else if (movedY < 0 && getImageBottom() < getHeight() + mExtendLimitBottom) {
-					fixY = getHeight() + mExtendLimitBottom - getImageBottom();
+			if (mBounds.height() > getHeight() + mExtendLimitTop + mExtendLimitBottom) {
+				if (movedY > 0 && mBounds.top > 0 - mExtendLimitTop) {
+					fixY = 0 - mExtendLimitTop - mBounds.top;
+				} else if (movedY < 0 && mBounds.bottom < getHeight() + mExtendLimitBottom) {
+					fixY = getHeight() + mExtendLimitBottom - mBounds.bottom;
 				}
 			} else {
-				if (movedY > 0 && getImageBottom() > getHeight() + mExtendLimitBottom) {
-					fixY = getHeight() + mExtendLimitBottom - getImageBottom();
-				} else if (movedY < 0 && getImageTop() < 0 - mExtendLimitTop) {
-					fixY = 0 - mExtendLimitTop - getImageTop();
+				if (movedY > 0 && mBounds.bottom > getHeight() + mExtendLimitBottom) {
+					fixY = getHeight() + mExtendLimitBottom - mBounds.bottom;
+				} else if (movedY < 0 && mBounds.top < 0 - mExtendLimitTop) {
+					fixY = 0 - mExtendLimitTop - mBounds.top;
 				}
 			}
-			callAfterDrag(true, movedX + fixX, movedY + fixY);
+			if (Math.abs(fixX) < EDGE_EPSILON) {
+				fixX = 0;
+			}
+			if (Math.abs(fixY) < EDGE_EPSILON) {
+				fixY = 0;
+			}
+			callAfterDrag(true, movedX + Math.round(fixX), movedY + Math.round(fixY));
 
 			if (fixX==0 && fixY==0) {
 				return;
@@ -954,8 +2181,47 @@ public class GestureImageView extends ImageView {
 		}
 	}
 
+	//Whether the image is over limit in the direction of fling. An edge within EDGE_EPSILON of limit is not over it
+	private boolean isFlingOverLimit(float vx, float vy) {
+		if (mCanDragOverLimit==OverlimitFlag.OVER) {
+			return false;
+		}
+		getImageBounds(mBounds);
+		if (mBounds.width() > getWidth() + mExtendLimitLeft + mExtendLimitRight) {
+			if (vx > 0 && mBounds.left > 0 - mExtendLimitLeft + EDGE_EPSILON) {
+				return true;
+			} else if (vx < 0 && mBounds.right < getWidth() + mExtendLimitRight - EDGE_EPSILON) {
+				return true;
+			}
+		} else {
+			if (vx > 0 && mBounds.right > getWidth() + mExtendLimitRight + EDGE_EPSILON) {
+				return true;
+			} else if (vx < 0 && mBounds.left < 0 - mExtendLimitLeft - EDGE_EPSILON) {
+				return true;
+			}
+		}
+
+		if (mBounds.height() > getHeight() + mExtendLimitTop + mExtendLimitRight) {
+			if (vy > 0 && mBounds.top > 0 - mExtendLimitTop + EDGE_EPSILON) {
+				return true;
+			} else if (vy < 0 && mBounds.bottom < getHeight() + mExtendLimitBottom - EDGE_EPSILON) {
+				return true;
+			}
+		} else {
+			if (vy > 0 && mBounds.bottom > getHeight() + mExtendLimitBottom + EDGE_EPSILON) {
+				return true;
+			} else if (vy < 0 && mBounds.top < 0 - mExtendLimitTop - EDGE_EPSILON) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private void callAfterDrag(boolean byGesture, int movedX, int movedY) {
 		fitTranslate();
+		if (mLayer != null) {
+			mLayer.mController.onTransformEnd(SystemClock.uptimeMillis());
+		}
 		mDragListener.onDragEnd(byGesture, movedX, movedY);
 	}
 
@@ -984,29 +2250,46 @@ public class GestureImageView extends ImageView {
 
 	private void callAfterZoom(boolean byGesture, PointF center, float scaled) {
 		fitTranslate();
+		if (mLayer != null) {
+			mLayer.mController.onTransformEnd(SystemClock.uptimeMillis());
+		}
 		mZoomListener.onZoomEnd(byGesture, scaled, (int)center.x, (int)center.y);
 	}
 
+	//mMatrix keeps sub-pixel translation, which is snapped to pixels in draw matrix only
 	private void fitTranslate() {
-		float[] values = new float[9];
-		mMatrix.getValues(values);
-		values[Matrix.MTRANS_X] = (int)values[Matrix.MTRANS_X];
-		values[Matrix.MTRANS_Y] = (int)values[Matrix.MTRANS_Y];
-		mMatrix.setValues(values);
-		setImageMatrix(mMatrix);
+		applyImageMatrix();
 	}
 
 	//Handle events that created by onTouch
-	//Initialize statement
-	private OnTouchGestureListener mOnTouchListener = new OnTouchGestureListener(getContext());
-	{
+	private OnTouchGestureListener mOnTouchListener;		//created on first touch
+	private OnTouchListener mUserTouchListener;
+
+	//Create gesture detectors on first touch, since most views in a grid may never be touched
+	private void ensureTouchListener() {
+		if (mOnTouchListener != null) {
+			return;
+		}
+		float density = getResources().getDisplayMetrics().density;
+		mSlideZoom = new ZoomIntegrator(SLIDE_ZOOM_WEIGHT, density);
+		mPinchZoom = new ZoomIntegrator(SCALE_ZOOM_WEIGHT, density);
+		mOnTouchListener = new OnTouchGestureListener(getContext());
+		mOnTouchListener.setUserTouchListener(mUserTouchListener);
+		mOnTouchListener.setSpeculativeClick(mSpeculativeClick);
+		setupTouchListener();
+		updateDoubleTapDetection();
+		super.setOnTouchListener(mOnTouchListener);
+	}
+
+	private void setupTouchListener() {
 		mOnTouchListener.setLongClickable(true);
-		mOnTouchListener.setOnDetectSingle(new OnTouchGestureListener.OnDetectSingle() {
+		mOnTouchListener.setOnDetectSingle(new OnTouchGestureListener.OnDetectSpeculativeClick() {
 			boolean moved = false;	//if called onMove in once, it is set to true
 			int movedX = 0;
 			int movedY = 0;
 			float overLimitDX = 0;	//record the distanceX after the drag reach limit
 			float overLimitDY = 0;	//record the distanceY after the drag reach limit
+			float remainderX = 0, remainderY = 0;	//sub-pixel distance that has not been moved
 
 			@Override
 			public void onDown(PointF point) {
@@ -1015,11 +2298,25 @@ public class GestureImageView extends ImageView {
 						mFling.cancel();
 					}
 				}
+				if (mZoomFling!=null) {
+					mZoomFling.cancel();
+				}
+				if (mCenterAnimation!=null) {
+					mCenterAnimation.cancel();
+				}
+				if (mEnterTransition!=null) {
+					mEnterTransition.finish();
+				}
 				moved = false;	//if called onMove in once, it is set to true
 				movedX = 0;
 				movedY = 0;
 				overLimitDX = 0;	//record the distanceX after the drag reach limit
 				overLimitDY = 0;	//record the distanceY after the drag reach limit
+				remainderX = 0;
+				remainderY = 0;
+				if (isDraggable()) {
+					startNestedScroll(ViewCompat.SCROLL_AXIS_HORIZONTAL | ViewCompat.SCROLL_AXIS_VERTICAL);
+				}
 			}
 
 			@Override
@@ -1031,23 +2328,69 @@ public class GestureImageView extends ImageView {
 					mDragListener.onDragStart(true);
 				}
 				moved = true;
-				int dx = (int)-dxF;
-				int dy = (int)-dyF;
-				int realDx = dx;
-				int realDy = dy;
+				clearDragPrediction();		//limits are checked on the real position
+				//move in whole pixels for limits and nested scrolling, and carry the rest to next move
+				remainderX -= dxF;
+				remainderY -= dyF;
+				int dx = (int)remainderX;
+				int dy = (int)remainderY;
+				remainderX -= dx;
+				remainderY -= dy;
+				int fingerDx = dx, fingerDy = dy;
+				//a nested scrolling parent may consume distance before the image, e.g. a pager that has not settled
+				if (dispatchNestedPreScroll(-dx, -dy, mNestedConsumed, mNestedOffset)) {
+					dx += mNestedConsumed[0];
+					dy += mNestedConsumed[1];
+					mNestedOffsetX += mNestedOffset[0];
+					mNestedOffsetY += mNestedOffset[1];
+				}
+				boolean clamped = false;		//whether the image reaches limit in the direction of drag
+				if (mCanDragOverLimit != OverlimitFlag.OVER) {
+					float[] edge = checkRealDistance((float) dx, (float) dy);
+					clamped = edge[0] * dx <= 0 && edge[1] * dy <= 0;
+				}
+				//the image moves in float to reach its limit exactly, and nested scrolling takes whole pixels
+				float realDx = dx;
+				float realDy = dy;
+				boolean nestedX = false, nestedY = false;
+				if (hasNestedScrollingParent() && mCanDragOverLimit != OverlimitFlag.OVER) {
+					//drag the image to its edge, and pass the rest to parent in the same frame
+					float[] r = checkRealDistance((float) dx, (float) dy);
+					int consumedX = Math.round(r[0]), consumedY = Math.round(r[1]);
+					if ((r[0] != dx || r[1] != dy)
+							&& dispatchNestedScroll(-consumedX, -consumedY, consumedX - dx, consumedY - dy, mNestedOffset)) {
+						//parent consumed the rest in an axis if it moved this view, otherwise the image goes over limit as usual
+						nestedX = mNestedOffset[0] != 0;
+						nestedY = mNestedOffset[1] != 0;
+						if (nestedX) {
+							realDx = r[0];
+							overLimitDX = 0;
+						}
+						if (nestedY) {
+							realDy = r[1];
+							overLimitDY = 0;
+						}
+						mNestedOffsetX += mNestedOffset[0];
+						mNestedOffsetY += mNestedOffset[1];
+					}
+				}
 				if (mCanDragOverLimit == OverlimitFlag.UNABLE) {		//cannot drag over limit
-					int[] r = checkRealDistance(dx, dy);
-					realDx = r[0];
-					if (realDx == 0) {
-						overLimitDX += Math.abs(dx);
-					} else if (overLimitDX > 0) {
-						overLimitDX -= Math.abs(dx);
+					float[] r = checkRealDistance((float) dx, (float) dy);
+					if (!nestedX) {
+						realDx = r[0];
+						if (realDx == 0) {
+							overLimitDX += Math.abs(dx);
+						} else if (overLimitDX > 0) {
+							overLimitDX -= Math.abs(dx);
+						}
 					}
-					realDy = r[1];
-					if (realDy == 0) {
-						overLimitDY += Math.abs(dy);
-					} else if (overLimitDY > 0) {
-						overLimitDY -= Math.abs(dy);
+					if (!nestedY) {
+						realDy = r[1];
+						if (realDy == 0) {
+							overLimitDY += Math.abs(dy);
+						} else if (overLimitDY > 0) {
+							overLimitDY -= Math.abs(dy);
+						}
 					}
 				}
 				if (overLimitDX > 0) {
@@ -1056,20 +2399,30 @@ public class GestureImageView extends ImageView {
 				if (overLimitDY > 0) {
 					realDy = 0;
 				}
-				movedX += realDx;
-				movedY += realDy;
+				int stepX = Math.round(realDx), stepY = Math.round(realDy);		//whole pixels for callbacks
+				movedX += stepX;
+				movedY += stepY;
 				mMatrix.postTranslate(realDx, realDy);
-				mDragListener.onDragging(true, realDx, realDy);
-				setImageMatrix(mMatrix);
+				mDragListener.onDragging(true, stepX, stepY);
+				if (realDx == fingerDx && realDy == fingerDy) {		//image follows finger freely
+					applyDragPrediction(to);
+				}
+				applyImageMatrix();
+				//keep the drag while the image is moving, and let parent intercept once the image is clamped at edge
+				requestParentDisallowIntercept(!clamped || hasNestedScrollingParent());
 			}
 
 			@Override
 			public void onUp(PointF point) {
+				if (clearDragPrediction()) {
+					applyImageMatrix();
+				}
 				if (moved && isDraggable()) {
 					mHandler = new Handler(new Handler.Callback() {
 						@Override
 						public boolean handleMessage(Message msg) {
 							if (msg.what == MSG_AFTER_DRAG) {
+								stopNestedScroll();
 								afterDragByUser(msg.arg1, msg.arg2);
 								mMsg = null;
 							}
@@ -1081,19 +2434,30 @@ public class GestureImageView extends ImageView {
 					mMsg.arg1 = movedX;
 					mMsg.arg2 = movedY;
 					mHandler.sendMessageDelayed(mMsg, 10);
+				} else {
+					stopNestedScroll();
 				}
 			}
 
 			@Override
 			public void onClick(PointF point) {
 				if (isClickable()) {
+					dispatchImageTap(mTapListener, point);
 					performClick();
 				}
 			}
 
+			@Override
+			public void onClickCancel(PointF point) {
+				if (isClickable() && mClickCancelListener != null) {
+					mClickCancelListener.onClickCancel(GestureImageView.this);
+				}
+			}
+
 			@Override
 			public void onLongClick(PointF point) {
 				if (isLongClickable()) {
+					dispatchImageTap(mLongPressListener, point);
 					performLongClick();
 				}
 			}
@@ -1103,34 +2467,15 @@ public class GestureImageView extends ImageView {
 				if (!isDraggable()) {
 					return;
 				}
-				if (mCanDragOverLimit!=OverlimitFlag.OVER) {
-					if (getImageWidth() > getWidth() + mExtendLimitLeft + mExtendLimitRight) {
-						if (vx > 0 && getImageLeft() > 0 - mExtendLimitLeft) {
-							return;
-						} else if (vx < 0 && getImageRight() < getWidth() + mExtendLimitRight) {
-							return;
-						}
-					} else {
-						if (vx > 0 && getImageRight() > getWidth() + mExtendLimitRight) {
-							return;
-						} else if (vx < 0 && getImageLeft() < 0 - mExtendLimitLeft) {
-							return;
-						}
-					}
-
-					if (getImageHeight() > getHeight() + mExtendLimitTop + mExtendLimitRight) {
-						if (vy > 0 && getImageTop() > 0 - mExtendLimitTop) {
-							return;
-						} else if (vy < 0 && getImageBottom() < getHeight() + mExtendLimitBottom) {
-							return;
-						}
-					} else {
-						if (vy > 0 && getImageBottom() > getHeight() + mExtendLimitBottom) {
-							return;
-						} else if (vy < 0 && getImageTop() < 0 - mExtendLimitTop) {
-							return;
-						}
-					}
+				if (dispatchNestedPreFling(-vx, -vy)) {
+					//parent takes the whole fling, and the image settles or springs back by the pending end of drag
+					return;
+				}
+				if (isFlingOverLimit(vx, vy)) {
+					//image cannot fling in this direction, so the parent may fling instead,
+					//and the image still springs back by the pending end of drag if it is over limit
+					dispatchNestedFling(-vx, -vy, false);
+					return;
 				}
 
 				int movedX = 0, movedY = 0;
@@ -1144,6 +2489,8 @@ public class GestureImageView extends ImageView {
 					mMsg = null;
 					mHandler = null;
 				}
+				dispatchNestedFling(-vx, -vy, true);
+				stopNestedScroll();
 				mFling = new Fling((int)vx, (int)vy, movedX, movedY);
 				compatPostOnAnimation(mFling);
 			}
@@ -1157,6 +2504,7 @@ public class GestureImageView extends ImageView {
 
 			@Override
 			public void onDblDown(PointF point) {
+				mSlideZoom.reset();
 				center = point;
 				moved = false;
 				scaled = 1f;
@@ -1172,7 +2520,7 @@ public class GestureImageView extends ImageView {
 					mZoomListener.onZoomStart(true);
 				}
 				moved = true;
-				float scale = (float) Math.pow(2, -dy/SLIDE_ZOOM_WEIGHT);
+				float scale = mSlideZoom.add(mLastEventTime, -dy);
 				float realScale = scale;
 				if (mCanZoomOverLimit == OverlimitFlag.UNABLE) {		//cannot zoom over limit
 					realScale = checkRealScale(scale);
@@ -1186,60 +2534,32 @@ public class GestureImageView extends ImageView {
 				}
 				scaled *= realScale;
 
-				float centerX = center.x, centerY = center.y;
-				if (mCanDragOverLimit != OverlimitFlag.OVER) {
-					int tx = 0, ty = 0;
-					if (realScale > 1.0f) {
-						if (getImageTop() <= 0 - mExtendLimitTop && getImageBottom() < getHeight() + mExtendLimitBottom) {
-							ty = 0 - mExtendLimitTop - getImageTop();
-							centerY = 0 - mExtendLimitTop;
-						} else if (getImageBottom() >= getHeight() + mExtendLimitBottom && getImageTop() > 0 - mExtendLimitTop) {
-							ty = getHeight() + mExtendLimitBottom - getImageBottom();
-							centerY = getHeight() + mExtendLimitBottom;
-						}
-						if (getImageLeft() <= 0 - mExtendLimitLeft && getImageRight() < getWidth() + mExtendLimitRight) {
-							tx = 0 - mExtendLimitLeft - getImageLeft();
-							centerX = 0 - mExtendLimitLeft;
-						} else if (getImageRight() >= getWidth() + mExtendLimitRight && getImageLeft() > 0 - mExtendLimitLeft) {
-							tx = getWidth() + mExtendLimitRight - getImageRight();
-							centerX = getWidth() + mExtendLimitRight;
-						}
-					} else if (realScale < 1.0f) {
-						if (getImageTop() >= 0 - mExtendLimitTop && getImageBottom() > getHeight() + mExtendLimitBottom) {
-							ty = 0 - mExtendLimitTop - getImageTop();
-							centerY = 0 - mExtendLimitTop;
-						} else if (getImageBottom() <= getHeight() + mExtendLimitBottom && getImageTop() < 0 - mExtendLimitTop) {
-							ty = getHeight() + mExtendLimitBottom - getImageBottom();
-							centerY = getHeight() + mExtendLimitBottom;
-						}
-						if (getImageLeft() >= 0 - mExtendLimitLeft && getImageRight() > getWidth() + mExtendLimitRight) {
-							tx = 0 - mExtendLimitLeft - getImageLeft();
-							centerX = 0 - mExtendLimitLeft;
-						} else if (getImageRight() <= getWidth() + mExtendLimitRight && getImageLeft() < 0 - mExtendLimitLeft) {
-							tx = getWidth() + mExtendLimitRight - getImageRight();
-							centerX = getWidth() + mExtendLimitRight;
-						}
-					}
-					if (tx!=0 || ty!=0) {
-						mMatrix.postTranslate(tx, ty);
-						Log.i(TAG, "tx-ty-Top: " + tx + "-" + ty + "-" + getImageTop());
-					}
-				}
+				mZoomPivot.set(center.x, center.y);
+				pinEdgesForZoom(realScale, mZoomPivot);
+				float centerX = mZoomPivot.x, centerY = mZoomPivot.y;
 
 				mMatrix.postScale(realScale, realScale, centerX, centerY);
 				mZoomListener.onZooming(true, realScale, (int) centerX, (int) centerY);
-				setImageMatrix(mMatrix);
+				applyImageMatrix();
 			}
 
 			@Override
 			public void onDblUp(PointF point) {
 				if (moved && isZoomable()) {
-					afterZoomByUser(center, scaled);
+					if (mSlideZoom.startMomentum(mLastEventTime)) {
+						mZoomFling = new ZoomFling(mSlideZoom, center, scaled);
+						compatPostOnAnimation(mZoomFling);
+					} else {
+						afterZoomByUser(center, scaled);
+					}
 				}
 			}
 
 			@Override
 			public void onDblClick(PointF point) {
+				if (isDoubleClickable()) {
+					dispatchImageTap(mDblTapListener, point);		//before zoom, so the position is where user tapped
+				}
 				if (isQuickZoomable() && isZoomable()) {
 					mZoomListener.onZoomStart(true);
 					privatePerformZoom(true, DEFAULT_ZOOM_SCALE, (int)point.x, (int)point.y, true);
@@ -1262,6 +2582,14 @@ public class GestureImageView extends ImageView {
 
 			@Override
 			public void onMultiDown(PointF p0, PointF p1) {
+				if (clearDragPrediction()) {
+					applyImageMatrix();
+				}
+				requestParentDisallowIntercept(isZoomable());
+				if (mZoomFling!=null) {
+					mZoomFling.cancel();
+				}
+				mPinchZoom.reset();
 				center = OnTouchGestureListener.Util.center(p0, p1);
 				moved = false;
 				scaled = 1f;
@@ -1282,8 +2610,16 @@ public class GestureImageView extends ImageView {
 
 			@Override
 			public void onMultiUp(PointF p0, PointF p1) {
+				if (clearPinchPrediction()) {
+					applyImageMatrix();
+				}
 				if (moved && isZoomable()) {
-					afterZoomByUser(center, scaled);
+					if (mPinchZoom.startMomentum(mLastEventTime)) {
+						mZoomFling = new ZoomFling(mPinchZoom, center, scaled);
+						compatPostOnAnimation(mZoomFling);
+					} else {
+						afterZoomByUser(center, scaled);
+					}
 				}
 			}
 
@@ -1296,8 +2632,11 @@ public class GestureImageView extends ImageView {
 					mZoomListener.onZoomStart(true);
 				}
 				moved = true;
+				if (clearPinchPrediction()) {		//limits are checked on the real scale
+					applyImageMatrix();
+				}
 				float distance = OnTouchGestureListener.Util.distance(newPoint0, newPoint1) - OnTouchGestureListener.Util.distance(oldPoint0, oldPoint1);
-				float scale = (float) Math.pow(2, distance/SCALE_ZOOM_WEIGHT);
+				float scale = mPinchZoom.add(mLastEventTime, distance);
 				float realScale = scale;
 				if (mCanZoomOverLimit == OverlimitFlag.UNABLE) {		//cannot zoom over limit
 					realScale = checkRealScale(scale);
@@ -1311,56 +2650,503 @@ public class GestureImageView extends ImageView {
 				}
 				scaled *= realScale;
 
-				float centerX = center.x, centerY = center.y;
-				if (mCanDragOverLimit != OverlimitFlag.OVER) {
-					int tx = 0, ty = 0;
-					if (realScale > 1.0f) {
-						if (getImageTop() <= 0 - mExtendLimitTop && getImageBottom() < getHeight() + mExtendLimitBottom) {
-							ty = 0 - mExtendLimitTop - getImageTop();
-							centerY = 0 - mExtendLimitTop;
-						} else if (getImageBottom() >= getHeight() + mExtendLimitBottom && getImageTop() > 0 - mExtendLimitTop) {
-							ty = getHeight() + mExtendLimitBottom - getImageBottom();
-							centerY = getHeight() + mExtendLimitBottom;
-						}
-						if (getImageLeft() <= 0 - mExtendLimitLeft && getImageRight() < getWidth() + mExtendLimitRight) {
-							tx = 0 - mExtendLimitLeft - getImageLeft();
-							centerX = 0 - mExtendLimitLeft;
-						} else if (getImageRight() >= getWidth() + mExtendLimitRight && getImageLeft() > 0 - mExtendLimitLeft) {
-							tx = getWidth() + mExtendLimitRight - getImageRight();
-							centerX = getWidth() + mExtendLimitRight;
-						}
-					} else if (realScale < 1.0f) {
-						if (getImageTop() >= 0 - mExtendLimitTop && getImageBottom() > getHeight() + mExtendLimitBottom) {
-							ty = 0 - mExtendLimitTop - getImageTop();
-							centerY = 0 - mExtendLimitTop;
-						} else if (getImageBottom() <= getHeight() + mExtendLimitBottom && getImageTop() < 0 - mExtendLimitTop) {
-							ty = getHeight() + mExtendLimitBottom - getImageBottom();
-							centerY = getHeight() + mExtendLimitBottom;
-						}
-						if (getImageLeft() >= 0 - mExtendLimitLeft && getImageRight() > getWidth() + mExtendLimitRight) {
-							tx = 0 - mExtendLimitLeft - getImageLeft();
-							centerX = 0 - mExtendLimitLeft;
-						} else if (getImageRight() <= getWidth() + mExtendLimitRight && getImageLeft() < 0 - mExtendLimitLeft) {
-							tx = getWidth() + mExtendLimitRight - getImageRight();
-							centerX = getWidth() + mExtendLimitRight;
-						}
-					}
-					if (tx!=0 || ty!=0) {
-						mMatrix.postTranslate(tx, ty);
-					}
-				}
+				mZoomPivot.set(center.x, center.y);
+				pinEdgesForZoom(realScale, mZoomPivot);
+				float centerX = mZoomPivot.x, centerY = mZoomPivot.y;
 
 				mMatrix.postScale(realScale, realScale, centerX, centerY);
 				mZoomListener.onZooming(true, realScale, (int) centerX, (int) centerY);
-				setImageMatrix(mMatrix);
+				if (realScale == scale) {		//image follows fingers freely
+					applyPinchPrediction(OnTouchGestureListener.Util.distance(newPoint0, newPoint1), centerX, centerY);
+				}
+				applyImageMatrix();
 			}
 		});
 	}
 
+	//Transforms the drawing of a promoted view as a whole, so the image is not drawn again in each frame.
+	//Content is drawn at mBase, and mMatrix is applied as a delta from it: by properties of view on a hardware layer,
+	//which only composes the layer again, or by drawing a snapshot of content for a software one.
+	//Content is drawn again at mMatrix when the delta zooms too much or would show a part that was not drawn.
+	private class GestureLayer implements TransformLayerController.Callback {
+		private static final float MAX_DELTA_SCALE = 2f;		//draw again when zoomed by more than this from the drawing
+		private static final float SNAPSHOT_MARGIN = 0.125f;		//part of view drawn around it in snapshot, for drags
+
+		final TransformLayerController mController = new TransformLayerController(this);
+		final Matrix mBase = new Matrix();		//mMatrix that content is drawn at
+		final Matrix mBaseInverse = new Matrix();
+		long mRedraws = 0;
+		private int mType = LAYER_TYPE_NONE;
+		private int mTypeBefore = LAYER_TYPE_NONE;		//layer type of view before promoted
+		private boolean mDrawn = false;		//content is drawn at mBase while promoted
+		private boolean mCanTransformView = false;		//view has no transform of its own
+		private boolean mViewTransformed = false;
+		private final Matrix mDelta = new Matrix();		//maps content drawn at mBase to mMatrix
+		private final float[] mDeltaValues = new float[9];
+		private final RectF mCovered = new RectF();		//region of content that the drawing covers
+		private final RectF mRect = new RectF();
+		private Rect mClipBounds;
+		private int mMarginX, mMarginY;
+		private Bitmap mSnapshot;
+		private Canvas mSnapshotCanvas;
+		private boolean mSnapshotValid = false;
+		private final Rect mSnapshotClip = new Rect();		//region of image in snapshot, in content coordinates
+		private final Paint mSnapshotPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		private final Runnable mIdleCheck = new Runnable() {
+			@Override
+			public void run() {
+				mController.onIdleCheck(SystemClock.uptimeMillis());
+			}
+		};
+
+		void setType(int type) {
+			long now = SystemClock.uptimeMillis();
+			mController.setEnabled(false, now);
+			mType = type;
+			if (type != LAYER_TYPE_SOFTWARE) {
+				recycleSnapshot();
+			}
+			mController.setEnabled(type != LAYER_TYPE_NONE, now);
+		}
+
+		boolean isDrawn() {
+			return mDrawn;
+		}
+
+		boolean isViewTransformed() {
+			return mViewTransformed;
+		}
+
+		@Override
+		public void onPromote() {
+			mDrawn = false;
+			if (mType == LAYER_TYPE_HARDWARE) {
+				mTypeBefore = compatGetLayerType();
+				compatSetLayerType(LAYER_TYPE_HARDWARE);
+				mCanTransformView = hasIdentityViewMatrix();
+			}
+		}
+
+		@Override
+		public void onDemote() {
+			resetViewTransform();
+			mDrawn = false;
+			mSnapshotValid = false;
+			if (mType == LAYER_TYPE_HARDWARE) {
+				compatSetLayerType(mTypeBefore);
+			}
+			updateImageMatrix();		//draw at the real transform, sharply
+			invalidate();
+		}
+
+		@Override
+		public void scheduleIdleCheck(long delay) {
+			removeCallbacks(mIdleCheck);
+			postDelayed(mIdleCheck, delay);
+		}
+
+		//Called when mMatrix is set to ImageView while promoted, drawn is the region of image in content before clip
+		void redraw(RectF drawn) {
+			resetViewTransform();
+			if (mDrawn) {
+				mRedraws++;
+			}
+			mDrawn = false;
+			mDelta.reset();
+			if (!mMatrix.invert(mBaseInverse)) {
+				return;
+			}
+			mBase.set(mMatrix);
+			int width = getWidth(), height = getHeight();
+			if (mType == LAYER_TYPE_SOFTWARE) {
+				mMarginX = Math.round(width * SNAPSHOT_MARGIN);
+				mMarginY = Math.round(height * SNAPSHOT_MARGIN);
+				if (!prepareSnapshot(width + 2 * mMarginX, height + 2 * mMarginY)) {
+					return;
+				}
+			} else if (!mCanTransformView) {
+				return;		//the layer is drawn again in each frame, as a layer of view does
+			} else {
+				mMarginX = 0;
+				mMarginY = 0;
+			}
+			mCovered.set(-getPaddingLeft() - mMarginX, -getPaddingTop() - mMarginY,
+					width - getPaddingLeft() + mMarginX, height - getPaddingTop() + mMarginY);
+			mRect.set(drawn);
+			if (mRect.intersect(mCovered)) {
+				mRect.roundOut(mSnapshotClip);
+			} else {
+				mSnapshotClip.setEmpty();
+			}
+			mDrawn = true;
+		}
+
+		//Apply mMatrix to the drawing. Return false if content must be drawn again at mMatrix
+		boolean transform() {
+			if (!mDrawn) {
+				return false;
+			}
+			mDelta.set(mMatrix);
+			mDelta.preConcat(mBaseInverse);
+			mDelta.getValues(mDeltaValues);
+			float scaleX = mDeltaValues[Matrix.MSCALE_X], scaleY = mDeltaValues[Matrix.MSCALE_Y];
+			if (scaleX > MAX_DELTA_SCALE || scaleX < 1f / MAX_DELTA_SCALE
+					|| scaleY > MAX_DELTA_SCALE || scaleY < 1f / MAX_DELTA_SCALE) {
+				return false;		//too blurry or too coarse
+			}
+			//the visible part of image must be in the drawing, within a pixel
+			mRect.set(0, 0, mImgWidth, mImgHeight);
+			mMatrix.mapRect(mRect);
+			if (mRect.intersect(-getPaddingLeft(), -getPaddingTop(), getWidth() - getPaddingLeft(), getHeight() - getPaddingTop())) {
+				float left = mRect.left, top = mRect.top, right = mRect.right, bottom = mRect.bottom;
+				mRect.set(mCovered);
+				mDelta.mapRect(mRect);
+				if (left < mRect.left - 1 || top < mRect.top - 1 || right > mRect.right + 1 || bottom > mRect.bottom + 1) {
+					return false;
+				}
+			}
+			if (mType == LAYER_TYPE_HARDWARE) {
+				setViewTransform(scaleX, scaleY, mDeltaValues[Matrix.MTRANS_X], mDeltaValues[Matrix.MTRANS_Y]);
+			} else {
+				invalidate();		//draws the snapshot only
+			}
+			updateVisibleRect(false);
+			return true;
+		}
+
+		@TargetApi(VERSION_CODES.HONEYCOMB)
+		private boolean hasIdentityViewMatrix() {
+			return getMatrix().isIdentity();
+		}
+
+		//Content at c is shown at padding + scale * c + translate, which is scale * x + padding * (1 - scale) + translate
+		//for x of view, so the view is scaled around its pivot and translated to that
+		@TargetApi(VERSION_CODES.LOLLIPOP)
+		private void setViewTransform(float scaleX, float scaleY, float transX, float transY) {
+			float offsetX = getPaddingLeft() * (1 - scaleX) + transX;
+			float offsetY = getPaddingTop() * (1 - scaleY) + transY;
+			setScaleX(scaleX);
+			setScaleY(scaleY);
+			setTranslationX(offsetX - getPivotX() * (1 - scaleX));
+			setTranslationY(offsetY - getPivotY() * (1 - scaleY));
+			mViewTransformed = true;
+			if (VERSION.SDK_INT >= VERSION_CODES.LOLLIPOP) {		//keep the image in bounds of view, off siblings
+				if (mClipBounds == null) {
+					mClipBounds = new Rect();
+				}
+				mRect.set(-offsetX / scaleX, -offsetY / scaleY, (getWidth() - offsetX) / scaleX, (getHeight() - offsetY) / scaleY);
+				mRect.round(mClipBounds);
+				setClipBounds(mClipBounds);
+			}
+		}
+
+		@TargetApi(VERSION_CODES.LOLLIPOP)
+		private void resetViewTransform() {
+			if (!mViewTransformed) {
+				return;
+			}
+			mViewTransformed = false;
+			setScaleX(1);
+			setScaleY(1);
+			setTranslationX(0);
+			setTranslationY(0);
+			if (VERSION.SDK_INT >= VERSION_CODES.LOLLIPOP) {
+				setClipBounds(null);
+			}
+		}
+
+		//Map a touch event in coordinates of the transformed view to the view as laid out
+		@TargetApi(VERSION_CODES.HONEYCOMB)
+		void mapTouchEvent(MotionEvent event) {
+			event.transform(getMatrix());
+		}
+
+		private boolean prepareSnapshot(int width, int height) {
+			mSnapshotValid = false;
+			if (mSnapshot != null && mSnapshot.getWidth() == width && mSnapshot.getHeight() == height) {
+				return true;
+			}
+			recycleSnapshot();
+			try {
+				mSnapshot = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+			} catch (OutOfMemoryError e) {
+				Log.w(TAG, "No memory for snapshot of layer, " + width + "x" + height);
+				return false;
+			}
+			mSnapshotCanvas = new Canvas(mSnapshot);
+			return true;
+		}
+
+		//Draw the snapshot by the delta of transform, in place of content. Return false if there is no snapshot
+		boolean drawSnapshot(Canvas canvas) {
+			if (mType != LAYER_TYPE_SOFTWARE || !mDrawn) {
+				return false;
+			}
+			if (!mSnapshotValid) {
+				mSnapshot.eraseColor(Color.TRANSPARENT);
+				int count = mSnapshotCanvas.save();
+				mSnapshotCanvas.translate(getPaddingLeft() + mMarginX, getPaddingTop() + mMarginY);
+				drawContent(mSnapshotCanvas, mSnapshotClip, mCovered.left, mCovered.top, mCovered.right, mCovered.bottom);
+				mSnapshotCanvas.restoreToCount(count);
+				mSnapshotValid = true;
+			}
+			canvas.save();
+			canvas.clipRect(-getPaddingLeft(), -getPaddingTop(), getWidth() - getPaddingLeft(), getHeight() - getPaddingTop());
+			canvas.concat(mDelta);
+			canvas.drawBitmap(mSnapshot, mCovered.left, mCovered.top, mSnapshotPaint);
+			canvas.restore();
+			return true;
+		}
+
+		void invalidateSnapshot() {
+			mSnapshotValid = false;
+		}
+
+		//Free the snapshot unless it is in use
+		void recycleSnapshot() {
+			if (mSnapshot == null || mDrawn && mType == LAYER_TYPE_SOFTWARE) {
+				return;
+			}
+			mSnapshot.recycle();
+			mSnapshot = null;
+			mSnapshotCanvas = null;
+			mSnapshotValid = false;
+		}
+	}
+
+	//Move translation toward a target that may change while running, easing by time in each frame
+	private class CenterAnimation implements Runnable {
+		static final float TIME_CONSTANT = 80f;		//milliseconds to cover about 63% of the rest distance
+
+		float targetX, targetY;
+		float movedX, movedY;
+		long lastTime;
+		boolean finished = false;
+
+		CenterAnimation(float targetX, float targetY) {
+			this.targetX = targetX;
+			this.targetY = targetY;
+			lastTime = SystemClock.uptimeMillis();
+		}
+
+		void cancel() {
+			if (!finished) {
+				finished = true;
+				removeCallbacks(this);
+				callAfterDrag(false, (int) movedX, (int) movedY);
+			}
+		}
+
+		@Override
+		public void run() {
+			if (finished) {
+				return;
+			}
+			long now = SystemClock.uptimeMillis();
+			mMatrix.getValues(mValues);
+			float restX = targetX - mValues[Matrix.MTRANS_X];
+			float restY = targetY - mValues[Matrix.MTRANS_Y];
+			float dx = restX, dy = restY;
+			boolean arrived = Math.abs(restX) < 0.5f && Math.abs(restY) < 0.5f;
+			if (!arrived) {
+				float factor = (float) (1 - Math.exp(-(now - lastTime) / TIME_CONSTANT));
+				dx = restX * factor;
+				dy = restY * factor;
+			}
+			lastTime = now;
+			mMatrix.postTranslate(dx, dy);
+			movedX += dx;
+			movedY += dy;
+			mDragListener.onDragging(false, (int) dx, (int) dy);
+			applyImageMatrix();
+			if (arrived) {
+				finished = true;
+				callAfterDrag(false, (int) movedX, (int) movedY);
+			} else {
+				compatPostOnAnimation(this);
+			}
+		}
+	}
+
+	//Animate mMatrix from a thumbnail on screen to mMatrixOrigin in each frame, with tiles disabled until the end
+	private class EnterTransition implements Runnable {
+		final ImageSourceDrawable drawable;
+		final boolean tilesEnabled;
+		final RectF startRect = new RectF();		//bounds of thumbnail on screen, then in content coordinates
+		final RectF clip = new RectF();
+		long startTime;
+		float fraction = 0;
+		boolean started = false;
+		boolean finished = false;
+
+		EnterTransition(ImageSourceDrawable drawable, Rect screenRect) {
+			this.drawable = drawable;
+			tilesEnabled = drawable.isTilesEnabled();
+			drawable.setTilesEnabled(false);
+			startRect.set(screenRect);
+		}
+
+		void start() {
+			if (mImgWidth == 0 || mImgHeight == 0) {
+				finish();
+				return;
+			}
+			int[] location = new int[2];
+			getLocationOnScreen(location);
+			startRect.offset(-location[0] - getPaddingLeft(), -location[1] - getPaddingTop());
+			startTime = SystemClock.uptimeMillis();
+			started = true;
+			setScaleType(mScaleType);		//base transform of the laid out size, and the first frame
+			compatPostOnAnimation(this);
+		}
+
+		//Set mMatrix and clip between thumbnail and base transform by fraction
+		void apply() {
+			float f = fraction;
+			float start = Math.max(startRect.width() / mImgWidth, startRect.height() / mImgHeight);
+			float startX = startRect.centerX() - start * mImgWidth / 2;
+			float startY = startRect.centerY() - start * mImgHeight / 2;
+			mMatrixOrigin.getValues(mValues);
+			float scaleX = start + (mValues[Matrix.MSCALE_X] - start) * f;
+			float scaleY = start + (mValues[Matrix.MSCALE_Y] - start) * f;
+			float tx = startX + (mValues[Matrix.MTRANS_X] - startX) * f;
+			float ty = startY + (mValues[Matrix.MTRANS_Y] - startY) * f;
+			mMatrix.setScale(scaleX, scaleY);
+			mMatrix.postTranslate(tx, ty);
+			float endLeft = -getPaddingLeft(), endTop = -getPaddingTop();
+			float endRight = getWidth() - getPaddingLeft(), endBottom = getHeight() - getPaddingTop();
+			clip.set(startRect.left + (endLeft - startRect.left) * f, startRect.top + (endTop - startRect.top) * f,
+					startRect.right + (endRight - startRect.right) * f, startRect.bottom + (endBottom - startRect.bottom) * f);
+			applyImageMatrix();
+			invalidate();		//clip may change even if matrix does not
+		}
+
+		void finish() {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			removeCallbacks(this);
+			mEnterTransition = null;
+			drawable.setTilesEnabled(tilesEnabled);
+			if (started && mMatrixOrigin != null) {
+				mMatrix.set(mMatrixOrigin);
+				applyImageMatrix();
+				invalidate();
+			}
+		}
+
+		@Override
+		public void run() {
+			if (finished) {
+				return;
+			}
+			float t = Math.min(1f, (float) (SystemClock.uptimeMillis() - startTime) / ENTER_DURATION);
+			if (t >= 1) {
+				finish();
+				return;
+			}
+			fraction = 1 - (1 - t) * (1 - t);		//decelerate
+			apply();
+			compatPostOnAnimation(this);
+		}
+	}
+
+	private ZoomFling mZoomFling;
+	//Keep zooming after release with momentum of gesture, in each frame
+	//UNABLE: stop at limit. OVER: ignore limit. SPRING_BACK: go over limit with resistance, then spring back
+	private class ZoomFling implements Runnable {
+		static final float OVERSHOOT_RESISTANCE = 4f;		//momentum is slowed by this over limit
+		static final float MAX_OVERSHOOT = 0.2f;		//log2 scale that can go over limit
+
+		ZoomIntegrator integrator;
+		PointF center;
+		float scaled;		//record the total scale in gesture and momentum
+		boolean finished = false;
+		boolean reachEnd = false;		//set if the step reaches the end of limit or overshoot
+
+		ZoomFling(ZoomIntegrator integrator, PointF center, float scaled) {
+			this.integrator = integrator;
+			this.center = center;
+			this.scaled = scaled;
+		}
+
+		//Stop at once, so the zoom ends before another gesture starts
+		void cancel() {
+			if (!finished) {
+				finished = true;
+				removeCallbacks(this);
+				afterZoomByUser(center, scaled);
+			}
+		}
+
+		@Override
+		public void run() {
+			if (finished) {
+				return;
+			}
+			long now = AnimationUtils.currentAnimationTimeMillis();		//time of this frame, not of when it runs
+			float step = integrator.momentumStep(now);
+			float realStep = limitStep(step);
+			if (realStep != 1f) {
+				scaled *= realStep;
+				mMatrix.postScale(realStep, realStep, center.x, center.y);
+				mZoomListener.onZooming(true, realStep, (int) center.x, (int) center.y);		//once per frame
+				applyImageMatrix();
+			}
+			if (reachEnd || integrator.isMomentumFinished(now)) {
+				finished = true;
+				afterZoomByUser(center, scaled);
+			} else {
+				compatPostOnAnimation(this);
+			}
+		}
+
+		private float limitStep(float step) {
+			if (mCanZoomOverLimit == OverlimitFlag.OVER) {
+				return step;
+			}
+			if (mCanZoomOverLimit == OverlimitFlag.UNABLE) {
+				float realStep = checkRealScale(step);
+				reachEnd = realStep != step;
+				return realStep;
+			}
+			//in log2 scale, the part within limit passes, and the part over limit is slowed and capped
+			double current = log2(getImageScale());
+			double next = current + log2(step);
+			double limit;
+			if (step > 1f && mMaxScale > 0 && next > log2(mMaxScale)) {
+				limit = log2(mMaxScale);
+				next = Math.max(current, limit) + (next - Math.max(current, limit)) / OVERSHOOT_RESISTANCE;
+				if (next >= limit + MAX_OVERSHOOT) {
+					next = Math.max(current, limit + MAX_OVERSHOOT);
+					reachEnd = true;
+				}
+			} else if (step < 1f && mMinScale > 0 && next < log2(mMinScale)) {
+				limit = log2(mMinScale);
+				next = Math.min(current, limit) + (next - Math.min(current, limit)) / OVERSHOOT_RESISTANCE;
+				if (next <= limit - MAX_OVERSHOOT) {
+					next = Math.min(current, limit - MAX_OVERSHOOT);
+					reachEnd = true;
+				}
+			}
+			return (float) Math.pow(2, next - current);
+		}
+
+		private double log2(double value) {
+			return Math.log(value) / Math.log(2);
+		}
+	}
+
 	private Fling mFling;
 	private class Fling implements Runnable {
 		CompatScroller scroller;
-		int currX, currY;
+		int currX, currY;		//whole pixels of scroller
+		int startX, startY;
+		float startTransX, startTransY;		//translation of image in float when fling starts
+		float transX, transY;		//translation of image in float that the fling has moved to
+		float[] limit;		//limit of translation in float, null if the image can go over limit
+		boolean clampX, clampY;		//whether the image starts in limit, so it stops exactly at limit
 		int prevMovedX, prevMovedY;
 
 		Fling(int vx, int vy, int movedX, int movedY) {
@@ -1368,8 +3154,11 @@ public class GestureImageView extends ImageView {
 			scroller = new CompatScroller(getContext());
 			mMatrix.getValues(values);
 
-			int startX = (int) values[Matrix.MTRANS_X];
-			int startY = (int) values[Matrix.MTRANS_Y];
+			//scroller moves in whole pixels from the rounded translation, and the fraction is kept in float
+			startTransX = values[Matrix.MTRANS_X];
+			startTransY = values[Matrix.MTRANS_Y];
+			startX = Math.round(startTransX);
+			startY = Math.round(startTransY);
 			int minX, maxX, minY, maxY;
 
 			if (canDragOverLimit()) {
@@ -1378,25 +3167,21 @@ public class GestureImageView extends ImageView {
 				minY = Integer.MIN_VALUE;
 				maxY = Integer.MAX_VALUE;
 			} else {
-				if (getImageWidth() > getWidth() + mExtendLimitLeft + mExtendLimitRight) {
-					maxX = 0 - mExtendLimitLeft;
-					minX = getWidth() + mExtendLimitRight - getImageWidth();
-				} else {
-					minX = 0 - mExtendLimitLeft;
-					maxX = getWidth() + mExtendLimitRight - getImageWidth();
-				}
-
-				if (getImageHeight() > getHeight() + mExtendLimitTop + mExtendLimitBottom) {
-					maxY = 0 - mExtendLimitTop;
-					minY = getHeight() + mExtendLimitBottom - getImageHeight();
-				} else {
-					minY = 0 - mExtendLimitTop;
-					maxY = getHeight() + mExtendLimitBottom - getImageHeight();
-				}
+				//bounds of scroller cover the float limit, which the image is clamped to
+				limit = computeTranslateLimit();
+				float fracX = startTransX - startX, fracY = startTransY - startY;
+				minX = (int) Math.floor(limit[0] - fracX);
+				maxX = (int) Math.ceil(limit[1] - fracX);
+				minY = (int) Math.floor(limit[2] - fracY);
+				maxY = (int) Math.ceil(limit[3] - fracY);
+				clampX = startTransX >= limit[0] && startTransX <= limit[1];
+				clampY = startTransY >= limit[2] && startTransY <= limit[3];
 			}
 			scroller.fling(startX, startY, vx, vy, minX, maxX, minY, maxY);
 			currX = startX;
 			currY = startY;
+			transX = startTransX;
+			transY = startTransY;
 			prevMovedX = movedX;
 			prevMovedY = movedY;
 		}
@@ -1417,9 +3202,19 @@ public class GestureImageView extends ImageView {
 			if (scroller.computeScrollOffset()) {
 				int newX = scroller.getCurrX();
 				int newY = scroller.getCurrY();
-				mMatrix.postTranslate(newX-currX, newY-currY);
+				float newTransX = startTransX + (newX - startX);
+				float newTransY = startTransY + (newY - startY);
+				if (clampX) {
+					newTransX = Math.max(limit[0], Math.min(limit[1], newTransX));
+				}
+				if (clampY) {
+					newTransY = Math.max(limit[2], Math.min(limit[3], newTransY));
+				}
+				mMatrix.postTranslate(newTransX - transX, newTransY - transY);
 				mDragListener.onDragging(true, newX-currX, newY-currY);
-				setImageMatrix(mMatrix);
+				transX = newTransX;
+				transY = newTransY;
+				applyImageMatrix();
 				currX = newX;
 				currY = newY;
 				compatPostOnAnimation(this);
@@ -0,0 +1,344 @@
+package com.kavmors.view.widget;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A parser that reads dimensions and EXIF orientation from the header of encoded image, without decoding it.
+ * Supported formats are JPEG, PNG, GIF, WebP and {@link TilePyramid} container. Only the bytes before image data are read,
+ * which are usually a few hundred bytes. It is pure Java and does not depend on Android framework,
+ * and {@link ImageSource} is parsed as a {@link ByteSource}.
+ */
+public final class ImageHeaderParser {
+	public static final int FORMAT_UNKNOWN = 0;
+	public static final int FORMAT_JPEG = 1;
+	public static final int FORMAT_PNG = 2;
+	public static final int FORMAT_WEBP = 3;
+	public static final int FORMAT_GIF = 4;
+	public static final int FORMAT_PYRAMID = 5;
+
+	/** Orientation value of EXIF that means the image is not transformed */
+	public static final int ORIENTATION_NORMAL = 1;
+
+	private static final int BUFFER_SIZE = 256;
+
+	/**
+	 * Information read from image header.
+	 */
+	public static class Header {
+		/** One of FORMAT_ constants */
+		public final int format;
+		/** Width of image in pixels */
+		public final int width;
+		/** Height of image in pixels */
+		public final int height;
+		/** Orientation value of EXIF, from 1 to 8. It is {@link #ORIENTATION_NORMAL} if the image has no EXIF. */
+		public final int orientation;
+
+		Header(int format, int width, int height) {
+			this(format, width, height, ORIENTATION_NORMAL);
+		}
+
+		Header(int format, int width, int height, int orientation) {
+			this.format = format;
+			this.width = width;
+			this.height = height;
+			this.orientation = orientation;
+		}
+
+		@Override
+		public String toString() {
+			return "Header[format=" + format + ", " + width + "x" + height + ", orientation=" + orientation + "]";
+		}
+	}
+
+	/**
+	 * Encoded bytes that can be read at any position.
+	 */
+	public interface ByteSource {
+		/**
+		 * Read bytes at an absolute position. It does not move any cursor of this source.
+		 * @param position The position of the first byte to read
+		 * @param buffer The buffer into which the data is read
+		 * @param offset The start offset in buffer
+		 * @param count The maximal number of bytes to read
+		 * @return The number of bytes read, or -1 if position is at the end of data
+		 * @throws IOException If the data cannot be read
+		 */
+		int read(long position, byte[] buffer, int offset, int count) throws IOException;
+	}
+
+	private ImageHeaderParser() {
+	}
+
+	/**
+	 * Parse header of bytes that can be read at any position, such as an {@link ImageSource}.
+	 * @param source The source to read
+	 * @return Header of image, or null if the format is not supported or the header is broken
+	 * @throws IOException If the source cannot be read
+	 */
+	public static Header parse(final ByteSource source) throws IOException {
+		return parse(new Reader() {
+			private long position = 0;
+
+			@Override
+			int fill(byte[] buffer, int offset, int count) throws IOException {
+				int read = source.read(position, buffer, offset, count);
+				if (read > 0) {
+					position += read;
+				}
+				return read;
+			}
+
+			@Override
+			void skipSource(long n) {
+				position += n;
+			}
+		});
+	}
+
+	/**
+	 * Parse header of an image stream. The stream is read only to the end of header, and it is not closed.
+	 * @param stream The stream to read
+	 * @return Header of image, or null if the format is not supported or the header is broken
+	 * @throws IOException If the stream cannot be read
+	 */
+	public static Header parse(final InputStream stream) throws IOException {
+		return parse(new Reader() {
+			@Override
+			int fill(byte[] buffer, int offset, int count) throws IOException {
+				return stream.read(buffer, offset, count);
+			}
+
+			@Override
+			void skipSource(long n) throws IOException {
+				while (n > 0) {
+					long skipped = stream.skip(n);
+					if (skipped <= 0) {
+						if (stream.read() < 0) {
+							throw new EOFException();
+						}
+						skipped = 1;
+					}
+					n -= skipped;
+				}
+			}
+		});
+	}
+
+	private static Header parse(Reader reader) throws IOException {
+		try {
+			int b0 = reader.readByte();
+			int b1 = reader.readByte();
+			if (b0 == 0xff && b1 == 0xd8) {
+				return parseJpeg(reader);
+			} else if (b0 == 0x89 && b1 == 'P') {
+				return parsePng(reader);
+			} else if (b0 == 'R' && b1 == 'I') {
+				return parseWebp(reader);
+			} else if (b0 == 'G' && b1 == 'I') {
+				return parseGif(reader);
+			} else if (b0 == 'T' && b1 == 'P') {
+				return parsePyramid(reader);
+			}
+		} catch (EOFException e) {
+			//truncated header
+		}
+		return null;
+	}
+
+	private static Header parseJpeg(Reader reader) throws IOException {
+		int orientation = ORIENTATION_NORMAL;
+		while (true) {
+			int marker = reader.readByte();
+			if (marker != 0xff) {
+				return null;
+			}
+			while (marker == 0xff) {		//fill bytes
+				marker = reader.readByte();
+			}
+			if (marker == 0xd9 || marker == 0xda) {		//EOI or SOS: no frame header before image data
+				return null;
+			}
+			if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {		//markers without length
+				continue;
+			}
+			int length = reader.readUInt16(true);
+			if (length < 2) {
+				return null;
+			}
+			if (marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {		//SOFn
+				reader.skip(1);		//sample precision
+				int height = reader.readUInt16(true);
+				int width = reader.readUInt16(true);
+				return new Header(FORMAT_JPEG, width, height, orientation);
+			}
+			if (marker == 0xe1 && orientation == ORIENTATION_NORMAL) {		//APP1, may be EXIF
+				int value = parseExifOrientation(reader, length - 2);
+				if (value >= 1 && value <= 8) {
+					orientation = value;
+				}
+				continue;
+			}
+			reader.skip(length - 2);
+		}
+	}
+
+	//Read orientation in IFD0 of EXIF. The whole segment is consumed, and 0 is returned if there is no orientation.
+	private static int parseExifOrientation(Reader reader, int length) throws IOException {
+		if (length < 14) {
+			reader.skip(length);
+			return 0;
+		}
+		int magic = reader.readInt32(true);
+		int padding = reader.readUInt16(true);
+		if (magic != 0x45786966 || padding != 0) {		//"Exif\0\0"
+			reader.skip(length - 6);
+			return 0;
+		}
+		int consumed = 6;
+		int order = reader.readUInt16(true);
+		boolean bigEndian = order == 0x4d4d;		//"MM", otherwise "II"
+		reader.skip(2);		//TIFF magic number
+		int ifdOffset = reader.readInt32(bigEndian);
+		consumed += 8;
+		int orientation = 0;
+		//offset is relative to TIFF header, which is 8 bytes read
+		if (ifdOffset >= 8 && 6 + ifdOffset + 2 <= length) {
+			reader.skip(ifdOffset - 8);
+			consumed += ifdOffset - 8;
+			int entries = reader.readUInt16(bigEndian);
+			consumed += 2;
+			for (int i = 0; i < entries && consumed + 12 <= length; i++) {
+				int tag = reader.readUInt16(bigEndian);
+				reader.skip(2 + 4);		//type and count
+				int value = reader.readUInt16(bigEndian);
+				reader.skip(2);
+				consumed += 12;
+				if (tag == 0x0112) {
+					orientation = value;
+					break;
+				}
+			}
+		}
+		reader.skip(length - consumed);
+		return orientation;
+	}
+
+	private static Header parsePng(Reader reader) throws IOException {
+		if (reader.readByte() != 'N' || reader.readByte() != 'G') {
+			return null;
+		}
+		reader.skip(4 + 4);		//rest of signature, length of IHDR
+		if (reader.readInt32(true) != 0x49484452) {		//"IHDR"
+			return null;
+		}
+		int width = reader.readInt32(true);
+		int height = reader.readInt32(true);
+		return new Header(FORMAT_PNG, width, height);
+	}
+
+	private static Header parseWebp(Reader reader) throws IOException {
+		if (reader.readByte() != 'F' || reader.readByte() != 'F') {
+			return null;
+		}
+		reader.skip(4);		//file size
+		if (reader.readInt32(true) != 0x57454250) {		//"WEBP"
+			return null;
+		}
+		int chunk = reader.readInt32(true);
+		reader.skip(4);		//chunk size
+		if (chunk == 0x56503820) {		//"VP8 ", lossy
+			reader.skip(3);		//frame tag
+			if (reader.readByte() != 0x9d || reader.readByte() != 0x01 || reader.readByte() != 0x2a) {
+				return null;
+			}
+			int width = reader.readUInt16(false) & 0x3fff;
+			int height = reader.readUInt16(false) & 0x3fff;
+			return new Header(FORMAT_WEBP, width, height);
+		} else if (chunk == 0x5650384c) {		//"VP8L", lossless
+			if (reader.readByte() != 0x2f) {
+				return null;
+			}
+			int bits = reader.readInt32(false);
+			int width = (bits & 0x3fff) + 1;
+			int height = ((bits >> 14) & 0x3fff) + 1;
+			return new Header(FORMAT_WEBP, width, height);
+		} else if (chunk == 0x56503858) {		//"VP8X", extended
+			reader.skip(4);		//flags and reserved
+			int width = reader.readUInt24LE() + 1;
+			int height = reader.readUInt24LE() + 1;
+			return new Header(FORMAT_WEBP, width, height);
+		}
+		return null;
+	}
+
+	private static Header parseGif(Reader reader) throws IOException {
+		if (reader.readByte() != 'F' || reader.readByte() != '8') {
+			return null;
+		}
+		reader.skip(2);		//"7a" or "9a"
+		int width = reader.readUInt16(false);
+		int height = reader.readUInt16(false);
+		return new Header(FORMAT_GIF, width, height);
+	}
+
+	private static Header parsePyramid(Reader reader) throws IOException {
+		if (reader.readByte() != 'Y' || reader.readByte() != 'R' || reader.readInt32(true) != TilePyramid.VERSION) {
+			return null;
+		}
+		int width = reader.readInt32(true);
+		int height = reader.readInt32(true);
+		return new Header(FORMAT_PYRAMID, width, height);
+	}
+
+	//Sequential reader with a small window, so that the source is read in few calls
+	private static abstract class Reader {
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int position = 0;
+		private int limit = 0;
+
+		abstract int fill(byte[] buffer, int offset, int count) throws IOException;
+
+		abstract void skipSource(long n) throws IOException;
+
+		int readByte() throws IOException {
+			if (position == limit) {
+				int read = fill(buffer, 0, buffer.length);
+				if (read <= 0) {
+					throw new EOFException();
+				}
+				position = 0;
+				limit = read;
+			}
+			return buffer[position++] & 0xff;
+		}
+
+		int readUInt16(boolean bigEndian) throws IOException {
+			int b0 = readByte();
+			int b1 = readByte();
+			return bigEndian? (b0 << 8) | b1: (b1 << 8) | b0;
+		}
+
+		int readUInt24LE() throws IOException {
+			return readByte() | (readByte() << 8) | (readByte() << 16);
+		}
+
+		int readInt32(boolean bigEndian) throws IOException {
+			int hi = readUInt16(bigEndian);
+			int lo = readUInt16(bigEndian);
+			return bigEndian? (hi << 16) | lo: (lo << 16) | hi;
+		}
+
+		void skip(long n) throws IOException {
+			int buffered = limit - position;
+			if (n <= buffered) {
+				position += (int) n;
+				return;
+			}
+			position = limit;
+			skipSource(n - buffered);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.kavmors.view.widget;
+
+import java.util.ArrayList;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.view.View;
+
+/**
+ * A layer of items, such as markers or annotations, that is drawn over the image of {@link GestureImageView}
+ * and moves with it. Items are placed in pixels of image after orientation and kept in a spatial index,
+ * so only items in view are mapped and drawn in each frame.
+ * @param <T> Type of item
+ */
+public abstract class ImageOverlay<T> {
+	private final SpatialGrid<T> mGrid = new SpatialGrid<T>();
+	private final ArrayList<SpatialGrid.Entry<T>> mVisible = new ArrayList<SpatialGrid.Entry<T>>();
+	private final ArrayList<SpatialGrid.Entry<T>> mHits = new ArrayList<SpatialGrid.Entry<T>>();
+	private final RectF mQueryRect = new RectF();
+	private final RectF mItemRect = new RectF();
+	private float[] mPoints = new float[0];
+	private float mMargin = 0;
+	private View mView;
+
+	/**
+	 * Draw an item that is in view.
+	 * @param canvas Canvas of view, in view pixels
+	 * @param item The item
+	 * @param rect Region of item in view pixels. It is a point for an item that is added at a point
+	 */
+	protected abstract void onDrawItem(Canvas canvas, T item, RectF rect);
+
+	/**
+	 * Add an item at a point of image.
+	 * @param item The item
+	 * @param x Position on X axis in image pixels
+	 * @param y Position on Y axis in image pixels
+	 */
+	public void add(T item, float x, float y) {
+		add(item, x, y, x, y);
+	}
+
+	/**
+	 * Add an item that covers a region of image.
+	 * @param item The item
+	 * @param left Left border in image pixels
+	 * @param top Top border in image pixels
+	 * @param right Right border in image pixels
+	 * @param bottom Bottom border in image pixels
+	 */
+	public void add(T item, float left, float top, float right, float bottom) {
+		mGrid.add(item, left, top, right, bottom);
+		invalidate();
+	}
+
+	/**
+	 * Remove an item.
+	 * @param item The item
+	 * @return True if the item has been in this overlay
+	 */
+	public boolean remove(T item) {
+		boolean removed = mGrid.remove(item);
+		if (removed) {
+			invalidate();
+		}
+		return removed;
+	}
+
+	/**
+	 * Remove all items.
+	 */
+	public void clear() {
+		mGrid.clear();
+		invalidate();
+	}
+
+	/**
+	 * Get count of items.
+	 * @return Count of items
+	 */
+	public int size() {
+		return mGrid.size();
+	}
+
+	/**
+	 * Set how far, in view pixels, an item is drawn outside its region, e.g. half size of a marker icon.
+	 * Items out of view by less than this margin are still drawn.
+	 * @param margin Margin in view pixels
+	 */
+	public void setMargin(float margin) {
+		mMargin = margin;
+		invalidate();
+	}
+
+	/**
+	 * Get the margin that set by {@link #setMargin}.
+	 * @return Margin in view pixels
+	 */
+	public float getMargin() {
+		return mMargin;
+	}
+
+	/**
+	 * Find the item nearest to a point of image, among items within the radius of it.
+	 * @param x Position on X axis in image pixels
+	 * @param y Position on Y axis in image pixels
+	 * @param radius Radius in image pixels
+	 * @return The item, or null if none is within the radius
+	 */
+	public T hitTest(float x, float y, float radius) {
+		SpatialGrid.Entry<T> entry = mGrid.nearest(x, y, radius, mHits);
+		return entry == null? null: entry.item;
+	}
+
+	/**
+	 * Redraw the view that shows this overlay.
+	 */
+	public void invalidate() {
+		if (mView != null) {
+			mView.invalidate();
+		}
+	}
+
+	void attach(View view) {
+		mView = view;
+	}
+
+	void detach() {
+		mView = null;
+	}
+
+	//matrix maps image to view content, inverse is its inverse, and the view content is (left, top, right, bottom)
+	void draw(Canvas canvas, Matrix matrix, Matrix inverse, float left, float top, float right, float bottom) {
+		mQueryRect.set(left - mMargin, top - mMargin, right + mMargin, bottom + mMargin);
+		inverse.mapRect(mQueryRect);
+		mVisible.clear();
+		int count = mGrid.query(mQueryRect.left, mQueryRect.top, mQueryRect.right, mQueryRect.bottom, mVisible);
+		if (count == 0) {
+			return;
+		}
+		//map corners of all visible items in one call
+		if (mPoints.length < count * 4) {
+			mPoints = new float[count * 4];
+		}
+		for (int i = 0; i < count; i++) {
+			RectF r = mVisible.get(i).rect;
+			mPoints[i * 4] = r.left;
+			mPoints[i * 4 + 1] = r.top;
+			mPoints[i * 4 + 2] = r.right;
+			mPoints[i * 4 + 3] = r.bottom;
+		}
+		matrix.mapPoints(mPoints, 0, mPoints, 0, count * 2);
+		for (int i = 0; i < count; i++) {
+			mItemRect.set(mPoints[i * 4], mPoints[i * 4 + 1], mPoints[i * 4 + 2], mPoints[i * 4 + 3]);
+			onDrawItem(canvas, mVisible.get(i).item, mItemRect);
+		}
+		mVisible.clear();
+	}
+}
@@ -0,0 +1,50 @@
+package com.kavmors.view.widget;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.graphics.BitmapRegionDecoder;
+
+/**
+ * A source of encoded image bytes that can be probed and decoded without being copied into heap memory first.
+ * @see MappedFileImageSource
+ * @see StreamImageSource
+ * @see ByteBufferImageSource
+ */
+public interface ImageSource extends ImageHeaderParser.ByteSource {
+	/**
+	 * Get the length of encoded data in bytes.
+	 * @return The length, or -1 if it is unknown
+	 */
+	long length();
+
+	/**
+	 * Read bytes at an absolute position of the encoded data. It does not move any cursor of this source.
+	 * @param position The position of the first byte to read
+	 * @param buffer The buffer into which the data is read
+	 * @param offset The start offset in buffer
+	 * @param count The maximal number of bytes to read
+	 * @return The number of bytes read, or -1 if position is at the end of data
+	 * @throws IOException If the data cannot be read
+	 */
+	int read(long position, byte[] buffer, int offset, int count) throws IOException;
+
+	/**
+	 * Open a stream over the whole encoded data, for full decoding.
+	 * @return A new stream that starts at the first byte
+	 * @throws IOException If the stream cannot be opened
+	 */
+	InputStream openStream() throws IOException;
+
+	/**
+	 * Create a decoder that decodes regions of this image. Available since API 10.
+	 * @return A new region decoder, which should be recycled by caller
+	 * @throws IOException If the image format is not supported or the data cannot be read
+	 */
+	BitmapRegionDecoder newRegionDecoder() throws IOException;
+
+	/**
+	 * Release resources that held by this source. The source cannot be read after closed.
+	 */
+	void close();
+}
@@ -0,0 +1,759 @@
+package com.kavmors.view.widget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * A Drawable of an {@link ImageSource}, which reports the size of image as soon as the header is parsed.
+ * Pixels are decoded in background by {@link #load}, and the drawable draws nothing until they are ready.
+ * The decoded bitmap may be subsampled, and it is always stretched to the bounds of full image size.
+ * When the image is zoomed in over the resolution of that bitmap, sharper tiles of the visible region
+ * are decoded by {@link BitmapRegionDecoder} and drawn above it.
+ */
+public class ImageSourceDrawable extends Drawable {
+	private static final String TAG = "ImageSourceDrawable";
+
+	private static final int TILE_SIZE = 512;		//size of a tile in decoded pixels
+
+	private static final int MAX_DECODER_FAILURES = 3;		//region decoding is regarded unsupported after failures in a row
+	private static final long RETRY_DELAY = 500;		//delay to decode tiles again after a failure, doubled by each failure
+
+	//threads are daemon so that idle executors never keep the process alive
+	private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(threadFactory(TAG));
+	//tiles are decoded by several decoders at once, a thread for each core
+	private static final ExecutorService sTileExecutor = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), threadFactory(TAG + "-tile"));
+	private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+	private final ImageSource mSource;
+	private final ImageHeaderParser.Header mHeader;
+	private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private Executor mExecutor = sExecutor;
+	private Executor mTileExecutor = sTileExecutor;
+	private BitmapCache mCache;
+	private String mKey;
+	private DiskTileCache mDiskCache;
+	private String mDiskKey;
+	private Bitmap mBitmap;
+	private Bitmap mPlaceholder;		//drawn until mBitmap is loaded, owned by caller
+	private int mSampleSize = 0;		//0 if it has not been loaded
+	private volatile boolean mReleased = false;
+
+	private boolean mTilesEnabled = true;
+	private boolean mRegionUnsupported = false;
+	private int mDecoderFailures = 0;		//failures in a row to create a region decoder
+	private boolean mRetryPending = false;		//tiles are to be decoded again after a failure
+	private int mTileDecoders = 0;		//0 for the default size of pool
+	private DecoderPool<BitmapRegionDecoder> mDecoderPool;		//created in background when the first tile is decoded
+	private final ArrayList<Tile> mTiles = new ArrayList<Tile>();
+	private int mTileSampleSize = 0;		//sample size of tiles in mTiles
+	private boolean mQualityReduced = false;		//tiles are decoded at twice the sample size under memory pressure
+	private boolean mTilesTrimmed = false;		//tiles were dropped while out of view, to be decoded again when drawn
+	private final RectF mViewport = new RectF();		//last visible region in image pixels
+	private float mViewportScale = 0;		//last scale from image pixels to view pixels, 0 if unknown
+	private final Rect mClipBounds = new Rect();
+	private final Rect mSrcRect = new Rect();
+	private final RectF mDstRect = new RectF();
+	private final Runnable mRetryTiles = new Runnable() {
+		@Override
+		public void run() {
+			mRetryPending = false;
+			clearTiles();		//tiles that failed are requested again
+			updateTiles();
+		}
+	};
+
+	private static class Tile {
+		final int col, row;
+		final Rect rect;		//region in image pixels
+		Bitmap bitmap;
+		volatile boolean removed = false;
+		boolean visible = true;
+
+		Tile(int col, int row, Rect rect) {
+			this.col = col;
+			this.row = row;
+			this.rect = rect;
+		}
+	}
+
+	/**
+	 * Create a drawable by parsing header of source.
+	 * @param source The source of image
+	 * @throws IOException If the header cannot be read or the format is not supported
+	 */
+	public ImageSourceDrawable(ImageSource source) throws IOException {
+		ImageHeaderParser.Header header = ImageHeaderParser.parse(source);
+		if (header == null) {
+			throw new IOException("Unsupported image format");
+		}
+		mSource = source;
+		mHeader = header;
+	}
+
+	private static ThreadFactory threadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger mCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + mCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Get the executor that shared by all drawables if no other executor is set.
+	 * @return The executor
+	 */
+	public static Executor getDefaultExecutor() {
+		return sExecutor;
+	}
+
+	/**
+	 * Get the executor that decodes tiles of all drawables if no other executor is set. It has a thread for each core.
+	 * @return The executor
+	 */
+	public static Executor getDefaultTileExecutor() {
+		return sTileExecutor;
+	}
+
+	/**
+	 * Get the image source of this drawable.
+	 * @return The source
+	 */
+	public ImageSource getSource() {
+		return mSource;
+	}
+
+	/**
+	 * Get the header parsed from image source.
+	 * @return The header
+	 */
+	public ImageHeaderParser.Header getHeader() {
+		return mHeader;
+	}
+
+	/**
+	 * Set a cache that decoded bitmap and tiles are put in, so they can be reused by another drawable of the same image.
+	 * Must be called before {@link #load}.
+	 * @param cache The cache, or null to disable caching
+	 * @param key The key that identifies this image in cache
+	 */
+	public void setBitmapCache(BitmapCache cache, String key) {
+		mCache = key == null? null: cache;
+		mKey = key;
+	}
+
+	/**
+	 * Set a cache on disk that tiles are put in, so an image opened again gets sharp without decoding tiles.
+	 * Tiles are looked up in it after the cache in memory misses. Must be called before {@link #load}.
+	 * @param cache The cache, or null to disable caching on disk
+	 * @param key The key that identifies this image file, usually from {@link DiskTileCache#keyOf}
+	 */
+	public void setDiskTileCache(DiskTileCache cache, String key) {
+		mDiskCache = key == null? null: cache;
+		mDiskKey = key;
+	}
+
+	/**
+	 * Set the executor that decodes bitmap. The default one is {@link #getDefaultExecutor()}.
+	 * Tiles are decoded by the executor of {@link #setTileExecutor}.
+	 * @param executor The executor, or null for the default one
+	 */
+	public void setExecutor(Executor executor) {
+		mExecutor = executor == null? sExecutor: executor;
+	}
+
+	/**
+	 * Set the executor that decodes tiles. The default one is {@link #getDefaultTileExecutor()}.
+	 * Tiles are decoded at once only as many as threads of it.
+	 * @param executor The executor, or null for the default one
+	 */
+	public void setTileExecutor(Executor executor) {
+		mTileExecutor = executor == null? sTileExecutor: executor;
+	}
+
+	/**
+	 * Set the maximal count of region decoders of this image. A region decoder decodes one tile at a time,
+	 * so tiles in view are decoded on several cores by several decoders. The default count is the count of cores,
+	 * limited by memory that decoders take. Must be called before {@link #load}.
+	 * @param count Count of decoders, or 0 for the default one
+	 */
+	public void setTileDecoders(int count) {
+		mTileDecoders = count;
+	}
+
+	/**
+	 * Enables or disables tiles of higher resolution. Tiles that have been decoded are dropped when disabled.
+	 * @param enabled True to decode and draw tiles when zoomed in, false otherwise
+	 */
+	public void setTilesEnabled(boolean enabled) {
+		if (mTilesEnabled == enabled) {
+			return;
+		}
+		mTilesEnabled = enabled;
+		updateTiles();
+		invalidateSelf();
+	}
+
+	/**
+	 * Indicate whether tiles of higher resolution are enabled.
+	 * @return True if enabled
+	 */
+	public boolean isTilesEnabled() {
+		return mTilesEnabled;
+	}
+
+	/**
+	 * Set a bitmap of the whole image, such as a thumbnail that has been decoded, to draw until pixels are decoded.
+	 * It is stretched to the bounds of full image size like the decoded bitmap, so it must be in the orientation
+	 * stored in file. The bitmap is not recycled by this drawable.
+	 * @param placeholder The bitmap, or null to draw nothing until loaded
+	 */
+	public void setPlaceholder(Bitmap placeholder) {
+		mPlaceholder = placeholder;
+		if (mBitmap == null) {
+			invalidateSelf();
+		}
+	}
+
+	/**
+	 * Indicate whether pixels have been decoded.
+	 * @return True if pixels are ready to draw
+	 */
+	public boolean isLoaded() {
+		return mBitmap != null;
+	}
+
+	/**
+	 * Decode pixels in background, with a sample size that the result is not smaller than the required size.
+	 * It does nothing if it has been called before. Must be called in main thread.
+	 * @param reqWidth Required width in pixels, usually the width of view
+	 * @param reqHeight Required height in pixels, usually the height of view
+	 */
+	public void load(int reqWidth, int reqHeight) {
+		if (mSampleSize != 0 || mReleased) {
+			return;
+		}
+		final int sampleSize = computeSampleSize(mHeader.width, mHeader.height, reqWidth, reqHeight);
+		mSampleSize = sampleSize;
+		final String key = cacheKey(sampleSize, -1, -1);
+		Bitmap cached = key == null? null: mCache.get(key);
+		if (cached != null) {
+			onBitmapLoaded(cached);
+			return;
+		}
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (mReleased) {
+					return;
+				}
+				final Bitmap bitmap = decode(sampleSize);
+				if (bitmap != null && key != null) {
+					mCache.put(key, bitmap);
+				}
+				sMainHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						onBitmapLoaded(bitmap);
+					}
+				});
+			}
+		});
+	}
+
+	private void onBitmapLoaded(Bitmap bitmap) {
+		if (mReleased) {
+			return;
+		}
+		mBitmap = bitmap;
+		if (bitmap != null) {
+			mPlaceholder = null;
+		}
+		updateTiles();
+		invalidateSelf();
+	}
+
+	//Decoded bitmap of whole image, null if not loaded
+	Bitmap getBitmap() {
+		return mBitmap;
+	}
+
+	/**
+	 * Set the region of image that is visible in view. Tiles of that region are decoded if the image is zoomed in
+	 * over the resolution of decoded bitmap. Must be called in main thread.
+	 * @param visibleRect Visible region in image pixels
+	 * @param scale Scale from image pixels to view pixels
+	 */
+	public void setViewport(RectF visibleRect, float scale) {
+		mViewport.set(visibleRect);
+		mViewportScale = scale;
+		updateTiles();
+	}
+
+	/**
+	 * Release bitmaps, tiles and the image source. This drawable draws nothing after released.
+	 */
+	public void release() {
+		if (mReleased) {
+			return;
+		}
+		mReleased = true;
+		mBitmap = null;
+		mPlaceholder = null;
+		clearTiles();
+		sMainHandler.removeCallbacks(mRetryTiles);
+		final Runnable closeSource = new Runnable() {
+			@Override
+			public void run() {
+				mSource.close();		//after the bitmap in decoding is done
+			}
+		};
+		final DecoderPool<BitmapRegionDecoder> pool;
+		synchronized (this) {
+			pool = mDecoderPool;
+		}
+		if (pool == null) {
+			mExecutor.execute(closeSource);
+		} else {
+			//waiting for tiles in decoding blocks a tile thread, not the one that decodes bitmaps
+			mTileExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					pool.close();
+					mExecutor.execute(closeSource);
+				}
+			});
+		}
+		invalidateSelf();
+	}
+
+	/**
+	 * Free memory by the stage of {@link MemoryTrimmer}. Tiles are dropped if the image is out of view, idle region
+	 * decoders are recycled from {@link MemoryTrimmer#STAGE_POOLS}, and tiles in view are decoded at half
+	 * resolution from {@link MemoryTrimmer#STAGE_QUALITY} until {@link #restoreQuality} is called.
+	 * Must be called in main thread.
+	 * @param stage The stage of trimming
+	 * @param offscreen True if the image is not visible on screen
+	 */
+	public void trimMemory(int stage, boolean offscreen) {
+		if (mReleased) {
+			return;
+		}
+		if ((offscreen || mViewport.isEmpty()) && !mTiles.isEmpty()) {
+			clearTiles();
+			mTilesTrimmed = true;
+		}
+		if (stage >= MemoryTrimmer.STAGE_POOLS) {
+			final DecoderPool<BitmapRegionDecoder> pool;
+			synchronized (this) {
+				pool = mDecoderPool;
+			}
+			if (pool != null) {
+				mExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						pool.trim();
+					}
+				});
+			}
+		}
+		if (stage >= MemoryTrimmer.STAGE_QUALITY && !mQualityReduced) {
+			mQualityReduced = true;
+			updateTiles();
+			invalidateSelf();
+		}
+	}
+
+	/**
+	 * Decode tiles in view at full resolution again after {@link #trimMemory} reduced it. Must be called in main thread.
+	 */
+	public void restoreQuality() {
+		if (!mQualityReduced) {
+			return;
+		}
+		mQualityReduced = false;
+		updateTiles();
+		invalidateSelf();
+	}
+
+	/**
+	 * Indicate whether tiles are decoded at half resolution to save memory.
+	 * @return True if quality is reduced
+	 */
+	public boolean isQualityReduced() {
+		return mQualityReduced;
+	}
+
+	/**
+	 * Get bytes of bitmaps held by this drawable, including the decoded bitmap, the placeholder and tiles.
+	 * Bitmaps shared with a {@link BitmapCache} are counted as well. Must be called in main thread.
+	 * @return Bytes
+	 */
+	public long getByteCount() {
+		long bytes = sizeOf(mBitmap) + sizeOf(mPlaceholder);
+		for (int i = 0; i < mTiles.size(); i++) {
+			bytes += sizeOf(mTiles.get(i).bitmap);
+		}
+		return bytes;
+	}
+
+	private static long sizeOf(Bitmap bitmap) {
+		return bitmap == null? 0: (long) bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	private void updateTiles() {
+		if (mReleased || !mTilesEnabled || mRegionUnsupported || mBitmap == null || mViewportScale <= 0
+				|| (VERSION.SDK_INT < VERSION_CODES.GINGERBREAD_MR1 && !(mSource instanceof TilePyramidSource))) {
+			clearTiles();
+			return;
+		}
+		int sampleSize = 1;
+		while (sampleSize * 2 <= 1f / mViewportScale) {
+			sampleSize *= 2;
+		}
+		if (mQualityReduced) {
+			sampleSize *= 2;
+		}
+		if (sampleSize >= mSampleSize) {		//decoded bitmap is sharp enough
+			clearTiles();
+			return;
+		}
+		if (sampleSize != mTileSampleSize) {
+			clearTiles();
+			mTileSampleSize = sampleSize;
+		}
+
+		if (mViewport.isEmpty()) {		//image is out of view, keep tiles for when it comes back
+			return;
+		}
+
+		int tileSize = TILE_SIZE * sampleSize;
+		int left = Math.max(0, (int) Math.floor(mViewport.left / tileSize));
+		int top = Math.max(0, (int) Math.floor(mViewport.top / tileSize));
+		int right = Math.min((mHeader.width - 1) / tileSize, (int) Math.floor(mViewport.right / tileSize));
+		int bottom = Math.min((mHeader.height - 1) / tileSize, (int) Math.floor(mViewport.bottom / tileSize));
+		for (int i = 0; i < mTiles.size(); i++) {
+			mTiles.get(i).visible = false;
+		}
+		for (int row = top; row <= bottom; row++) {
+			for (int col = left; col <= right; col++) {
+				Tile tile = findTile(col, row);
+				if (tile == null) {
+					tile = new Tile(col, row, new Rect(col * tileSize, row * tileSize,
+							Math.min(mHeader.width, (col + 1) * tileSize), Math.min(mHeader.height, (row + 1) * tileSize)));
+					mTiles.add(tile);
+					requestTile(tile, sampleSize);
+				}
+				tile.visible = true;
+			}
+		}
+		for (int i = mTiles.size() - 1; i >= 0; i--) {
+			Tile tile = mTiles.get(i);
+			if (!tile.visible) {
+				tile.removed = true;
+				mTiles.remove(i);
+			}
+		}
+	}
+
+	private Tile findTile(int col, int row) {
+		for (int i = 0; i < mTiles.size(); i++) {
+			Tile tile = mTiles.get(i);
+			if (tile.col == col && tile.row == row) {
+				return tile;
+			}
+		}
+		return null;
+	}
+
+	private void clearTiles() {
+		for (int i = 0; i < mTiles.size(); i++) {
+			mTiles.get(i).removed = true;
+		}
+		mTiles.clear();
+		mTileSampleSize = 0;
+	}
+
+	private void requestTile(final Tile tile, final int sampleSize) {
+		final String key = cacheKey(sampleSize, tile.col, tile.row);
+		Bitmap cached = key == null? null: mCache.get(key);
+		if (cached != null) {
+			tile.bitmap = cached;
+			invalidateSelf();
+			return;
+		}
+		mTileExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (tile.removed) {		//scrolled out before decoding
+					return;
+				}
+				String diskKey = mDiskCache == null? null: mDiskKey + "/" + sampleSize + "/" + tile.col + "," + tile.row;
+				Bitmap bitmap = diskKey == null? null: mDiskCache.get(diskKey);
+				boolean fromDisk = bitmap != null;
+				if (bitmap == null) {
+					bitmap = decodeTile(tile.rect, sampleSize);
+				}
+				if (bitmap != null && key != null) {
+					mCache.put(key, bitmap);
+				}
+				postTile(tile, bitmap, !fromDisk);
+				if (bitmap != null && diskKey != null && !fromDisk) {
+					mDiskCache.put(diskKey, bitmap);		//after the tile is shown
+				}
+			}
+		});
+	}
+
+	private void postTile(final Tile tile, final Bitmap bitmap, final boolean decoded) {
+		sMainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (bitmap == null) {
+					return;
+				}
+				if (decoded) {
+					mDecoderFailures = 0;
+				}
+				tile.bitmap = bitmap;
+				if (!tile.removed) {
+					invalidateSelf();
+				}
+			}
+		});
+	}
+
+	@TargetApi(VERSION_CODES.GINGERBREAD_MR1)
+	private Bitmap decodeTile(Rect rect, int sampleSize) {
+		if (mSource instanceof TilePyramidSource) {
+			return decodePyramid(rect, sampleSize);
+		}
+		DecoderPool<BitmapRegionDecoder> pool = decoderPool();
+		if (pool == null) {		//released
+			return null;
+		}
+		BitmapRegionDecoder decoder = null;
+		try {
+			decoder = pool.acquire();
+			if (decoder == null) {		//released
+				return null;
+			}
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize;
+			return decoder.decodeRegion(rect, options);
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot create region decoder", e);
+			sMainHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					onDecoderFailed();
+				}
+			});
+			return null;
+		} finally {
+			if (decoder != null) {
+				pool.release(decoder);
+			}
+		}
+	}
+
+	//A decoder may fail for a while, such as out of file descriptors, so tiles are decoded again later.
+	//Region decoding is regarded unsupported only after it fails several times in a row
+	private void onDecoderFailed() {
+		if (mReleased || mRegionUnsupported || mRetryPending) {		//tiles failed in the same round count once
+			return;
+		}
+		mDecoderFailures++;
+		if (mDecoderFailures >= MAX_DECODER_FAILURES) {
+			Log.w(TAG, "Region decoding is not supported by this source");
+			mRegionUnsupported = true;
+			clearTiles();
+			return;
+		}
+		mRetryPending = true;
+		sMainHandler.postDelayed(mRetryTiles, RETRY_DELAY << (mDecoderFailures - 1));
+	}
+
+	//Pool of region decoders, sized when the first tile is decoded
+	private synchronized DecoderPool<BitmapRegionDecoder> decoderPool() {
+		if (mDecoderPool == null && !mReleased) {
+			long length = mSource.length();		//a decoder may hold a copy of encoded data
+			long bytes = (length > 0? length: 0) + (long) TILE_SIZE * TILE_SIZE * 4;
+			int size = mTileDecoders > 0? mTileDecoders: DecoderPool.defaultSize(bytes);
+			mDecoderPool = new DecoderPool<BitmapRegionDecoder>(new DecoderPool.Factory<BitmapRegionDecoder>() {
+				@Override
+				@TargetApi(VERSION_CODES.GINGERBREAD_MR1)
+				public BitmapRegionDecoder create() throws IOException {
+					return mSource.newRegionDecoder();
+				}
+
+				@Override
+				@TargetApi(VERSION_CODES.GINGERBREAD_MR1)
+				public void recycle(BitmapRegionDecoder decoder) {
+					decoder.recycle();
+				}
+			}, size);
+		}
+		return mDecoderPool;
+	}
+
+	//Tiles of a pyramid are independent, so they are decoded without region decoders
+	private Bitmap decodePyramid(Rect rect, int sampleSize) {
+		if (mReleased) {
+			return null;
+		}
+		try {
+			return ((TilePyramidSource) mSource).decodeRegion(rect, sampleSize);
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot decode tiles of pyramid", e);
+			return null;
+		}
+	}
+
+	private Bitmap decode(int sampleSize) {
+		if (mSource instanceof TilePyramidSource) {		//from the level of sample size, not the whole container
+			return decodePyramid(new Rect(0, 0, mHeader.width, mHeader.height), sampleSize);
+		}
+		InputStream stream = null;
+		try {
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inSampleSize = sampleSize;
+			stream = mSource.openStream();
+			return BitmapFactory.decodeStream(stream, null, options);
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot decode image source", e);
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
+	//Key of the whole image if col and row are -1, otherwise key of a tile
+	private String cacheKey(int sampleSize, int col, int row) {
+		if (mCache == null) {
+			return null;
+		}
+		return col < 0? mKey + "/" + sampleSize: mKey + "/" + sampleSize + "/" + col + "," + row;
+	}
+
+	/**
+	 * Calculate the largest power of 2 sample size that the sampled image still covers the required size.
+	 * @param width Width of image
+	 * @param height Height of image
+	 * @param reqWidth Required width
+	 * @param reqHeight Required height
+	 * @return Sample size, at least 1
+	 */
+	public static int computeSampleSize(int width, int height, int reqWidth, int reqHeight) {
+		int sampleSize = 1;
+		if (reqWidth <= 0 || reqHeight <= 0) {
+			return sampleSize;
+		}
+		while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+
+	@Override
+	public void draw(Canvas canvas) {
+		Rect bounds = getBounds();
+		if (!canvas.getClipBounds(mClipBounds) || !mClipBounds.intersect(bounds)) {
+			return;		//nothing of image is visible
+		}
+		Bitmap bitmap = mBitmap != null? mBitmap: mPlaceholder;
+		if (bitmap != null) {
+			drawVisiblePart(canvas, bitmap, bounds);
+		}
+		if (mTilesTrimmed) {		//back in view after tiles were trimmed
+			mTilesTrimmed = false;
+			sMainHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					updateTiles();
+				}
+			});
+		}
+		//bounds of this drawable are the full image size at (0, 0), so tiles are drawn at their image position
+		for (int i = 0; i < mTiles.size(); i++) {
+			Tile tile = mTiles.get(i);
+			if (tile.bitmap != null && Rect.intersects(tile.rect, mClipBounds)) {
+				canvas.drawBitmap(tile.bitmap, null, tile.rect, mPaint);
+			}
+		}
+	}
+
+	//Draw only the part of bitmap in mClipBounds, rounded out to whole bitmap pixels so it lines up with a full draw
+	private void drawVisiblePart(Canvas canvas, Bitmap bitmap, Rect bounds) {
+		float scaleX = (float) bitmap.getWidth() / bounds.width();
+		float scaleY = (float) bitmap.getHeight() / bounds.height();
+		mSrcRect.set((int) Math.floor((mClipBounds.left - bounds.left) * scaleX),
+				(int) Math.floor((mClipBounds.top - bounds.top) * scaleY),
+				Math.min(bitmap.getWidth(), (int) Math.ceil((mClipBounds.right - bounds.left) * scaleX)),
+				Math.min(bitmap.getHeight(), (int) Math.ceil((mClipBounds.bottom - bounds.top) * scaleY)));
+		mDstRect.set(bounds.left + mSrcRect.left / scaleX, bounds.top + mSrcRect.top / scaleY,
+				bounds.left + mSrcRect.right / scaleX, bounds.top + mSrcRect.bottom / scaleY);
+		canvas.drawBitmap(bitmap, mSrcRect, mDstRect, mPaint);
+	}
+
+	@Override
+	public int getIntrinsicWidth() {
+		return mHeader.width;
+	}
+
+	@Override
+	public int getIntrinsicHeight() {
+		return mHeader.height;
+	}
+
+	@Override
+	public void setAlpha(int alpha) {
+		mPaint.setAlpha(alpha);
+		invalidateSelf();
+	}
+
+	@Override
+	public void setColorFilter(ColorFilter cf) {
+		mPaint.setColorFilter(cf);
+		invalidateSelf();
+	}
+
+	@Override
+	public int getOpacity() {
+		return PixelFormat.TRANSLUCENT;
+	}
+}
@@ -0,0 +1,70 @@
+package com.kavmors.view.widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.annotation.TargetApi;
+import android.graphics.BitmapRegionDecoder;
+import android.os.Build.VERSION_CODES;
+
+/**
+ * An {@link ImageSource} that maps a file into memory by {@link FileChannel#map}.
+ * Pages of the file are loaded by system when they are read, so probing header touches only the first pages.
+ */
+public class MappedFileImageSource extends ByteBufferImageSource {
+	private RandomAccessFile mFile;
+
+	/**
+	 * Map a file as image source.
+	 * @param file The image file, which should be smaller than 2GB
+	 * @throws IOException If the file cannot be opened or mapped
+	 */
+	public MappedFileImageSource(File file) throws IOException {
+		this(new RandomAccessFile(file, "r"));
+	}
+
+	private MappedFileImageSource(RandomAccessFile file) throws IOException {
+		super(map(file));
+		mFile = file;
+	}
+
+	private static MappedByteBuffer map(RandomAccessFile file) throws IOException {
+		try {
+			long size = file.length();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File is too large to be mapped: " + size);
+			}
+			return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	@Override
+	@TargetApi(VERSION_CODES.GINGERBREAD_MR1)
+	public BitmapRegionDecoder newRegionDecoder() throws IOException {
+		RandomAccessFile file = mFile;
+		if (file == null) {
+			throw new IOException("ImageSource has been closed");
+		}
+		//decoder reads the file by itself, instead of the stream of mapped buffer
+		return BitmapRegionDecoder.newInstance(file.getFD(), false);
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		if (mFile != null) {
+			try {
+				mFile.close();
+			} catch (IOException e) {
+				//ignore, nothing can be done
+			}
+			mFile = null;
+		}
+	}
+}
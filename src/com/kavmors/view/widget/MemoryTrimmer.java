@@ -0,0 +1,280 @@
+package com.kavmors.view.widget;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Frees memory of image views and caches when the system runs low on memory, by the level of
+ * {@link ComponentCallbacks2#onTrimMemory}. Memory is freed in stages: tiles of images out of view and half
+ * of memory caches first, then whole caches and idle region decoders, and at last tiles in view are decoded
+ * at half resolution. Full resolution is restored when no pressure is reported for a while and the heap has room.
+ * <p>It registers itself to the application context on API 14 and above. On older versions,
+ * call {@link #onLowMemory} from {@link android.app.Activity#onLowMemory}.
+ */
+public class MemoryTrimmer {
+	/** Drop tiles of images out of view, and trim memory caches to half */
+	public static final int STAGE_OFFSCREEN = 1;
+	/** Also clear memory caches and recycle idle region decoders and spare frames */
+	public static final int STAGE_POOLS = 2;
+	/** Also decode tiles in view at half resolution until pressure eases */
+	public static final int STAGE_QUALITY = 3;
+
+	private static final long RESTORE_DELAY = 10000;		//time without pressure before full resolution is restored
+	private static final float RESTORE_HEAP_RATIO = 0.75f;		//used heap must be below this ratio to restore
+
+	private final Context mContext;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final ArrayList<WeakReference<GestureImageView>> mViews = new ArrayList<WeakReference<GestureImageView>>();
+	private final ArrayList<BitmapCache> mCaches = new ArrayList<BitmapCache>();
+	private final ArrayList<DiskTileCache> mDiskCaches = new ArrayList<DiskTileCache>();
+	private Object mCallbacks;		//ComponentCallbacks2 when registered
+	private boolean mQualityReduced = false;
+	private long mLastCriticalTime;
+
+	private final Runnable mRestore = new Runnable() {
+		@Override
+		public void run() {
+			long wait = mLastCriticalTime + RESTORE_DELAY - SystemClock.uptimeMillis();
+			Runtime runtime = Runtime.getRuntime();
+			long used = runtime.totalMemory() - runtime.freeMemory();
+			if (wait > 0 || used > runtime.maxMemory() * RESTORE_HEAP_RATIO) {		//still under pressure, check later
+				mHandler.postDelayed(this, Math.max(wait, RESTORE_DELAY));
+				return;
+			}
+			mQualityReduced = false;
+			for (int i = mViews.size() - 1; i >= 0; i--) {
+				GestureImageView view = mViews.get(i).get();
+				if (view == null) {
+					mViews.remove(i);
+				} else {
+					view.restoreQuality();
+				}
+			}
+		}
+	};
+
+	/**
+	 * Memory held by registered views and caches.
+	 */
+	public static class Usage {
+		/** Bytes of bitmaps held by views */
+		public final long views;
+		/** Count of views alive */
+		public final int viewCount;
+		/** Bytes of bitmaps held by memory caches */
+		public final long memoryCaches;
+		/** Bytes of tiles held by disk caches, which are not in heap */
+		public final long diskCaches;
+
+		Usage(long views, int viewCount, long memoryCaches, long diskCaches) {
+			this.views = views;
+			this.viewCount = viewCount;
+			this.memoryCaches = memoryCaches;
+			this.diskCaches = diskCaches;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d views %d KB, memory caches %d KB, disk caches %d KB",
+					viewCount, views / 1024, memoryCaches / 1024, diskCaches / 1024);
+		}
+	}
+
+	/**
+	 * Create a trimmer. It does nothing until {@link #register} is called.
+	 * @param context The context, of which the application context is registered to
+	 */
+	public MemoryTrimmer(Context context) {
+		mContext = context.getApplicationContext();
+	}
+
+	/**
+	 * Listen to memory pressure of the system. It does nothing below API 14.
+	 */
+	public void register() {
+		if (mCallbacks != null || VERSION.SDK_INT < VERSION_CODES.ICE_CREAM_SANDWICH) {
+			return;
+		}
+		mCallbacks = newCallbacks();
+		mContext.registerComponentCallbacks((ComponentCallbacks2) mCallbacks);
+	}
+
+	/**
+	 * Stop listening to memory pressure, and stop restoring quality.
+	 */
+	public void unregister() {
+		if (mCallbacks != null) {
+			mContext.unregisterComponentCallbacks((ComponentCallbacks2) mCallbacks);
+			mCallbacks = null;
+		}
+		mHandler.removeCallbacks(mRestore);
+	}
+
+	@TargetApi(VERSION_CODES.ICE_CREAM_SANDWICH)
+	private Object newCallbacks() {
+		return new ComponentCallbacks2() {
+			@Override
+			public void onTrimMemory(int level) {
+				MemoryTrimmer.this.onTrimMemory(level);
+			}
+
+			@Override
+			public void onLowMemory() {
+				MemoryTrimmer.this.onLowMemory();
+			}
+
+			@Override
+			public void onConfigurationChanged(Configuration newConfig) {
+				//nothing to do
+			}
+		};
+	}
+
+	/**
+	 * Add a view to trim. It is held weakly, so it need not be removed.
+	 * @param view The view
+	 */
+	public void addView(GestureImageView view) {
+		for (int i = mViews.size() - 1; i >= 0; i--) {
+			GestureImageView v = mViews.get(i).get();
+			if (v == view) {
+				return;
+			} else if (v == null) {
+				mViews.remove(i);
+			}
+		}
+		mViews.add(new WeakReference<GestureImageView>(view));
+	}
+
+	/**
+	 * Remove a view added by {@link #addView}.
+	 * @param view The view
+	 */
+	public void removeView(GestureImageView view) {
+		for (int i = mViews.size() - 1; i >= 0; i--) {
+			GestureImageView v = mViews.get(i).get();
+			if (v == view || v == null) {
+				mViews.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Add a memory cache to trim.
+	 * @param cache The cache
+	 */
+	public void addCache(BitmapCache cache) {
+		if (!mCaches.contains(cache)) {
+			mCaches.add(cache);
+		}
+	}
+
+	/**
+	 * Add a disk cache to be counted in {@link #getUsage}. It is not trimmed, since it holds no heap memory.
+	 * @param cache The cache
+	 */
+	public void addDiskCache(DiskTileCache cache) {
+		if (!mDiskCaches.contains(cache)) {
+			mDiskCaches.add(cache);
+		}
+	}
+
+	/**
+	 * Trim memory by a level of {@link ComponentCallbacks2#onTrimMemory}. Must be called in main thread.
+	 * Levels in background, up to TRIM_MEMORY_COMPLETE, trim to {@link #STAGE_POOLS}, since nothing is drawn
+	 * then and tiles in view are needed as soon as the app returns. Only TRIM_MEMORY_RUNNING_CRITICAL
+	 * reduces resolution.
+	 * @param level The level
+	 */
+	public void onTrimMemory(int level) {
+		int stage;
+		if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+			stage = STAGE_QUALITY;
+		} else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+				|| level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+			stage = STAGE_POOLS;
+		} else {
+			stage = STAGE_OFFSCREEN;
+		}
+		trim(stage);
+	}
+
+	/**
+	 * Trim memory as much as possible, as the system is about to kill processes. Must be called in main thread.
+	 */
+	public void onLowMemory() {
+		trim(STAGE_QUALITY);
+	}
+
+	/**
+	 * Trim memory to a stage. Must be called in main thread.
+	 * @param stage One of {@link #STAGE_OFFSCREEN}, {@link #STAGE_POOLS} and {@link #STAGE_QUALITY}
+	 */
+	public void trim(int stage) {
+		for (int i = 0; i < mCaches.size(); i++) {
+			BitmapCache cache = mCaches.get(i);
+			if (stage >= STAGE_POOLS) {
+				cache.clear();
+			} else {
+				cache.trimToSize(cache.maxSize() / 2);
+			}
+		}
+		for (int i = mViews.size() - 1; i >= 0; i--) {
+			GestureImageView view = mViews.get(i).get();
+			if (view == null) {
+				mViews.remove(i);
+			} else {
+				view.trimMemory(stage);
+			}
+		}
+		if (stage >= STAGE_QUALITY) {
+			mQualityReduced = true;
+			mLastCriticalTime = SystemClock.uptimeMillis();
+			mHandler.removeCallbacks(mRestore);
+			mHandler.postDelayed(mRestore, RESTORE_DELAY);
+		}
+	}
+
+	/**
+	 * Indicate whether tiles in view are decoded at half resolution, until pressure eases.
+	 * @return True if quality is reduced
+	 */
+	public boolean isQualityReduced() {
+		return mQualityReduced;
+	}
+
+	/**
+	 * Get memory held by views and caches that have been added. Must be called in main thread.
+	 * @return The usage
+	 */
+	public Usage getUsage() {
+		long views = 0;
+		int viewCount = 0;
+		for (int i = mViews.size() - 1; i >= 0; i--) {
+			GestureImageView view = mViews.get(i).get();
+			if (view != null) {
+				views += view.getMemoryUsage();
+				viewCount++;
+			}
+		}
+		long memoryCaches = 0;
+		for (int i = 0; i < mCaches.size(); i++) {
+			memoryCaches += mCaches.get(i).size();
+		}
+		long diskCaches = 0;
+		for (int i = 0; i < mDiskCaches.size(); i++) {
+			diskCaches += mDiskCaches.get(i).size();
+		}
+		return new Usage(views, viewCount, memoryCaches, diskCaches);
+	}
+}
@@ -0,0 +1,570 @@
+package com.kavmors.view.widget;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Movie;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * A Drawable that plays an animated GIF of an {@link ImageSource}, which reports the size of image as soon as
+ * the header is parsed. Frames are rendered in a background thread into a ring of three bitmaps, subsampled
+ * by the scale that the drawable is drawn with, so a zoomed out animation costs little memory and time.
+ * The main thread only swaps the bitmap to draw when a frame is due, so gestures are not slowed by playback.
+ * The animation loops until {@link #stop} is called.
+ */
+public class MovieDrawable extends Drawable implements Animatable {
+	private static final String TAG = "MovieDrawable";
+
+	private static final int RING_SIZE = 3;		//frame on screen, frame waiting to show, and frame in rendering
+	private static final int MIN_DELAY = 20;		//delays shorter than this are played as DEFAULT_DELAY, like browsers
+	private static final int DEFAULT_DELAY = 100;
+
+	private static Handler sDecodeHandler;
+	private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+	private final ImageSource mSource;
+	private final ImageHeaderParser.Header mHeader;
+	private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private volatile boolean mReleased = false;
+
+	//used in background only
+	private Movie mMovie;
+	private int[] mFrameTimes;		//start of each frame in time of movie
+	private int[] mFrameDelays;		//time to show each frame in playback
+	private boolean mDecodeFailed = false;
+
+	private final Object mLock = new Object();
+	private final Frame[] mRing = new Frame[RING_SIZE];
+	private Frame mDisplay;		//frame that is drawn
+	private Frame mPending;		//frame that has been rendered and waits for its time
+	private boolean mRunning = false;
+	private boolean mHiddenWhileRunning = false;		//resume when visible again
+	private int mNextIndex = 0;		//frame to render next
+	private long mNextTime;		//uptime when the next frame is due
+	private volatile int mSampleSize = 1;
+	private long mDecodedFrames, mShownFrames, mDroppedFrames, mSkippedFrames;
+
+	private static class Frame {
+		int index;
+		int sampleSize;
+		Bitmap bitmap;
+		Canvas canvas;
+	}
+
+	/**
+	 * Counters of frames since this drawable is created.
+	 */
+	public static class FrameStats {
+		/** Frames that have been rendered in background */
+		public final long decoded;
+		/** Frames that have been swapped on screen */
+		public final long shown;
+		/** Frames that were rendered but replaced by the next one before shown, because the main thread was busy */
+		public final long dropped;
+		/** Frames that were not rendered at all, because rendering fell behind the time of animation */
+		public final long skipped;
+
+		FrameStats(long decoded, long shown, long dropped, long skipped) {
+			this.decoded = decoded;
+			this.shown = shown;
+			this.dropped = dropped;
+			this.skipped = skipped;
+		}
+
+		@Override
+		public String toString() {
+			return "FrameStats[decoded=" + decoded + ", shown=" + shown + ", dropped=" + dropped + ", skipped=" + skipped + "]";
+		}
+	}
+
+	/**
+	 * Create a drawable by parsing header of source. The frames are decoded in background when the first frame is needed.
+	 * @param source The source of image
+	 * @throws IOException If the header cannot be read or the image is not a GIF
+	 */
+	public MovieDrawable(ImageSource source) throws IOException {
+		ImageHeaderParser.Header header = ImageHeaderParser.parse(source);
+		if (header == null || header.format != ImageHeaderParser.FORMAT_GIF) {
+			throw new IOException("Unsupported animated image format");
+		}
+		mSource = source;
+		mHeader = header;
+		renderFirstFrame();
+	}
+
+	private static synchronized Handler getDecodeHandler() {
+		if (sDecodeHandler == null) {
+			HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+			thread.start();
+			sDecodeHandler = new Handler(thread.getLooper());
+		}
+		return sDecodeHandler;
+	}
+
+	/**
+	 * Get the image source of this drawable.
+	 * @return The source
+	 */
+	public ImageSource getSource() {
+		return mSource;
+	}
+
+	/**
+	 * Get the header parsed from image source.
+	 * @return The header
+	 */
+	public ImageHeaderParser.Header getHeader() {
+		return mHeader;
+	}
+
+	/**
+	 * Set the scale from image pixels to view pixels that this drawable is drawn with. Frames are rendered with
+	 * the largest sample size that is not blurred by it. Must be called in main thread.
+	 * @param scale The scale
+	 */
+	public void setScale(float scale) {
+		int sampleSize = 1;
+		while (scale > 0 && scale * sampleSize * 2 <= 1) {
+			sampleSize *= 2;
+		}
+		if (sampleSize == mSampleSize) {
+			return;
+		}
+		boolean sharper = sampleSize < mSampleSize;
+		mSampleSize = sampleSize;
+		synchronized (mLock) {
+			if (sharper && !mRunning) {		//the next frame of a running animation has the new sample size anyway
+				getDecodeHandler().post(mRenderCurrent);
+			}
+		}
+	}
+
+	/**
+	 * Get the sample size that frames are rendered with.
+	 * @return The sample size, a power of 2
+	 */
+	public int getSampleSize() {
+		return mSampleSize;
+	}
+
+	/**
+	 * Get the counters of frames.
+	 * @return The counters
+	 */
+	public FrameStats getFrameStats() {
+		synchronized (mLock) {
+			return new FrameStats(mDecodedFrames, mShownFrames, mDroppedFrames, mSkippedFrames);
+		}
+	}
+
+	@Override
+	public void start() {
+		synchronized (mLock) {
+			if (mRunning || mReleased) {
+				return;
+			}
+			mRunning = true;
+			mNextTime = SystemClock.uptimeMillis();
+			if (mDisplay != null) {
+				mNextIndex = mDisplay.index;		//continue from the frame on screen
+			}
+			getDecodeHandler().post(mRenderNext);
+		}
+	}
+
+	@Override
+	public void stop() {
+		mHiddenWhileRunning = false;
+		synchronized (mLock) {
+			if (!mRunning) {
+				return;
+			}
+			mRunning = false;
+			getDecodeHandler().removeCallbacks(mRenderNext);
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		synchronized (mLock) {
+			return mRunning;
+		}
+	}
+
+	/**
+	 * Stop the animation and release bitmaps and the image source. This drawable draws nothing after released.
+	 */
+	public void release() {
+		if (mReleased) {
+			return;
+		}
+		stop();
+		mReleased = true;
+		synchronized (mLock) {
+			mDisplay = null;
+			mPending = null;
+		}
+		getDecodeHandler().post(new Runnable() {
+			@Override
+			public void run() {
+				mMovie = null;
+				mSource.close();
+			}
+		});
+		invalidateSelf();
+	}
+
+	/**
+	 * Free memory by the stage of {@link MemoryTrimmer}. From {@link MemoryTrimmer#STAGE_POOLS}, bitmaps of frames
+	 * that are neither drawn nor waiting are dropped, and allocated again when the animation renders next frames.
+	 * @param stage The stage of trimming
+	 */
+	public void trimMemory(int stage) {
+		if (stage < MemoryTrimmer.STAGE_POOLS || mReleased) {
+			return;
+		}
+		getDecodeHandler().post(new Runnable() {		//in the thread that renders, so no frame is being rendered
+			@Override
+			public void run() {
+				synchronized (mLock) {
+					for (int i = 0; i < RING_SIZE; i++) {
+						Frame frame = mRing[i];
+						if (frame != null && frame != mDisplay && frame != mPending && frame.bitmap != null) {
+							frame.bitmap = null;		//not recycled, a display list may still refer to it
+							frame.canvas = null;
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get bytes of bitmaps of frames held by this drawable.
+	 * @return Bytes
+	 */
+	public long getByteCount() {
+		long bytes = 0;
+		synchronized (mLock) {
+			for (int i = 0; i < RING_SIZE; i++) {
+				Bitmap bitmap = mRing[i] == null? null: mRing[i].bitmap;
+				if (bitmap != null) {
+					bytes += (long) bitmap.getRowBytes() * bitmap.getHeight();
+				}
+			}
+		}
+		return bytes;
+	}
+
+	private void renderFirstFrame() {
+		getDecodeHandler().post(mRenderCurrent);
+	}
+
+	//Render the next frame of animation, skip frames that are late, and schedule the one after
+	private final Runnable mRenderNext = new Runnable() {
+		@Override
+		public void run() {
+			int index;
+			long due;
+			if (!prepare()) {
+				return;
+			}
+			synchronized (mLock) {
+				if (!mRunning) {
+					return;
+				}
+				index = mNextIndex;
+				due = mNextTime;
+				long now = SystemClock.uptimeMillis();
+				while (due + mFrameDelays[index] <= now) {		//the whole time of this frame has passed
+					due += mFrameDelays[index];
+					index = (index + 1) % mFrameDelays.length;
+					mSkippedFrames++;
+				}
+			}
+			Frame frame = render(index);
+			synchronized (mLock) {
+				if (!mRunning || frame == null) {
+					return;
+				}
+				publish(frame, due);
+				if (mFrameDelays.length > 1) {
+					mNextIndex = (index + 1) % mFrameDelays.length;
+					mNextTime = due + mFrameDelays[index];
+					getDecodeHandler().postAtTime(this, due);		//render the next one while this one is on screen
+				}
+			}
+		}
+	};
+
+	//Render the frame on screen again, for a new sample size when paused
+	private final Runnable mRenderCurrent = new Runnable() {
+		@Override
+		public void run() {
+			int index;
+			if (!prepare()) {
+				return;
+			}
+			synchronized (mLock) {
+				if (mRunning) {
+					return;
+				}
+				index = mDisplay != null? mDisplay.index: 0;
+			}
+			Frame frame = render(index);
+			synchronized (mLock) {
+				if (!mRunning && frame != null) {
+					publish(frame, SystemClock.uptimeMillis());
+				}
+			}
+		}
+	};
+
+	//Swap the rendered frame on screen when it is due
+	private final Runnable mShow = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (mLock) {
+				if (mPending == null) {
+					return;
+				}
+				mDisplay = mPending;
+				mPending = null;
+				mShownFrames++;
+			}
+			invalidateSelf();
+		}
+	};
+
+	//Must hold mLock
+	private void publish(Frame frame, long due) {
+		if (mPending != null) {
+			mDroppedFrames++;		//main thread has not swapped it in time
+		}
+		mPending = frame;
+		sMainHandler.postAtTime(mShow, due);
+	}
+
+	//Decode movie and frame times at the first time, in background
+	private boolean prepare() {
+		if (mMovie != null) {
+			return true;
+		}
+		if (mDecodeFailed || mReleased) {
+			return false;
+		}
+		InputStream in = null;
+		try {
+			scanFrames();
+			in = new BufferedInputStream(mSource.openStream(), 16 * 1024);		//movie needs mark and reset
+			mMovie = Movie.decodeStream(in);
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot decode " + mHeader, e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+		if (mMovie == null || mFrameTimes.length == 0) {
+			mDecodeFailed = true;
+			mMovie = null;
+			return false;
+		}
+		return true;
+	}
+
+	//Render a frame into a bitmap of ring that is not on screen or waiting, in background
+	private Frame render(int index) {
+		int sampleSize = mSampleSize;
+		int width = (mHeader.width + sampleSize - 1) / sampleSize;
+		int height = (mHeader.height + sampleSize - 1) / sampleSize;
+		Frame frame = null;
+		synchronized (mLock) {
+			for (int i = 0; i < RING_SIZE; i++) {
+				if (mRing[i] == null) {
+					mRing[i] = new Frame();
+				}
+				if (mRing[i] != mDisplay && mRing[i] != mPending) {
+					frame = mRing[i];
+					break;
+				}
+			}
+		}
+		if (frame.bitmap == null || frame.sampleSize != sampleSize) {		//reallocate only when sample size changes
+			try {
+				frame.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+			} catch (OutOfMemoryError e) {
+				Log.w(TAG, "Out of memory for frame " + width + "x" + height, e);
+				frame.bitmap = null;
+				return null;
+			}
+			frame.canvas = new Canvas(frame.bitmap);
+			frame.sampleSize = sampleSize;
+		}
+		frame.index = index;
+		frame.bitmap.eraseColor(0);
+		mMovie.setTime(mFrameTimes[index]);
+		frame.canvas.save();
+		frame.canvas.scale(1f / sampleSize, 1f / sampleSize);
+		mMovie.draw(frame.canvas, 0, 0, mPaint);
+		frame.canvas.restore();
+		synchronized (mLock) {
+			mDecodedFrames++;
+		}
+		return frame;
+	}
+
+	//Read delays of frames from graphic control extensions, without decoding image data
+	private void scanFrames() throws IOException {
+		ArrayList<Integer> delays = new ArrayList<Integer>();
+		BlockReader reader = new BlockReader(mSource);
+		reader.skip(10);		//signature, version and size of screen
+		int packed = reader.read();
+		reader.skip(2);		//background color and aspect ratio
+		if ((packed & 0x80) != 0) {
+			reader.skip(3 << ((packed & 0x07) + 1));		//global color table
+		}
+		int delay = 0;
+		while (true) {
+			int block = reader.read();
+			if (block == 0x21) {		//extension
+				int label = reader.read();
+				if (label == 0xf9) {		//graphic control extension
+					int size = reader.read();
+					reader.skip(1);
+					delay = (reader.read() | (reader.read() << 8)) * 10;
+					reader.skip(size - 3);
+				}
+				reader.skipSubBlocks();
+			} else if (block == 0x2c) {		//image descriptor, one frame
+				reader.skip(8);
+				int flags = reader.read();
+				if ((flags & 0x80) != 0) {
+					reader.skip(3 << ((flags & 0x07) + 1));		//local color table
+				}
+				reader.skip(1);		//minimal code size of LZW
+				reader.skipSubBlocks();
+				delays.add(delay);
+				delay = 0;
+			} else {		//trailer, or broken data
+				break;
+			}
+		}
+		mFrameTimes = new int[delays.size()];
+		mFrameDelays = new int[delays.size()];
+		int time = 0;
+		for (int i = 0; i < delays.size(); i++) {
+			mFrameTimes[i] = time;
+			time += delays.get(i);
+			mFrameDelays[i] = delays.get(i) < MIN_DELAY? DEFAULT_DELAY: delays.get(i);
+		}
+	}
+
+	//Read bytes of source in order with a small buffer
+	private static class BlockReader {
+		final ImageSource source;
+		final byte[] buffer = new byte[4096];
+		long position = 0;		//position of buffer in source
+		int offset = 0, count = 0;
+
+		BlockReader(ImageSource source) {
+			this.source = source;
+		}
+
+		int read() throws IOException {
+			if (offset >= count) {
+				position += count;
+				offset = 0;
+				count = source.read(position, buffer, 0, buffer.length);
+				if (count <= 0) {
+					count = 0;
+					return -1;
+				}
+			}
+			return buffer[offset++] & 0xff;
+		}
+
+		void skip(int n) {
+			offset += n;		//may go beyond buffer, then the next read refills from there
+			if (offset > count) {
+				position += offset;
+				offset = 0;
+				count = 0;
+			}
+		}
+
+		void skipSubBlocks() throws IOException {
+			int size;
+			while ((size = read()) > 0) {
+				skip(size);
+			}
+		}
+	}
+
+	@Override
+	public void draw(Canvas canvas) {
+		Frame frame = mDisplay;		//swapped in main thread only
+		if (frame != null && frame.bitmap != null) {
+			canvas.drawBitmap(frame.bitmap, null, getBounds(), mPaint);
+		}
+	}
+
+	@Override
+	public boolean setVisible(boolean visible, boolean restart) {
+		boolean changed = super.setVisible(visible, restart);
+		if (!visible && isRunning()) {
+			mHiddenWhileRunning = true;
+			stop();
+		} else if (visible && mHiddenWhileRunning) {
+			mHiddenWhileRunning = false;
+			start();
+		}
+		return changed;
+	}
+
+	@Override
+	public int getIntrinsicWidth() {
+		return mHeader.width;
+	}
+
+	@Override
+	public int getIntrinsicHeight() {
+		return mHeader.height;
+	}
+
+	@Override
+	public void setAlpha(int alpha) {
+		mPaint.setAlpha(alpha);
+		invalidateSelf();
+	}
+
+	@Override
+	public void setColorFilter(ColorFilter cf) {
+		mPaint.setColorFilter(cf);
+		invalidateSelf();
+	}
+
+	@Override
+	public int getOpacity() {
+		return PixelFormat.TRANSLUCENT;
+	}
+}
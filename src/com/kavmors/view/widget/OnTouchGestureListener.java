@@ -30,6 +30,7 @@ public class OnTouchGestureListener implements OnTouchListener {
     private boolean mDblLongClickable = true;
     private boolean mMultiLongClickable = true;
     private OnTouchListener mUserTouchListener = null;
+    private final TapClickPolicy mClickPolicy = new TapClickPolicy();
 	
 	private enum Mode { NONE, DOWN, MOVE, UP, DBL_DOWN, DBL_MOVE, DBL_UP, MULTI_DOWN, MULTI_MOVE, MULTI_UP}
 	private Mode mMode = Mode.NONE;
@@ -49,6 +50,13 @@ public class OnTouchGestureListener implements OnTouchListener {
 		void onClick(PointF point);
 		void onLongClick(PointF point);
 	}
+
+	/**
+	 * Detect single tap events, and cancel of speculative clicks set by {@link OnTouchGestureListener#setSpeculativeClick}
+	 */
+	public interface OnDetectSpeculativeClick extends OnDetectSingle {
+		void onClickCancel(PointF point);		//a speculative click turns out to be the first tap of a double tap
+	}
 	
 	/**
 	 * Detect double tap events
@@ -132,6 +140,29 @@ public class OnTouchGestureListener implements OnTouchListener {
 		mMultiLongClickable = multiLongClickable;
 	}
 	
+	/**
+	 * Enables or disables double-tap events for this listener. If disabled, a click is fired at once when finger up,
+	 * without waiting for the double-tap timeout.
+	 * @param enabled True to detect double-tap events, false otherwise
+	 */
+	public void setDoubleTapEnabled(boolean enabled) {
+		if (mClickPolicy.isDoubleTapEnabled() == enabled) {
+			return;
+		}
+		mClickPolicy.setDoubleTapEnabled(enabled);
+		mSingleDetector.setOnDoubleTapListener(enabled? mSingleDetectorGesture: null);
+	}
+
+	/**
+	 * Enables or disables speculative clicks for this listener. If enabled, a click is fired at once when finger up
+	 * while double-tap events are still detected, and {@link OnDetectSpeculativeClick#onClickCancel} is called
+	 * if it turns out to be the first tap of a double tap and the single-tap listener implements it.
+	 * @param speculative True to fire clicks speculatively, false otherwise
+	 */
+	public void setSpeculativeClick(boolean speculative) {
+		mClickPolicy.setSpeculative(speculative);
+	}
+
 	/**
 	 * Set an OnTouchListener for user
 	 * @param l The listener
@@ -220,6 +251,7 @@ public class OnTouchGestureListener implements OnTouchListener {
 				mHandler.removeMessages(DBL_LONG_PRESS);
 				mHandler.removeMessages(MULTI_LONG_PRESS);
 				mMode = Mode.DOWN;
+				mClickPolicy.onDown();
 				mOnSingle.onDown(new PointF(e.getX(), e.getY()));
 			}
 			return true;
@@ -250,7 +282,9 @@ public class OnTouchGestureListener implements OnTouchListener {
 		@Override
 		public boolean onSingleTapConfirmed(MotionEvent e) {
 			if (mMode == Mode.UP) {
-				mOnSingle.onClick(new PointF(e.getX(), e.getY()));
+				if (mClickPolicy.onTapConfirmed()) {
+					mOnSingle.onClick(new PointF(e.getX(), e.getY()));
+				}
 				mMode = Mode.NONE;
 			}
 			return true;
@@ -272,6 +306,12 @@ public class OnTouchGestureListener implements OnTouchListener {
 			if (mMode == Mode.DOWN) {
 				mMode = Mode.UP;
 				mOnSingle.onUp(new PointF(e.getX(), e.getY()));
+				if (mClickPolicy.onTapUp()) {
+					mOnSingle.onClick(new PointF(e.getX(), e.getY()));
+					if (!mClickPolicy.isDoubleTapEnabled()) {		//else keep UP mode for double tap
+						mMode = Mode.NONE;
+					}
+				}
 			}
 			return true;
 		}
@@ -288,6 +328,9 @@ public class OnTouchGestureListener implements OnTouchListener {
 			switch (e.getActionMasked()) {
 			case MotionEvent.ACTION_DOWN:
 				if (mMode == Mode.UP) {
+					if (mClickPolicy.onSecondTap() && mOnSingle instanceof OnDetectSpeculativeClick) {
+						((OnDetectSpeculativeClick) mOnSingle).onClickCancel(new PointF(e.getX(), e.getY()));
+					}
 					mMode = Mode.DBL_DOWN;
 					mSingleDetector.setIsLongpressEnabled(false);	//Cannot react longClick while dblclick-moving
 					prePoint.set(e.getX(), e.getY());
@@ -333,10 +376,18 @@ public class OnTouchGestureListener implements OnTouchListener {
 		}
 		
 		public void continueEvent(MotionEvent e) {
-			if (e.getActionMasked() == MotionEvent.ACTION_UP) {
+			int action = e.getActionMasked();
+			if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
 				if (mMode == Mode.DOWN || mMode == Mode.MOVE || mMode == Mode.UP) {
 					mOnSingle.onUp(new PointF(e.getX(), e.getY()));
 					mMode = Mode.NONE;
+				} else if (action == MotionEvent.ACTION_CANCEL
+						&& (mMode == Mode.DBL_DOWN || mMode == Mode.DBL_MOVE || mMode == Mode.DBL_UP)) {
+					//cancelled by parent, e.g. a pager takes over the gesture
+					mSingleDetector.setIsLongpressEnabled(true);
+					mHandler.removeMessages(DBL_LONG_PRESS);
+					mOnDouble.onDblUp(new PointF(e.getX(), e.getY()));
+					mMode = Mode.NONE;
 				}
 			}
 		}
@@ -390,6 +441,14 @@ public class OnTouchGestureListener implements OnTouchListener {
 				}
 				mMode = Mode.NONE;
 				break;
+			case MotionEvent.ACTION_CANCEL:		//cancelled by parent
+				mSingleDetector.setIsLongpressEnabled(true);
+				mHandler.removeMessages(MULTI_LONG_PRESS);
+				if (mMode == Mode.MULTI_DOWN || mMode == Mode.MULTI_MOVE || mMode == Mode.MULTI_UP) {
+					mOnMulti.onMultiUp(new PointF(pre0.x, pre0.y), new PointF(pre1.x, pre1.y));
+				}
+				mMode = Mode.NONE;
+				break;
 			default:
 				break;
 			}
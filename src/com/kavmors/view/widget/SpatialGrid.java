@@ -0,0 +1,193 @@
+package com.kavmors.view.widget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.graphics.RectF;
+
+/**
+ * Uniform grid of rectangles for finding items in a region. The grid is rebuilt lazily
+ * after items change, and queries do not allocate.
+ * @param <T> Type of item
+ */
+class SpatialGrid<T> {
+	private static final int ITEMS_PER_CELL = 4;
+	private static final int MAX_CELLS_PER_AXIS = 1024;
+
+	static class Entry<T> {
+		final T item;
+		final RectF rect;
+		int stamp;		//last query that has found this entry
+
+		Entry(T item, RectF rect) {
+			this.item = item;
+			this.rect = rect;
+		}
+	}
+
+	private final ArrayList<Entry<T>> mEntries = new ArrayList<Entry<T>>();
+	private boolean mDirty = false;
+	private int mStamp = 0;
+
+	//Cell (col, row) holds mCellItems[mCellStart[i]] to mCellItems[mCellStart[i + 1] - 1], where i = row * mCols + col
+	private int[] mCellStart = new int[0];
+	private int[] mCellItems = new int[0];
+	private int mCols, mRows;
+	private float mLeft, mTop, mCellWidth, mCellHeight;
+
+	void add(T item, float left, float top, float right, float bottom) {
+		mEntries.add(new Entry<T>(item, new RectF(left, top, right, bottom)));
+		mDirty = true;
+	}
+
+	boolean remove(T item) {
+		for (int i = 0; i < mEntries.size(); i++) {
+			if (mEntries.get(i).item == item) {
+				mEntries.remove(i);
+				mDirty = true;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	void clear() {
+		mEntries.clear();
+		mDirty = true;
+	}
+
+	int size() {
+		return mEntries.size();
+	}
+
+	Entry<T> get(int index) {
+		return mEntries.get(index);
+	}
+
+	/**
+	 * Add entries that intersect the region to out. An item at a point is found if the point is in the region.
+	 * @return Count of entries added
+	 */
+	int query(float left, float top, float right, float bottom, ArrayList<Entry<T>> out) {
+		if (mDirty) {
+			rebuild();
+		}
+		if (mEntries.isEmpty() || left > right || top > bottom) {
+			return 0;
+		}
+		int stamp = ++mStamp;
+		int found = 0;
+		int col0 = col(left), col1 = col(right);
+		int row0 = row(top), row1 = row(bottom);
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				int cell = row * mCols + col;
+				for (int i = mCellStart[cell]; i < mCellStart[cell + 1]; i++) {
+					Entry<T> entry = mEntries.get(mCellItems[i]);
+					RectF r = entry.rect;
+					if (entry.stamp != stamp && r.left <= right && r.right >= left && r.top <= bottom && r.bottom >= top) {
+						entry.stamp = stamp;
+						out.add(entry);
+						found++;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Find the entry nearest to a point, among entries within the radius of it.
+	 * @param found Reused list to receive candidates
+	 * @return The entry, or null if none is within the radius
+	 */
+	Entry<T> nearest(float x, float y, float radius, ArrayList<Entry<T>> found) {
+		found.clear();
+		int count = query(x - radius, y - radius, x + radius, y + radius, found);
+		Entry<T> nearest = null;
+		float nearestDistance = Float.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			Entry<T> entry = found.get(i);
+			RectF r = entry.rect;
+			//distance from point to rect, 0 if point is in rect
+			float dx = Math.max(0, Math.max(r.left - x, x - r.right));
+			float dy = Math.max(0, Math.max(r.top - y, y - r.bottom));
+			float distance = dx * dx + dy * dy;
+			if (distance <= radius * radius && distance < nearestDistance) {
+				nearest = entry;
+				nearestDistance = distance;
+			}
+		}
+		found.clear();
+		return nearest;
+	}
+
+	private int col(float x) {
+		return Math.max(0, Math.min(mCols - 1, (int) ((x - mLeft) / mCellWidth)));
+	}
+
+	private int row(float y) {
+		return Math.max(0, Math.min(mRows - 1, (int) ((y - mTop) / mCellHeight)));
+	}
+
+	private void rebuild() {
+		mDirty = false;
+		int n = mEntries.size();
+		if (n == 0) {
+			mCols = mRows = 0;
+			return;
+		}
+		float left = Float.MAX_VALUE, top = Float.MAX_VALUE, right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			RectF r = mEntries.get(i).rect;
+			left = Math.min(left, r.left);
+			top = Math.min(top, r.top);
+			right = Math.max(right, r.right);
+			bottom = Math.max(bottom, r.bottom);
+		}
+		//square cells that hold about ITEMS_PER_CELL items if items are spread evenly
+		float width = Math.max(right - left, 1f), height = Math.max(bottom - top, 1f);
+		float cellSize = (float) Math.sqrt(width * height * ITEMS_PER_CELL / n);
+		mCols = Math.max(1, Math.min(MAX_CELLS_PER_AXIS, (int) Math.ceil(width / cellSize)));
+		mRows = Math.max(1, Math.min(MAX_CELLS_PER_AXIS, (int) Math.ceil(height / cellSize)));
+		mLeft = left;
+		mTop = top;
+		mCellWidth = width / mCols;
+		mCellHeight = height / mRows;
+
+		int cells = mCols * mRows;
+		if (mCellStart.length < cells + 1) {
+			mCellStart = new int[cells + 1];
+		}
+		Arrays.fill(mCellStart, 0, cells + 1, 0);
+		//count items in each cell, then turn counts into start positions
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			RectF r = mEntries.get(i).rect;
+			int col0 = col(r.left), col1 = col(r.right), row0 = row(r.top), row1 = row(r.bottom);
+			for (int row = row0; row <= row1; row++) {
+				for (int col = col0; col <= col1; col++) {
+					mCellStart[row * mCols + col + 1]++;
+					total++;
+				}
+			}
+		}
+		for (int i = 1; i <= cells; i++) {
+			mCellStart[i] += mCellStart[i - 1];
+		}
+		if (mCellItems.length < total) {
+			mCellItems = new int[total];
+		}
+		int[] fill = new int[cells];
+		for (int i = 0; i < n; i++) {
+			RectF r = mEntries.get(i).rect;
+			int col0 = col(r.left), col1 = col(r.right), row0 = row(r.top), row1 = row(r.bottom);
+			for (int row = row0; row <= row1; row++) {
+				for (int col = col0; col <= col1; col++) {
+					int cell = row * mCols + col;
+					mCellItems[mCellStart[cell] + fill[cell]++] = i;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.kavmors.view.widget;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.annotation.TargetApi;
+import android.graphics.BitmapRegionDecoder;
+import android.os.Build.VERSION_CODES;
+
+/**
+ * An {@link ImageSource} that reads from an {@link InputStream}.
+ * Only the bytes that have been requested by {@link #read} are kept, so probing header does not load the whole stream.
+ * The stream cannot rewind, so it is read to the end and kept in memory when {@link #openStream} or
+ * {@link #newRegionDecoder} is first called. Then it can be opened and decoded by regions any number of times.
+ */
+public class StreamImageSource implements ImageSource {
+	private static final int MIN_GROW = 512;
+
+	private InputStream mStream;
+	private long mLength;
+	private byte[] mHead = new byte[0];		//bytes that have been read from stream
+	private int mHeadLength = 0;
+	private boolean mComplete = false;		//whole stream has been read into mHead
+
+	/**
+	 * Create a source of unknown length.
+	 * @param stream The stream of encoded image
+	 */
+	public StreamImageSource(InputStream stream) {
+		this(stream, -1);
+	}
+
+	/**
+	 * Create a source.
+	 * @param stream The stream of encoded image
+	 * @param length The length of stream in bytes, or -1 if it is unknown
+	 */
+	public StreamImageSource(InputStream stream, long length) {
+		if (stream == null) {
+			throw new NullPointerException("InputStream cannot be null");
+		}
+		mStream = stream;
+		mLength = length;
+	}
+
+	@Override
+	public synchronized long length() {
+		return mLength;
+	}
+
+	@Override
+	public synchronized int read(long position, byte[] buffer, int offset, int count) throws IOException {
+		if (position + count > Integer.MAX_VALUE) {
+			throw new IOException("Position is too large for a stream: " + position);
+		}
+		fill((int) position + count);
+		if (position >= mHeadLength) {
+			return -1;
+		}
+		count = Math.min(count, mHeadLength - (int) position);
+		System.arraycopy(mHead, (int) position, buffer, offset, count);
+		return count;
+	}
+
+	@Override
+	public synchronized InputStream openStream() throws IOException {
+		fillAll();
+		return new ByteArrayInputStream(mHead, 0, mHeadLength);
+	}
+
+	@Override
+	@TargetApi(VERSION_CODES.GINGERBREAD_MR1)
+	public BitmapRegionDecoder newRegionDecoder() throws IOException {
+		byte[] data;
+		int length;
+		synchronized (this) {
+			fillAll();
+			data = mHead;
+			length = mHeadLength;
+		}
+		//decoders of a pool are created from the same bytes, out of lock
+		return BitmapRegionDecoder.newInstance(data, 0, length, false);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (mStream != null) {
+			try {
+				mStream.close();
+			} catch (IOException e) {
+				//ignore, nothing can be done
+			}
+			mStream = null;
+		}
+		mHead = null;
+	}
+
+	//read stream until at least end bytes are kept, or stream ends
+	private void fill(int end) throws IOException {
+		if (mHead == null) {
+			throw new IOException("ImageSource has been closed");
+		}
+		if (end <= mHeadLength || mComplete) {
+			return;
+		}
+		if (end > mHead.length) {
+			byte[] head = new byte[Math.max(end, Math.max(mHead.length * 2, MIN_GROW))];
+			System.arraycopy(mHead, 0, head, 0, mHeadLength);
+			mHead = head;
+		}
+		while (mHeadLength < end) {
+			int read = mStream.read(mHead, mHeadLength, mHead.length - mHeadLength);
+			if (read < 0) {
+				onComplete();
+				break;
+			}
+			mHeadLength += read;
+		}
+	}
+
+	//read the whole stream, then the stream is closed and bytes are kept
+	private void fillAll() throws IOException {
+		if (mHead == null) {
+			throw new IOException("ImageSource has been closed");
+		}
+		while (!mComplete) {
+			//one more byte than known length, to see the end of stream
+			long end = mLength > mHeadLength? mLength + 1: mHeadLength + Math.max(mHeadLength, MIN_GROW);
+			if (end > Integer.MAX_VALUE) {
+				throw new IOException("Stream is too large to be kept in memory");
+			}
+			fill((int) end);
+		}
+	}
+
+	private void onComplete() {
+		mComplete = true;
+		try {
+			mStream.close();
+		} catch (IOException e) {
+			//ignore, all bytes have been read
+		}
+		mStream = null;
+		mLength = mHeadLength;		//known for sure now
+	}
+}
@@ -0,0 +1,55 @@
+package com.kavmors.view.widget;
+
+/**
+ * Decides when a tap is reported as a click: at once when finger up if there is no double tap to wait for,
+ * after the double-tap timeout otherwise, or at once and cancelled later if clicks are speculative.
+ * It only makes decisions, so the timeout path can run without a view.
+ */
+class TapClickPolicy {
+	private boolean mDoubleTapEnabled = true;
+	private boolean mSpeculative = false;
+	private boolean mSpeculated = false;		//a click has been fired before double-tap timeout
+
+	void setDoubleTapEnabled(boolean enabled) {
+		mDoubleTapEnabled = enabled;
+	}
+
+	boolean isDoubleTapEnabled() {
+		return mDoubleTapEnabled;
+	}
+
+	void setSpeculative(boolean speculative) {
+		mSpeculative = speculative;
+	}
+
+	//Call when a new tap starts
+	void onDown() {
+		mSpeculated = false;
+	}
+
+	//Call when finger up of a tap. Return true if the click is fired now
+	boolean onTapUp() {
+		if (!mDoubleTapEnabled) {		//no double tap to wait for
+			return true;
+		}
+		if (mSpeculative) {		//click now, and cancel it if a second tap comes
+			mSpeculated = true;
+			return true;
+		}
+		return false;
+	}
+
+	//Call when double-tap timeout is over without a second tap. Return true if the click is fired now
+	boolean onTapConfirmed() {
+		boolean click = !mSpeculated;
+		mSpeculated = false;
+		return click;
+	}
+
+	//Call when the second tap of a double tap comes. Return true if a speculative click is cancelled
+	boolean onSecondTap() {
+		boolean cancel = mSpeculated;
+		mSpeculated = false;
+		return cancel;
+	}
+}
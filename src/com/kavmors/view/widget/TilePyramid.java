@@ -0,0 +1,244 @@
+package com.kavmors.view.widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A reader of tiled pyramid container, which holds an image as levels of tiles that are compressed independently.
+ * Level 0 is the full size, and each next level is half of the previous one, until a level fits in one tile.
+ * Opening reads only the header, and a tile is found by position in the index, so any region of any level
+ * is read from a few small tiles. It is pure Java and does not depend on Android framework.
+ * <p>
+ * All numbers are big endian. The header is 40 bytes: magic "TPYR", version, width, height, tile size,
+ * count of levels, codec, a reserved int, and the offset of index as long. The index is an entry of
+ * 12 bytes for each tile, as offset in long and length in int, ordered by level, row and column.
+ * @see TilePyramidWriter
+ */
+public class TilePyramid {
+	public static final int MAGIC = 0x54505952;		//"TPYR"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 40;
+	static final int INDEX_ENTRY_SIZE = 12;
+	/** Maximal bytes of a container, which is mapped as one buffer */
+	public static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+	/** Tiles are JPEG, decoded by platform */
+	public static final int CODEC_JPEG = 1;
+	/** Tiles are PNG, decoded by platform */
+	public static final int CODEC_PNG = 2;
+	/** Tiles are WebP, decoded by platform */
+	public static final int CODEC_WEBP = 3;
+	/** Tiles are ARGB pixels as big endian ints, compressed by deflate. It is lossless and written in pure Java. */
+	public static final int CODEC_DEFLATE = 4;
+
+	private final ByteBuffer mBuffer;
+	private final int mWidth, mHeight, mTileSize, mLevels, mCodec;
+	private final int mIndexOffset;
+	private final int[] mLevelStart;		//index of the first tile of each level
+
+	/**
+	 * Read a container from a buffer. Only the header is read, and the buffer is shared, not copied.
+	 * @param buffer The buffer of whole container, which is usually mapped from a file
+	 * @throws IOException If the header is broken or the container is not complete
+	 */
+	public TilePyramid(ByteBuffer buffer) throws IOException {
+		ByteBuffer data = buffer.slice();
+		if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+			throw new IOException("Not a tile pyramid");
+		}
+		if (data.getInt(4) != VERSION) {
+			throw new IOException("Unsupported version of tile pyramid: " + data.getInt(4));
+		}
+		mWidth = data.getInt(8);
+		mHeight = data.getInt(12);
+		mTileSize = data.getInt(16);
+		mLevels = data.getInt(20);
+		mCodec = data.getInt(24);
+		long indexOffset = data.getLong(32);
+		if (mWidth <= 0 || mHeight <= 0 || mTileSize <= 0 || mLevels != levelCount(mWidth, mHeight, mTileSize)) {
+			throw new IOException("Broken header of tile pyramid");
+		}
+		mLevelStart = new int[mLevels + 1];
+		for (int level = 0; level < mLevels; level++) {
+			mLevelStart[level + 1] = mLevelStart[level] + getColumns(level) * getRows(level);
+		}
+		if (indexOffset < HEADER_SIZE || indexOffset + (long) mLevelStart[mLevels] * INDEX_ENTRY_SIZE > data.capacity()) {
+			throw new IOException("Tile pyramid is not complete");		//index is written at last
+		}
+		mIndexOffset = (int) indexOffset;
+		mBuffer = data;
+	}
+
+	/**
+	 * Map a container file into memory and read it.
+	 * @param file The file, which is at most {@link #MAX_FILE_SIZE}
+	 * @return The container
+	 * @throws IOException If the file cannot be mapped or it is not a complete container
+	 */
+	public static TilePyramid open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long size = raf.length();
+			if (size > MAX_FILE_SIZE) {
+				throw new IOException("File is too large to be mapped: " + size);
+			}
+			//mapping stays valid after the file is closed
+			return new TilePyramid(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Count levels from full size to the first level that fits in one tile.
+	 * @param width Width of image
+	 * @param height Height of image
+	 * @param tileSize Size of tile
+	 * @return Count of levels, at least 1
+	 */
+	public static int levelCount(int width, int height, int tileSize) {
+		int levels = 1;
+		while (levelSize(width, levels - 1) > tileSize || levelSize(height, levels - 1) > tileSize) {
+			levels++;
+		}
+		return levels;
+	}
+
+	/**
+	 * Get a size of image at a level, rounded up.
+	 * @param size Size at level 0
+	 * @param level The level
+	 * @return Size at the level
+	 */
+	public static int levelSize(int size, int level) {
+		return (int) (((long) size + (1L << level) - 1) >> level);
+	}
+
+	/**
+	 * Get width of image at level 0.
+	 * @return Width in pixels
+	 */
+	public int getWidth() {
+		return mWidth;
+	}
+
+	/**
+	 * Get height of image at level 0.
+	 * @return Height in pixels
+	 */
+	public int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * Get size of tiles, which are square except at right and bottom borders.
+	 * @return Size in pixels
+	 */
+	public int getTileSize() {
+		return mTileSize;
+	}
+
+	/**
+	 * Get count of levels.
+	 * @return Count of levels
+	 */
+	public int getLevelCount() {
+		return mLevels;
+	}
+
+	/**
+	 * Get the codec of tiles.
+	 * @return One of CODEC_ constants
+	 */
+	public int getCodec() {
+		return mCodec;
+	}
+
+	/**
+	 * Get width of image at a level.
+	 * @param level The level
+	 * @return Width in pixels
+	 */
+	public int getLevelWidth(int level) {
+		return levelSize(mWidth, level);
+	}
+
+	/**
+	 * Get height of image at a level.
+	 * @param level The level
+	 * @return Height in pixels
+	 */
+	public int getLevelHeight(int level) {
+		return levelSize(mHeight, level);
+	}
+
+	/**
+	 * Get count of tile columns at a level.
+	 * @param level The level
+	 * @return Count of columns
+	 */
+	public int getColumns(int level) {
+		return (getLevelWidth(level) + mTileSize - 1) / mTileSize;
+	}
+
+	/**
+	 * Get count of tile rows at a level.
+	 * @param level The level
+	 * @return Count of rows
+	 */
+	public int getRows(int level) {
+		return (getLevelHeight(level) + mTileSize - 1) / mTileSize;
+	}
+
+	/**
+	 * Get width of a tile in a column, which is smaller than tile size at the right border.
+	 * @param level The level
+	 * @param col The column
+	 * @return Width in pixels of the level
+	 */
+	public int getTileWidth(int level, int col) {
+		return Math.min(mTileSize, getLevelWidth(level) - col * mTileSize);
+	}
+
+	/**
+	 * Get height of a tile in a row, which is smaller than tile size at the bottom border.
+	 * @param level The level
+	 * @param row The row
+	 * @return Height in pixels of the level
+	 */
+	public int getTileHeight(int level, int row) {
+		return Math.min(mTileSize, getLevelHeight(level) - row * mTileSize);
+	}
+
+	//Buffer of whole container
+	ByteBuffer getBuffer() {
+		return mBuffer;
+	}
+
+	/**
+	 * Get compressed data of a tile. It can be called in any thread.
+	 * @param level The level
+	 * @param col The column
+	 * @param row The row
+	 * @return A buffer over the data in container, not copied
+	 * @throws IOException If the entry of tile is broken
+	 */
+	public ByteBuffer getTile(int level, int col, int row) throws IOException {
+		if (level < 0 || level >= mLevels || col < 0 || col >= getColumns(level) || row < 0 || row >= getRows(level)) {
+			throw new IndexOutOfBoundsException("No tile " + col + "," + row + " at level " + level);
+		}
+		int entry = mIndexOffset + (mLevelStart[level] + row * getColumns(level) + col) * INDEX_ENTRY_SIZE;
+		long offset = mBuffer.getLong(entry);
+		int length = mBuffer.getInt(entry + 8);
+		if (offset < HEADER_SIZE || length <= 0 || offset + length > mBuffer.capacity()) {
+			throw new IOException("Broken entry of tile " + col + "," + row + " at level " + level);
+		}
+		ByteBuffer tile = mBuffer.duplicate();		//position of a duplicate is independent, so reads can be concurrent
+		tile.position((int) offset);
+		tile.limit((int) offset + length);
+		return tile.slice();
+	}
+}
@@ -0,0 +1,280 @@
+package com.kavmors.view.widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A builder that writes a {@link TilePyramid} container of an image, in parallel by a fork/join pool.
+ * Each tile of a level is reduced from the four tiles under it, which are built as subtasks and dropped
+ * after reduced, so memory is bounded by threads and levels instead of image size.
+ * It is pure Java and does not depend on Android framework, so images can be prepared on a server.
+ */
+public class TilePyramidBuilder {
+	/**
+	 * Pixels of source image. Reads may be called from several threads at once.
+	 */
+	public interface Source {
+		int getWidth();
+		int getHeight();
+		//Read a region in ARGB into out, rows of which are stride pixels apart
+		void read(int x, int y, int width, int height, int[] out, int offset, int stride) throws IOException;
+	}
+
+	/**
+	 * Compressor of tiles, in the codec that is written in container. It may be called from several threads at once.
+	 */
+	public interface Encoder {
+		int getCodec();
+		byte[] encode(int[] argb, int offset, int stride, int width, int height) throws IOException;
+	}
+
+	/** Encoder of {@link TilePyramid#CODEC_DEFLATE}, which is lossless */
+	public static final Encoder DEFLATE = new Encoder() {
+		@Override
+		public int getCodec() {
+			return TilePyramid.CODEC_DEFLATE;
+		}
+
+		@Override
+		public byte[] encode(int[] argb, int offset, int stride, int width, int height) {
+			return TilePyramidWriter.encodeDeflate(argb, offset, stride, width, height);
+		}
+	};
+
+	/**
+	 * Result of building a container.
+	 */
+	public static class Report {
+		/** Pixels of level 0 */
+		public final long pixels;
+		/** Tiles written in all levels */
+		public final int tiles;
+		/** Time of building in milliseconds */
+		public final long millis;
+		/** Bytes of container file */
+		public final long bytes;
+		/** Highest used heap that was seen when a tile is done */
+		public final long peakHeap;
+
+		Report(long pixels, int tiles, long millis, long bytes, long peakHeap) {
+			this.pixels = pixels;
+			this.tiles = tiles;
+			this.millis = millis;
+			this.bytes = bytes;
+			this.peakHeap = peakHeap;
+		}
+
+		/**
+		 * Get throughput of building.
+		 * @return Megapixels of level 0 per second
+		 */
+		public double getMegapixelsPerSecond() {
+			return pixels / 1e6 / Math.max(1, millis) * 1000;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d tiles, %.1f MP in %d ms, %.2f MP/s, %d KB written, peak heap %d MB",
+					tiles, pixels / 1e6, millis, getMegapixelsPerSecond(), bytes / 1024, peakHeap >> 20);
+		}
+	}
+
+	private final ForkJoinPool mPool;
+	private int mTileSize = 512;
+	private Encoder mEncoder = DEFLATE;
+	private long mMaxFileSize = TilePyramid.MAX_FILE_SIZE;
+
+	/**
+	 * Create a builder with a thread for each processor.
+	 */
+	public TilePyramidBuilder() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a builder.
+	 * @param parallelism Count of threads
+	 */
+	public TilePyramidBuilder(int parallelism) {
+		mPool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Set size of tiles. The default one is 512, which matches tiles of {@link ImageSourceDrawable},
+	 * so a tile of view is decoded from exactly one tile of container.
+	 * @param tileSize Size in pixels, which must be even
+	 */
+	public void setTileSize(int tileSize) {
+		if (tileSize < 2 || tileSize % 2 != 0) {		//a tile is reduced from halves of tiles under it
+			throw new IllegalArgumentException("Tile size must be even: " + tileSize);
+		}
+		mTileSize = tileSize;
+	}
+
+	/**
+	 * Set the encoder of tiles. The default one is {@link #DEFLATE}.
+	 * @param encoder The encoder
+	 */
+	public void setEncoder(Encoder encoder) {
+		mEncoder = encoder;
+	}
+
+	//Lower the limit of container size, so tests reach it without writing 2GB
+	void setMaxFileSize(long bytes) {
+		mMaxFileSize = bytes;
+	}
+
+	/**
+	 * Build a container of an image and wait until it is written. Images can be built one by one with the same builder.
+	 * @param source The source image
+	 * @param file The container file to write
+	 * @return Report of building
+	 * @throws IOException If the source cannot be read, or the file cannot be written or would be larger than
+	 * {@link TilePyramid#MAX_FILE_SIZE}
+	 */
+	public Report build(Source source, File file) throws IOException {
+		long start = System.currentTimeMillis();
+		TilePyramidWriter writer = new TilePyramidWriter(file, source.getWidth(), source.getHeight(),
+				mTileSize, mEncoder.getCodec());
+		writer.setMaxBytes(mMaxFileSize);
+		Build build = new Build(source, writer);
+		try {
+			mPool.invoke(build.new TileTask(writer.getLevelCount() - 1, 0, 0));
+		} catch (BuildException e) {
+			try {
+				writer.close();
+			} catch (IOException ignored) {
+				//incomplete, the cause is thrown
+			}
+			throw e.getCause();
+		}
+		writer.close();
+		return new Report((long) source.getWidth() * source.getHeight(), build.tiles.intValue(),
+				System.currentTimeMillis() - start, file.length(), build.peakHeap.get());
+	}
+
+	/**
+	 * Stop threads of this builder.
+	 */
+	public void shutdown() {
+		mPool.shutdown();
+	}
+
+	//Wrap IOException to pass it through tasks
+	private static class BuildException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		BuildException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
+	//State of building one container
+	private class Build {
+		final Source source;
+		final TilePyramidWriter writer;
+		final int tileSize = mTileSize;
+		final Encoder encoder = mEncoder;
+		final AtomicLong tiles = new AtomicLong();
+		final AtomicLong peakHeap = new AtomicLong();
+
+		Build(Source source, TilePyramidWriter writer) {
+			this.source = source;
+			this.writer = writer;
+		}
+
+		//Build a tile and the tiles under it, write them, and return pixels of the tile to its parent
+		class TileTask extends RecursiveTask<int[]> {
+			private static final long serialVersionUID = 1L;
+
+			final int level, col, row;
+
+			TileTask(int level, int col, int row) {
+				this.level = level;
+				this.col = col;
+				this.row = row;
+			}
+
+			@Override
+			protected int[] compute() {
+				int width = Math.min(tileSize, TilePyramid.levelSize(source.getWidth(), level) - col * tileSize);
+				int height = Math.min(tileSize, TilePyramid.levelSize(source.getHeight(), level) - row * tileSize);
+				int[] pixels = new int[width * height];
+				try {
+					if (level == 0) {
+						source.read(col * tileSize, row * tileSize, width, height, pixels, 0, width);
+					} else {
+						reduce(pixels, width, height);
+					}
+					byte[] data = encoder.encode(pixels, 0, width, width, height);
+					writer.writeTile(level, col, row, data, 0, data.length);
+				} catch (IOException e) {
+					throw new BuildException(e);
+				}
+				tiles.incrementAndGet();
+				Runtime runtime = Runtime.getRuntime();
+				long used = runtime.totalMemory() - runtime.freeMemory();
+				long peak;
+				while (used > (peak = peakHeap.get()) && !peakHeap.compareAndSet(peak, used)) {
+					//retry
+				}
+				return pixels;
+			}
+
+			//Average 2x2 pixels of the four tiles under this one, each of which covers a quarter of it
+			private void reduce(int[] pixels, int width, int height) {
+				int childLevel = level - 1;
+				int childWidth = TilePyramid.levelSize(source.getWidth(), childLevel);
+				int childHeight = TilePyramid.levelSize(source.getHeight(), childLevel);
+				int half = tileSize / 2;
+				TileTask[] children = new TileTask[4];
+				for (int i = 0; i < 4; i++) {
+					int c = col * 2 + (i & 1), r = row * 2 + (i >> 1);
+					if (c * tileSize < childWidth && r * tileSize < childHeight) {
+						children[i] = new TileTask(childLevel, c, r);
+					}
+				}
+				for (int i = 1; i < 4; i++) {
+					if (children[i] != null) {
+						children[i].fork();
+					}
+				}
+				for (int i = 0; i < 4; i++) {
+					if (children[i] == null) {
+						continue;
+					}
+					int[] child = i == 0? children[i].compute(): children[i].join();
+					int cw = Math.min(tileSize, childWidth - children[i].col * tileSize);
+					int ch = Math.min(tileSize, childHeight - children[i].row * tileSize);
+					int x0 = (i & 1) * half, y0 = (i >> 1) * half;
+					for (int y = y0; y < Math.min(height, y0 + (ch + 1) / 2); y++) {
+						int cy = (y - y0) * 2;
+						int cy1 = Math.min(cy + 1, ch - 1);
+						for (int x = x0; x < Math.min(width, x0 + (cw + 1) / 2); x++) {
+							int cx = (x - x0) * 2;
+							int cx1 = Math.min(cx + 1, cw - 1);
+							pixels[y * width + x] = average(child[cy * cw + cx], child[cy * cw + cx1],
+									child[cy1 * cw + cx], child[cy1 * cw + cx1]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static int average(int p0, int p1, int p2, int p3) {
+		int a = ((p0 >>> 24) + (p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + 2) >> 2;
+		int r = (((p0 >> 16) & 0xff) + ((p1 >> 16) & 0xff) + ((p2 >> 16) & 0xff) + ((p3 >> 16) & 0xff) + 2) >> 2;
+		int g = (((p0 >> 8) & 0xff) + ((p1 >> 8) & 0xff) + ((p2 >> 8) & 0xff) + ((p3 >> 8) & 0xff) + 2) >> 2;
+		int b = ((p0 & 0xff) + (p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff) + 2) >> 2;
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+}
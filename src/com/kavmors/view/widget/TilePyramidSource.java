@@ -0,0 +1,146 @@
+package com.kavmors.view.widget;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build.VERSION_CODES;
+
+/**
+ * An {@link ImageSource} of a {@link TilePyramid} container. {@link ImageSourceDrawable} decodes it by tiles
+ * of the level that matches sample size, instead of a region decoder, so a region of a gigapixel image
+ * costs a few small tile decodes at any zoom.
+ */
+public class TilePyramidSource extends ByteBufferImageSource {
+	private final TilePyramid mPyramid;
+	private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+	/**
+	 * Map a container file as image source. Only the header is read.
+	 * @param file The container file, which should be smaller than 2GB
+	 * @throws IOException If the file cannot be mapped or it is not a complete container
+	 */
+	public TilePyramidSource(File file) throws IOException {
+		this(TilePyramid.open(file));
+	}
+
+	/**
+	 * Create a source of a container that has been read.
+	 * @param pyramid The container
+	 */
+	public TilePyramidSource(TilePyramid pyramid) {
+		super(pyramid.getBuffer());
+		mPyramid = pyramid;
+	}
+
+	/**
+	 * Get the container of this source.
+	 * @return The container
+	 */
+	public TilePyramid getPyramid() {
+		return mPyramid;
+	}
+
+	@Override
+	@TargetApi(VERSION_CODES.GINGERBREAD_MR1)
+	public BitmapRegionDecoder newRegionDecoder() throws IOException {
+		throw new IOException("Tile pyramid is decoded by its tiles");
+	}
+
+	//Decode a region of full size image, from tiles of the level that is not smaller than sample size asks
+	Bitmap decodeRegion(Rect rect, int sampleSize) throws IOException {
+		int level = 0;
+		while ((2 << level) <= sampleSize && level + 1 < mPyramid.getLevelCount()) {
+			level++;
+		}
+		int scale = 1 << level;
+		int tileSize = mPyramid.getTileSize();
+		int left = rect.left / scale;
+		int top = rect.top / scale;
+		int right = Math.min(mPyramid.getLevelWidth(level), (rect.right + scale - 1) / scale);
+		int bottom = Math.min(mPyramid.getLevelHeight(level), (rect.bottom + scale - 1) / scale);
+		if (left >= right || top >= bottom) {
+			return null;
+		}
+		int firstCol = left / tileSize, lastCol = (right - 1) / tileSize;
+		int firstRow = top / tileSize, lastRow = (bottom - 1) / tileSize;
+		if (scale == sampleSize && firstCol == lastCol && firstRow == lastRow && left == firstCol * tileSize
+				&& top == firstRow * tileSize && right - left == mPyramid.getTileWidth(level, firstCol)
+				&& bottom - top == mPyramid.getTileHeight(level, firstRow)) {
+			return decodeTile(level, firstCol, firstRow);		//region is exactly a tile
+		}
+
+		int width = Math.max(1, (rect.width() + sampleSize - 1) / sampleSize);
+		int height = Math.max(1, (rect.height() + sampleSize - 1) / sampleSize);
+		Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(bitmap);
+		RectF dst = new RectF();
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int col = firstCol; col <= lastCol; col++) {
+				Bitmap tile = decodeTile(level, col, row);
+				if (tile == null) {
+					continue;
+				}
+				//position of tile in full size, then in sampled pixels of region
+				float x = (float) (col * tileSize * scale - rect.left) / sampleSize;
+				float y = (float) (row * tileSize * scale - rect.top) / sampleSize;
+				dst.set(x, y, x + (float) tile.getWidth() * scale / sampleSize, y + (float) tile.getHeight() * scale / sampleSize);
+				canvas.drawBitmap(tile, null, dst, mPaint);
+				tile.recycle();
+			}
+		}
+		return bitmap;
+	}
+
+	private Bitmap decodeTile(int level, int col, int row) throws IOException {
+		ByteBuffer data = mPyramid.getTile(level, col, row);
+		byte[] bytes;
+		int offset, length = data.remaining();
+		if (data.hasArray()) {
+			bytes = data.array();
+			offset = data.arrayOffset() + data.position();
+		} else {
+			bytes = new byte[length];
+			offset = 0;
+			data.get(bytes);
+		}
+		if (mPyramid.getCodec() != TilePyramid.CODEC_DEFLATE) {
+			return BitmapFactory.decodeByteArray(bytes, offset, length, null);
+		}
+		int width = mPyramid.getTileWidth(level, col);
+		int height = mPyramid.getTileHeight(level, row);
+		byte[] pixels = new byte[width * height * 4];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes, offset, length);
+			int inflated = 0;
+			while (inflated < pixels.length && !inflater.finished()) {
+				int n = inflater.inflate(pixels, inflated, pixels.length - inflated);
+				if (n == 0 && inflater.needsInput()) {
+					break;
+				}
+				inflated += n;
+			}
+			if (inflated != pixels.length) {
+				throw new IOException("Tile " + col + "," + row + " at level " + level + " is truncated");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Broken tile " + col + "," + row + " at level " + level + ": " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+		int[] argb = new int[width * height];
+		ByteBuffer.wrap(pixels).asIntBuffer().get(argb);
+		return Bitmap.createBitmap(argb, width, height, Bitmap.Config.ARGB_8888);
+	}
+}
@@ -0,0 +1,199 @@
+package com.kavmors.view.widget;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * A writer of {@link TilePyramid} container. Tiles can be written in any order and from any thread, and the index
+ * is written when closed, so a container that is not closed is never read as complete.
+ * It is pure Java and does not depend on Android framework.
+ */
+public class TilePyramidWriter implements Closeable {
+	private final RandomAccessFile mFile;
+	private final int mWidth, mHeight, mTileSize, mLevels, mCodec;
+	private final int[] mLevelStart;		//index of the first tile of each level
+	private final long[] mOffsets;
+	private final int[] mLengths;
+	private long mEnd = TilePyramid.HEADER_SIZE;
+	private long mMaxBytes = TilePyramid.MAX_FILE_SIZE;
+	private boolean mClosed = false;
+
+	/**
+	 * Create a container file, which is overwritten if exists.
+	 * @param file The file
+	 * @param width Width of image
+	 * @param height Height of image
+	 * @param tileSize Size of tiles, such as 512
+	 * @param codec One of CODEC_ constants of {@link TilePyramid}, which tells the reader how tiles are compressed
+	 * @throws IOException If the file cannot be created
+	 */
+	public TilePyramidWriter(File file, int width, int height, int tileSize, int codec) throws IOException {
+		if (width <= 0 || height <= 0 || tileSize <= 0) {
+			throw new IllegalArgumentException("Invalid size " + width + "x" + height + " or tile size " + tileSize);
+		}
+		mWidth = width;
+		mHeight = height;
+		mTileSize = tileSize;
+		mCodec = codec;
+		mLevels = TilePyramid.levelCount(width, height, tileSize);
+		mLevelStart = new int[mLevels + 1];
+		for (int level = 0; level < mLevels; level++) {
+			mLevelStart[level + 1] = mLevelStart[level] + getColumns(level) * getRows(level);
+		}
+		mOffsets = new long[mLevelStart[mLevels]];
+		mLengths = new int[mLevelStart[mLevels]];
+		mFile = new RandomAccessFile(file, "rw");
+		mFile.setLength(0);
+		mFile.write(new byte[TilePyramid.HEADER_SIZE]);		//written when closed
+	}
+
+	//Lower the limit of file size, so tests reach it without writing 2GB
+	void setMaxBytes(long bytes) {
+		mMaxBytes = bytes;
+	}
+
+	/**
+	 * Get count of levels.
+	 * @return Count of levels
+	 */
+	public int getLevelCount() {
+		return mLevels;
+	}
+
+	/**
+	 * Get size of tiles.
+	 * @return Size in pixels
+	 */
+	public int getTileSize() {
+		return mTileSize;
+	}
+
+	/**
+	 * Get count of tile columns at a level.
+	 * @param level The level
+	 * @return Count of columns
+	 */
+	public int getColumns(int level) {
+		return (TilePyramid.levelSize(mWidth, level) + mTileSize - 1) / mTileSize;
+	}
+
+	/**
+	 * Get count of tile rows at a level.
+	 * @param level The level
+	 * @return Count of rows
+	 */
+	public int getRows(int level) {
+		return (TilePyramid.levelSize(mHeight, level) + mTileSize - 1) / mTileSize;
+	}
+
+	/**
+	 * Write compressed data of a tile, in the codec of this container. A tile written again replaces the old one.
+	 * @param level The level
+	 * @param col The column
+	 * @param row The row
+	 * @param data The buffer of data
+	 * @param offset The start offset in buffer
+	 * @param length The length of data
+	 * @throws IOException If the data cannot be written, or the file would be larger than
+	 * {@link TilePyramid#MAX_FILE_SIZE} with the index
+	 */
+	public synchronized void writeTile(int level, int col, int row, byte[] data, int offset, int length) throws IOException {
+		if (mClosed) {
+			throw new IOException("Writer has been closed");
+		}
+		if (level < 0 || level >= mLevels || col < 0 || col >= getColumns(level) || row < 0 || row >= getRows(level)) {
+			throw new IndexOutOfBoundsException("No tile " + col + "," + row + " at level " + level);
+		}
+		if (length <= 0) {
+			throw new IllegalArgumentException("Tile cannot be empty");
+		}
+		//index is written after tiles, so it must fit as well
+		if (mEnd + length + (long) mLengths.length * TilePyramid.INDEX_ENTRY_SIZE > mMaxBytes) {
+			throw new IOException("Tile pyramid would be larger than " + mMaxBytes + " bytes, which cannot be mapped");
+		}
+		mFile.seek(mEnd);
+		mFile.write(data, offset, length);
+		int index = mLevelStart[level] + row * getColumns(level) + col;
+		mOffsets[index] = mEnd;
+		mLengths[index] = length;
+		mEnd += length;
+	}
+
+	/**
+	 * Write the index and the header. It fails if any tile has not been written, and the file is left incomplete.
+	 * @throws IOException If a tile is missing or the file cannot be written
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (mClosed) {
+			return;
+		}
+		mClosed = true;
+		try {
+			for (int i = 0; i < mLengths.length; i++) {
+				if (mLengths[i] == 0) {
+					throw new IOException("Tile " + i + " of index has not been written");
+				}
+			}
+			ByteBuffer index = ByteBuffer.allocate(mLengths.length * TilePyramid.INDEX_ENTRY_SIZE);
+			for (int i = 0; i < mLengths.length; i++) {
+				index.putLong(mOffsets[i]);
+				index.putInt(mLengths[i]);
+			}
+			mFile.seek(mEnd);
+			mFile.write(index.array());
+			mFile.getFD().sync();		//tiles and index reach disk before the header that makes them valid
+
+			ByteBuffer header = ByteBuffer.allocate(TilePyramid.HEADER_SIZE);
+			header.putInt(TilePyramid.MAGIC);
+			header.putInt(TilePyramid.VERSION);
+			header.putInt(mWidth);
+			header.putInt(mHeight);
+			header.putInt(mTileSize);
+			header.putInt(mLevels);
+			header.putInt(mCodec);
+			header.putInt(0);		//reserved
+			header.putLong(mEnd);
+			mFile.seek(0);
+			mFile.write(header.array());
+			mFile.getFD().sync();
+		} finally {
+			mFile.close();
+		}
+	}
+
+	/**
+	 * Compress pixels of a tile in {@link TilePyramid#CODEC_DEFLATE}.
+	 * @param argb Pixels in ARGB
+	 * @param offset Index of the first pixel of tile
+	 * @param stride Pixels between rows in array
+	 * @param width Width of tile
+	 * @param height Height of tile
+	 * @return Compressed data
+	 */
+	public static byte[] encodeDeflate(int[] argb, int offset, int stride, int width, int height) {
+		ByteBuffer row = ByteBuffer.allocate(width * 4);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(width * height);
+		byte[] buffer = new byte[8192];
+		for (int y = 0; y < height; y++) {
+			row.clear();
+			row.asIntBuffer().put(argb, offset + y * stride, width);
+			deflater.setInput(row.array(), 0, width * 4);
+			while (!deflater.needsInput()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+		}
+		deflater.finish();
+		while (!deflater.finished()) {
+			out.write(buffer, 0, deflater.deflate(buffer));
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,102 @@
+package com.kavmors.view.widget;
+
+/**
+ * Estimates where a pointer will be at a later time, from velocity of its recent samples.
+ * It fits a line by least squares to samples in a short window, so single noisy samples do not swing the prediction.
+ * Values may be a position (x, y), or any two values that move with the pointer, e.g. span of a pinch.
+ */
+class TouchPredictor {
+	static final int MAX_SAMPLES = 10;
+	static final long WINDOW = 50;		//only samples in this time before the latest one are used, in milliseconds
+	static final long MAX_HORIZON = 32;		//never predict further than this, in milliseconds
+
+	private final long[] mTimes = new long[MAX_SAMPLES];
+	private final float[] mX = new float[MAX_SAMPLES];
+	private final float[] mY = new float[MAX_SAMPLES];
+	private int mCount = 0;
+	private int mHead = 0;		//index of the latest sample
+
+	void reset() {
+		mCount = 0;
+	}
+
+	void addSample(long time, float x, float y) {
+		if (mCount > 0 && time < mTimes[mHead]) {
+			reset();		//time goes back, it is a new stream
+		}
+		mHead = (mHead + 1) % MAX_SAMPLES;
+		mTimes[mHead] = time;
+		mX[mHead] = x;
+		mY[mHead] = y;
+		if (mCount < MAX_SAMPLES) {
+			mCount++;
+		}
+	}
+
+	/**
+	 * Predict the values at a time after the latest sample.
+	 * @param time Time to predict, in milliseconds on the same clock of samples
+	 * @param out Receives predicted (x, y). It is the latest sample if there is no enough samples to predict
+	 * @return True if it is predicted from velocity
+	 */
+	boolean predict(long time, float[] out) {
+		if (mCount == 0) {
+			return false;
+		}
+		long latest = mTimes[mHead];
+		float x = mX[mHead], y = mY[mHead];
+		if (!velocity(out)) {
+			out[0] = x;
+			out[1] = y;
+			return false;
+		}
+		long horizon = Math.min(Math.max(time - latest, 0), MAX_HORIZON);
+		out[0] = x + out[0] * horizon;
+		out[1] = y + out[1] * horizon;
+		return true;
+	}
+
+	/**
+	 * Get velocity of the values from recent samples.
+	 * @param out Receives velocity of (x, y) in units per millisecond
+	 * @return False if there is no enough samples, and out is not changed
+	 */
+	boolean velocity(float[] out) {
+		if (mCount == 0) {
+			return false;
+		}
+		long latest = mTimes[mHead];
+		//least squares fit of value = a + v * t, where t is relative to the latest sample
+		int n = 0;
+		double sumT = 0, sumTT = 0, sumX = 0, sumTX = 0, sumY = 0, sumTY = 0;
+		for (int i = 0; i < mCount; i++) {
+			int index = (mHead - i + MAX_SAMPLES) % MAX_SAMPLES;
+			double t = mTimes[index] - latest;
+			if (-t > WINDOW) {
+				break;
+			}
+			n++;
+			sumT += t;
+			sumTT += t * t;
+			sumX += mX[index];
+			sumTX += t * mX[index];
+			sumY += mY[index];
+			sumTY += t * mY[index];
+		}
+		double denominator = n * sumTT - sumT * sumT;
+		if (n < 3 || denominator <= 0) {
+			return false;
+		}
+		out[0] = (float) ((n * sumTX - sumT * sumX) / denominator);
+		out[1] = (float) ((n * sumTY - sumT * sumY) / denominator);
+		return true;
+	}
+
+	/**
+	 * Get time of the latest sample.
+	 * @return Time in milliseconds, or 0 if there is no sample
+	 */
+	long getLatestTime() {
+		return mCount == 0? 0: mTimes[mHead];
+	}
+}
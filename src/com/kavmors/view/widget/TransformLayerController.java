@@ -0,0 +1,111 @@
+package com.kavmors.view.widget;
+
+/**
+ * State machine that promotes a view to a layer while its image is transformed by gesture or animation,
+ * and demotes it once the transform ends or has been idle for a while.
+ * It only makes decisions and keeps statistics, the layer is applied by {@link Callback}, so it can run without a view.
+ */
+class TransformLayerController {
+	static final long IDLE_DELAY = 100;		//demote when there is no transform in this time
+	static final long END_DELAY = 32;		//demote after a drag or zoom ends, unless another transform follows, e.g. spring back
+
+	/**
+	 * Applies decisions of controller.
+	 */
+	interface Callback {
+		void onPromote();
+		void onDemote();
+		void scheduleIdleCheck(long delay);
+	}
+
+	private final Callback mCallback;
+	private boolean mEnabled = false;
+	private boolean mPromoted = false;
+	private long mLastTransform;
+	private long mDemoteDelay = IDLE_DELAY;
+	private long mPromotedAt;
+
+	private int mPromotions = 0;
+	private long mPromotedFrames = 0;
+	private long mPromotedTime = 0;
+
+	TransformLayerController(Callback callback) {
+		mCallback = callback;
+	}
+
+	void setEnabled(boolean enabled, long now) {
+		if (!enabled) {
+			demote(now);
+		}
+		mEnabled = enabled;
+	}
+
+	boolean isEnabled() {
+		return mEnabled;
+	}
+
+	boolean isPromoted() {
+		return mPromoted;
+	}
+
+	//Call in each frame that the image is transformed
+	void onTransform(long now) {
+		if (!mEnabled) {
+			return;
+		}
+		mLastTransform = now;
+		mDemoteDelay = IDLE_DELAY;
+		if (!mPromoted) {
+			mPromoted = true;
+			mPromotedAt = now;
+			mPromotions++;
+			mCallback.onPromote();
+			mCallback.scheduleIdleCheck(IDLE_DELAY);
+		}
+		mPromotedFrames++;
+	}
+
+	//Call when a drag or zoom ends
+	void onTransformEnd(long now) {
+		if (!mPromoted) {
+			return;
+		}
+		mLastTransform = now;
+		mDemoteDelay = END_DELAY;
+		mCallback.scheduleIdleCheck(END_DELAY);
+	}
+
+	//Call when the delay of Callback#scheduleIdleCheck is over
+	void onIdleCheck(long now) {
+		if (!mPromoted) {
+			return;
+		}
+		long idle = now - mLastTransform;
+		if (idle >= mDemoteDelay) {
+			demote(now);
+		} else {
+			mCallback.scheduleIdleCheck(mDemoteDelay - idle);
+		}
+	}
+
+	void demote(long now) {
+		if (!mPromoted) {
+			return;
+		}
+		mPromoted = false;
+		mPromotedTime += now - mPromotedAt;
+		mCallback.onDemote();
+	}
+
+	int getPromotions() {
+		return mPromotions;
+	}
+
+	long getPromotedFrames() {
+		return mPromotedFrames;
+	}
+
+	long getPromotedTime(long now) {
+		return mPromoted? mPromotedTime + now - mPromotedAt: mPromotedTime;
+	}
+}
@@ -0,0 +1,178 @@
+package com.kavmors.view.widget;
+
+import android.os.SystemClock;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+
+import com.kavmors.view.widget.GestureImageView.OnDragListener;
+import com.kavmors.view.widget.GestureImageView.OnZoomListener;
+
+/**
+ * Forwards zoom and drag callbacks to listeners of app. Steps can be forwarded at once, or merged and forwarded
+ * once per frame or at a fixed interval, so slow listeners do not run in each touch event or animation frame.
+ * Start and end callbacks are always forwarded in order, after the merged steps before them.
+ */
+class TransformListenerDispatcher implements OnZoomListener, OnDragListener, Runnable {
+	static final long DEFAULT_INTERVAL = 100;
+
+	private final View mView;
+	private int mMode = GestureImageView.DISPATCH_IMMEDIATE;
+	private long mInterval = DEFAULT_INTERVAL;
+	private OnZoomListener mZoomListener;
+	private OnDragListener mDragListener;
+
+	private boolean mScheduled = false;
+	private long mLastDispatch = 0;
+
+	private boolean mZoomPending = false;
+	private boolean mZoomByGesture;
+	private float mZoomStep = 1f;		//product of merged steps
+	private int mZoomCenterX, mZoomCenterY;		//center of the last merged step
+
+	private boolean mDragPending = false;
+	private boolean mDragByGesture;
+	private int mDragStepX, mDragStepY;		//sum of merged steps
+
+	TransformListenerDispatcher(View view, OnZoomListener zoomListener, OnDragListener dragListener) {
+		mView = view;
+		mZoomListener = zoomListener;
+		mDragListener = dragListener;
+	}
+
+	void setMode(int mode) {
+		flush();
+		mMode = mode;
+	}
+
+	int getMode() {
+		return mMode;
+	}
+
+	void setInterval(long interval) {
+		mInterval = interval;
+	}
+
+	long getInterval() {
+		return mInterval;
+	}
+
+	void setZoomListener(OnZoomListener listener) {
+		flush();
+		mZoomListener = listener;
+	}
+
+	void setDragListener(OnDragListener listener) {
+		flush();
+		mDragListener = listener;
+	}
+
+	@Override
+	public void onZoomStart(boolean byGesture) {
+		flush();
+		mZoomListener.onZoomStart(byGesture);
+	}
+
+	@Override
+	public void onZooming(boolean byGesture, float step, int centerX, int centerY) {
+		if (mMode == GestureImageView.DISPATCH_IMMEDIATE) {
+			mZoomListener.onZooming(byGesture, step, centerX, centerY);
+			return;
+		}
+		if (mZoomPending && mZoomByGesture != byGesture) {
+			flushZoom();
+		}
+		mZoomPending = true;
+		mZoomByGesture = byGesture;
+		mZoomStep *= step;
+		mZoomCenterX = centerX;
+		mZoomCenterY = centerY;
+		schedule();
+	}
+
+	@Override
+	public void onZoomEnd(boolean byGesture, float scale, int centerX, int centerY) {
+		flush();
+		mZoomListener.onZoomEnd(byGesture, scale, centerX, centerY);
+	}
+
+	@Override
+	public void onDragStart(boolean byGesture) {
+		flush();
+		mDragListener.onDragStart(byGesture);
+	}
+
+	@Override
+	public void onDragging(boolean byGesture, int stepX, int stepY) {
+		if (mMode == GestureImageView.DISPATCH_IMMEDIATE) {
+			mDragListener.onDragging(byGesture, stepX, stepY);
+			return;
+		}
+		if (mDragPending && mDragByGesture != byGesture) {
+			flushDrag();
+		}
+		mDragPending = true;
+		mDragByGesture = byGesture;
+		mDragStepX += stepX;
+		mDragStepY += stepY;
+		schedule();
+	}
+
+	@Override
+	public void onDragEnd(boolean byGesture, int dx, int dy) {
+		flush();
+		mDragListener.onDragEnd(byGesture, dx, dy);
+	}
+
+	private void schedule() {
+		if (mScheduled) {
+			return;
+		}
+		mScheduled = true;
+		if (mMode == GestureImageView.DISPATCH_PER_FRAME) {
+			ViewCompat.postOnAnimation(mView, this);
+		} else {
+			long delay = mLastDispatch + mInterval - SystemClock.uptimeMillis();
+			mView.postDelayed(this, Math.max(0, delay));
+		}
+	}
+
+	@Override
+	public void run() {
+		mScheduled = false;
+		flush();
+	}
+
+	//Forward merged steps now
+	void flush() {
+		if (mScheduled) {
+			mScheduled = false;
+			mView.removeCallbacks(this);
+		}
+		if (mZoomPending || mDragPending) {
+			mLastDispatch = SystemClock.uptimeMillis();
+		}
+		flushZoom();
+		flushDrag();
+	}
+
+	private void flushZoom() {
+		if (!mZoomPending) {
+			return;
+		}
+		float step = mZoomStep;
+		mZoomPending = false;
+		mZoomStep = 1f;
+		mZoomListener.onZooming(mZoomByGesture, step, mZoomCenterX, mZoomCenterY);
+	}
+
+	private void flushDrag() {
+		if (!mDragPending) {
+			return;
+		}
+		int stepX = mDragStepX, stepY = mDragStepY;
+		mDragPending = false;
+		mDragStepX = 0;
+		mDragStepY = 0;
+		mDragListener.onDragging(mDragByGesture, stepX, stepY);
+	}
+}
@@ -0,0 +1,112 @@
+package com.kavmors.view.widget;
+
+/**
+ * Turns finger movement of a zoom gesture into scale. Scale is exponential in distance, one weight of distance
+ * doubles or halves the scale, so the total scale is the sum of distances in log2 space and does not depend on
+ * how often touch events come. Weight is in density-independent pixels, so a gesture zooms alike on any screen.
+ * Each step returns the difference between the integrated log2 scale and what has been returned, so rounding
+ * of single steps does not add up over a gesture.
+ * It also tracks velocity in log2 space, and keeps zooming after release with a decay that depends only on time.
+ */
+class ZoomIntegrator {
+	static final float MIN_VELOCITY = 0.5f;		//log2 scale per second, slower gestures have no momentum
+	static final float DECELERATION = 5f;		//decay rate of momentum velocity, per second
+	static final double MIN_REMAINING = 0.002;		//momentum stops when the rest of it is below this, in log2 scale
+
+	private final float mWeight;		//distance in pixels that doubles scale
+	private final TouchPredictor mTracker = new TouchPredictor();		//tracks total log2 scale
+	private final float[] mVelocity = new float[2];
+	private double mLog;		//total log2 scale of gesture and momentum
+	private double mApplied;		//log2 scale of all steps that have been returned
+
+	private long mMomentumStart;
+	private double mMomentumVelocity;		//log2 scale per second at start of momentum
+	private double mMomentumBase;		//mLog at start of momentum
+
+	/**
+	 * @param weightDp Distance in dp that doubles scale
+	 * @param density Density of display
+	 */
+	ZoomIntegrator(float weightDp, float density) {
+		mWeight = weightDp * density;
+	}
+
+	void reset() {
+		mLog = 0;
+		mApplied = 0;
+		mTracker.reset();
+		mMomentumVelocity = 0;
+	}
+
+	/**
+	 * Get the scale of a distance, without adding it to gesture.
+	 * @param distance Distance in pixels, positive to zoom in
+	 */
+	float scaleOf(float distance) {
+		return (float) Math.pow(2, distance / mWeight);
+	}
+
+	/**
+	 * Add a move of gesture.
+	 * @param time Time of touch event in milliseconds
+	 * @param distance Distance in pixels, positive to zoom in
+	 * @return Scale of this move
+	 */
+	float add(long time, float distance) {
+		mLog += distance / mWeight;
+		mTracker.addSample(time, (float) mLog, 0);
+		return nextStep();
+	}
+
+	//Scale from what has been returned to mLog, the rounding of the float returned is left to the next step
+	private float nextStep() {
+		float step = (float) Math.pow(2, mLog - mApplied);
+		mApplied += Math.log(step) / Math.log(2);
+		return step;
+	}
+
+	/**
+	 * Start momentum with the velocity of gesture.
+	 * @param time Time of release in milliseconds
+	 * @return False if the gesture is too slow to keep zooming
+	 */
+	boolean startMomentum(long time) {
+		mMomentumVelocity = 0;
+		//the gesture must be still moving at release
+		if (time - mTracker.getLatestTime() > TouchPredictor.WINDOW || !mTracker.velocity(mVelocity)) {
+			return false;
+		}
+		double velocity = mVelocity[0] * 1000.0;
+		if (Math.abs(velocity) < MIN_VELOCITY) {
+			return false;
+		}
+		mMomentumStart = time;
+		mMomentumVelocity = velocity;
+		mMomentumBase = mLog;
+		return true;
+	}
+
+	//Total log2 scale of momentum at a time, v / k * (1 - e^(-k * t))
+	private double momentumAt(long time) {
+		double t = Math.max(0, time - mMomentumStart) / 1000.0;
+		return mMomentumVelocity / DECELERATION * (1 - Math.exp(-DECELERATION * t));
+	}
+
+	/**
+	 * Get the scale of momentum from the last step to a time of frame.
+	 * @param time Time of frame in milliseconds, on the clock of touch events
+	 * @return Scale of this step
+	 */
+	float momentumStep(long time) {
+		mLog = mMomentumBase + momentumAt(time);
+		return nextStep();
+	}
+
+	/**
+	 * Indicate whether momentum has finished at a time.
+	 */
+	boolean isMomentumFinished(long time) {
+		double rest = mMomentumVelocity / DECELERATION - momentumAt(time);
+		return Math.abs(rest) < MIN_REMAINING;
+	}
+}
@@ -0,0 +1,229 @@
+package com.kavmors.view.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Blocking, failures, trimming and closing of {@link DecoderPool}, with threads that are checked to be waiting.
+ */
+public class DecoderPoolTest {
+	private static final long TIMEOUT = 5000;
+
+	private RecordingFactory mFactory;
+
+	//Creates numbered decoders, fails creation on demand, and records recycled ones
+	private static class RecordingFactory implements DecoderPool.Factory<Integer> {
+		final ArrayList<Integer> recycled = new ArrayList<Integer>();
+		int created = 0;
+		int failures = 0;		//creations to fail from now
+
+		@Override
+		public synchronized Integer create() throws IOException {
+			if (failures > 0) {
+				failures--;
+				throw new IOException("Too many open files");
+			}
+			return ++created;
+		}
+
+		@Override
+		public synchronized void recycle(Integer decoder) {
+			recycled.add(decoder);
+		}
+
+		synchronized ArrayList<Integer> getRecycled() {
+			return new ArrayList<Integer>(recycled);
+		}
+	}
+
+	//Runs acquire in another thread
+	private static class Acquirer extends Thread {
+		final DecoderPool<Integer> pool;
+		volatile Integer decoder;
+		volatile boolean done = false;
+
+		Acquirer(DecoderPool<Integer> pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public void run() {
+			try {
+				decoder = pool.acquire();
+			} catch (IOException e) {
+				//decoder is null
+			}
+			done = true;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		mFactory = new RecordingFactory();
+	}
+
+	@Test
+	public void acquireBlocksAtMaxAndWakesOnRelease() throws Exception {
+		DecoderPool<Integer> pool = new DecoderPool<Integer>(mFactory, 2);
+		Integer first = pool.acquire();
+		Integer second = pool.acquire();
+		assertEquals(2, pool.size());
+		Acquirer waiter = new Acquirer(pool);
+		waiter.start();
+		awaitWaiting(waiter);
+		assertFalse(waiter.done);
+
+		pool.release(second);
+		waiter.join(TIMEOUT);
+		assertTrue(waiter.done);
+		assertSame(second, waiter.decoder);		//the released decoder is reused, not a third one
+		assertEquals(2, mFactory.created);
+		pool.release(first);
+		pool.release(waiter.decoder);
+	}
+
+	@Test
+	public void failedCreationGivesCountBack() throws Exception {
+		DecoderPool<Integer> pool = new DecoderPool<Integer>(mFactory, 1);
+		mFactory.failures = 1;
+		try {
+			pool.acquire();
+			fail("creation fails");
+		} catch (IOException e) {
+			//expected
+		}
+		assertEquals(0, pool.size());
+		Integer decoder = pool.acquire();		//does not wait for a decoder that was never created
+		assertEquals(Integer.valueOf(1), decoder);
+		assertEquals(1, pool.size());
+		pool.release(decoder);
+	}
+
+	@Test
+	public void failedCreationWakesWaiter() throws Exception {
+		final CountDownLatch gate = new CountDownLatch(1);
+		DecoderPool<Integer> pool = new DecoderPool<Integer>(new RecordingFactory() {
+			@Override
+			public Integer create() throws IOException {
+				if (gate.getCount() > 0) {		//the first creation is slow and then fails
+					try {
+						gate.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					throw new IOException("Too many open files");
+				}
+				return super.create();
+			}
+		}, 1);
+		Acquirer failing = new Acquirer(pool);
+		failing.start();
+		awaitWaiting(failing);		//in creation, holding the only count of pool
+		Acquirer waiter = new Acquirer(pool);
+		waiter.start();
+		awaitWaiting(waiter);
+		assertFalse(waiter.done);
+
+		gate.countDown();
+		failing.join(TIMEOUT);
+		waiter.join(TIMEOUT);
+		assertNull(failing.decoder);
+		assertEquals(Integer.valueOf(1), waiter.decoder);
+		assertEquals(1, pool.size());
+		pool.release(waiter.decoder);
+	}
+
+	@Test
+	public void trimDropsIdleDecoders() throws Exception {
+		DecoderPool<Integer> pool = new DecoderPool<Integer>(mFactory, 3);
+		Integer first = pool.acquire();
+		Integer second = pool.acquire();
+		Integer third = pool.acquire();
+		pool.release(second);
+		pool.release(third);
+		assertEquals(2, pool.trim());
+		assertEquals(1, pool.size());
+		ArrayList<Integer> recycled = mFactory.getRecycled();
+		assertEquals(2, recycled.size());
+		assertTrue(recycled.contains(second) && recycled.contains(third));
+		assertFalse(recycled.contains(first));		//busy, kept
+		assertEquals(0, pool.trim());
+
+		Integer next = pool.acquire();		//created again when needed
+		assertEquals(Integer.valueOf(4), next);
+		pool.release(next);
+		pool.release(first);
+	}
+
+	@Test
+	public void closeWaitsForBusyDecoders() throws Exception {
+		final DecoderPool<Integer> pool = new DecoderPool<Integer>(mFactory, 2);
+		Integer busy = pool.acquire();
+		Integer idle = pool.acquire();
+		pool.release(idle);
+		Thread closer = new Thread() {
+			@Override
+			public void run() {
+				pool.close();
+			}
+		};
+		closer.start();
+		awaitWaiting(closer);
+		assertTrue(closer.isAlive());
+		ArrayList<Integer> recycled = mFactory.getRecycled();
+		assertEquals(1, recycled.size());		//idle one at once, busy one not yet
+		assertSame(idle, recycled.get(0));
+		assertNull(pool.acquire());		//closed
+
+		pool.release(busy);
+		closer.join(TIMEOUT);
+		assertFalse(closer.isAlive());
+		assertEquals(2, mFactory.getRecycled().size());
+		assertSame(busy, mFactory.getRecycled().get(1));
+		assertEquals(0, pool.size());
+	}
+
+	@Test
+	public void closeWakesWaitingAcquire() throws Exception {
+		final DecoderPool<Integer> pool = new DecoderPool<Integer>(mFactory, 1);
+		Integer busy = pool.acquire();
+		Acquirer waiter = new Acquirer(pool);
+		waiter.start();
+		awaitWaiting(waiter);
+		Thread closer = new Thread() {
+			@Override
+			public void run() {
+				pool.close();
+			}
+		};
+		closer.start();
+		waiter.join(TIMEOUT);
+		assertTrue(waiter.done);
+		assertNull(waiter.decoder);
+		pool.release(busy);
+		closer.join(TIMEOUT);
+		assertFalse(closer.isAlive());
+	}
+
+	//Wait until a thread blocks, in wait() of the pool or in a slow creation
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (thread.getState() != Thread.State.WAITING) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("thread does not wait: " + thread.getState());
+			}
+			Thread.sleep(1);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.kavmors.view.widget;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * When {@link TapClickPolicy} fires a click: at finger up, at double-tap timeout, or speculatively and cancelled.
+ */
+public class TapClickPolicyTest {
+	private TapClickPolicy mPolicy;
+
+	@Before
+	public void setUp() {
+		mPolicy = new TapClickPolicy();
+	}
+
+	@Test
+	public void clickWaitsForTimeoutByDefault() {
+		mPolicy.onDown();
+		assertFalse(mPolicy.onTapUp());
+		assertTrue(mPolicy.onTapConfirmed());
+	}
+
+	@Test
+	public void secondTapBeforeTimeoutIsNoClick() {
+		mPolicy.onDown();
+		assertFalse(mPolicy.onTapUp());
+		assertFalse(mPolicy.onSecondTap());		//nothing to cancel, and no click is fired
+	}
+
+	@Test
+	public void clickAtOnceWithoutDoubleTap() {
+		mPolicy.setDoubleTapEnabled(false);
+		mPolicy.onDown();
+		assertTrue(mPolicy.onTapUp());
+	}
+
+	@Test
+	public void speculativeClickIsNotFiredAgainAtTimeout() {
+		mPolicy.setSpeculative(true);
+		mPolicy.onDown();
+		assertTrue(mPolicy.onTapUp());
+		assertFalse(mPolicy.onTapConfirmed());
+	}
+
+	@Test
+	public void speculativeClickIsCancelledBySecondTap() {
+		mPolicy.setSpeculative(true);
+		mPolicy.onDown();
+		assertTrue(mPolicy.onTapUp());
+		assertTrue(mPolicy.onSecondTap());
+		assertFalse(mPolicy.onSecondTap());		//cancelled once only
+	}
+
+	@Test
+	public void nextTapAfterTimeoutStartsClean() {
+		mPolicy.setSpeculative(true);
+		mPolicy.onDown();
+		mPolicy.onTapUp();
+		mPolicy.onTapConfirmed();
+		mPolicy.setSpeculative(false);
+		mPolicy.onDown();
+		assertFalse(mPolicy.onTapUp());
+		assertFalse(mPolicy.onSecondTap());
+		mPolicy.onDown();
+		assertFalse(mPolicy.onTapUp());
+		assertTrue(mPolicy.onTapConfirmed());
+	}
+
+	@Test
+	public void speculationDroppedByNewDown() {
+		mPolicy.setSpeculative(true);
+		mPolicy.onDown();
+		mPolicy.onTapUp();
+		mPolicy.onDown();		//e.g. the tap was interrupted before timeout and a new gesture started
+		assertFalse(mPolicy.onSecondTap());
+	}
+
+	@Test
+	public void speculativeWithoutDoubleTapClicksOnce() {
+		mPolicy.setSpeculative(true);
+		mPolicy.setDoubleTapEnabled(false);
+		mPolicy.onDown();
+		assertTrue(mPolicy.onTapUp());
+		assertFalse(mPolicy.onSecondTap());
+	}
+}
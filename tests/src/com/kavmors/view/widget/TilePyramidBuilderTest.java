@@ -0,0 +1,186 @@
+package com.kavmors.view.widget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Levels built by {@link TilePyramidBuilder} are 2x2 averages of the level under them, across tiles and at odd
+ * borders, and failures in tasks reach the caller of build.
+ */
+public class TilePyramidBuilderTest {
+	private static final int TILE_SIZE = 8;
+	//odd sizes at every level: 37x21, 19x11, 10x6, 5x3
+	private static final int WIDTH = 37, HEIGHT = 21;
+
+	private File mFile;
+	private TilePyramidBuilder mBuilder;
+
+	//Random ARGB pixels, alpha included
+	private static class ArraySource implements TilePyramidBuilder.Source {
+		final int width, height;
+		final int[] pixels;
+
+		ArraySource(int width, int height) {
+			this.width = width;
+			this.height = height;
+			pixels = new int[width * height];
+			Random random = new Random(7);
+			for (int i = 0; i < pixels.length; i++) {
+				pixels[i] = random.nextInt();
+			}
+		}
+
+		@Override
+		public int getWidth() {
+			return width;
+		}
+
+		@Override
+		public int getHeight() {
+			return height;
+		}
+
+		@Override
+		public void read(int x, int y, int width, int height, int[] out, int offset, int stride) throws IOException {
+			for (int row = 0; row < height; row++) {
+				System.arraycopy(pixels, (y + row) * this.width + x, out, offset + row * stride, width);
+			}
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		mFile = File.createTempFile("pyramid", ".tpyr");
+		mBuilder = new TilePyramidBuilder(4);
+		mBuilder.setTileSize(TILE_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		mBuilder.shutdown();
+		mFile.delete();
+	}
+
+	@Test
+	public void levelsAreAveragesOfLevelsUnder() throws Exception {
+		ArraySource source = new ArraySource(WIDTH, HEIGHT);
+		TilePyramidBuilder.Report report = mBuilder.build(source, mFile);
+		TilePyramid pyramid = TilePyramid.open(mFile);
+		assertEquals(4, pyramid.getLevelCount());
+		int tiles = 0;
+		for (int level = 0; level < pyramid.getLevelCount(); level++) {
+			tiles += pyramid.getColumns(level) * pyramid.getRows(level);
+		}
+		assertEquals(tiles, report.tiles);
+		assertEquals((long) WIDTH * HEIGHT, report.pixels);
+
+		int[] expected = source.pixels;
+		int width = WIDTH, height = HEIGHT;
+		for (int level = 0; level < pyramid.getLevelCount(); level++) {
+			if (level > 0) {
+				expected = reduce(expected, width, height);
+				width = (width + 1) / 2;
+				height = (height + 1) / 2;
+			}
+			assertEquals(width, pyramid.getLevelWidth(level));
+			assertEquals(height, pyramid.getLevelHeight(level));
+			assertArrayEquals("level " + level, expected, readLevel(pyramid, level));
+		}
+	}
+
+	@Test
+	public void readFailureReachesCaller() throws Exception {
+		final IOException failure = new IOException("disk is gone");
+		ArraySource source = new ArraySource(WIDTH, HEIGHT) {
+			@Override
+			public void read(int x, int y, int width, int height, int[] out, int offset, int stride) throws IOException {
+				if (x > 0 && y > 0) {		//only some tiles, in forked tasks
+					throw failure;
+				}
+				super.read(x, y, width, height, out, offset, stride);
+			}
+		};
+		try {
+			mBuilder.build(source, mFile);
+			fail("source cannot be read");
+		} catch (IOException e) {
+			assertEquals(failure.getMessage(), e.getMessage());
+		}
+		assertRejected(mFile);
+	}
+
+	@Test
+	public void fileSizeLimitReachesCaller() throws Exception {
+		mBuilder.setMaxFileSize(4096);		//random pixels do not compress, so level 0 alone is about 3KB
+		try {
+			mBuilder.build(new ArraySource(WIDTH, HEIGHT), mFile);
+			fail("container is over the limit");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("4096 bytes"));
+		}
+		assertRejected(mFile);
+
+		//the pool is still usable for the next image
+		mBuilder.setMaxFileSize(TilePyramid.MAX_FILE_SIZE);
+		mBuilder.build(new ArraySource(WIDTH, HEIGHT), mFile);
+		assertEquals(4, TilePyramid.open(mFile).getLevelCount());
+	}
+
+	//2x2 average with rounding, where the last column or row at an odd border is averaged with itself
+	private static int[] reduce(int[] pixels, int width, int height) {
+		int w = (width + 1) / 2, h = (height + 1) / 2;
+		int[] out = new int[w * h];
+		for (int y = 0; y < h; y++) {
+			int y0 = y * 2, y1 = Math.min(y0 + 1, height - 1);
+			for (int x = 0; x < w; x++) {
+				int x0 = x * 2, x1 = Math.min(x0 + 1, width - 1);
+				int p0 = pixels[y0 * width + x0], p1 = pixels[y0 * width + x1];
+				int p2 = pixels[y1 * width + x0], p3 = pixels[y1 * width + x1];
+				int argb = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					int sum = ((p0 >>> shift) & 0xff) + ((p1 >>> shift) & 0xff) + ((p2 >>> shift) & 0xff)
+							+ ((p3 >>> shift) & 0xff);
+					argb |= ((sum + 2) >> 2) << shift;
+				}
+				out[y * w + x] = argb;
+			}
+		}
+		return out;
+	}
+
+	//Pixels of a whole level, put together from its tiles
+	private static int[] readLevel(TilePyramid pyramid, int level) throws IOException {
+		int width = pyramid.getLevelWidth(level);
+		int[] pixels = new int[width * pyramid.getLevelHeight(level)];
+		for (int row = 0; row < pyramid.getRows(level); row++) {
+			for (int col = 0; col < pyramid.getColumns(level); col++) {
+				int tileWidth = pyramid.getTileWidth(level, col), tileHeight = pyramid.getTileHeight(level, row);
+				int[] tile = TilePyramidTest.inflate(pyramid.getTile(level, col, row), tileWidth, tileHeight);
+				for (int y = 0; y < tileHeight; y++) {
+					System.arraycopy(tile, y * tileWidth, pixels, (row * TILE_SIZE + y) * width + col * TILE_SIZE,
+							tileWidth);
+				}
+			}
+		}
+		return pixels;
+	}
+
+	private static void assertRejected(File file) {
+		try {
+			TilePyramid.open(file);
+			fail("container is not complete");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package com.kavmors.view.widget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Containers written by {@link TilePyramidWriter} are read back by {@link TilePyramid} tile by tile,
+ * and containers that are not complete are rejected.
+ */
+public class TilePyramidTest {
+	private static final int WIDTH = 1000, HEIGHT = 700, TILE_SIZE = 256;		//3 levels, with odd tiles at borders
+
+	private File mFile;
+
+	@Before
+	public void setUp() throws IOException {
+		mFile = File.createTempFile("pyramid", ".tpyr");
+	}
+
+	@After
+	public void tearDown() {
+		mFile.delete();
+	}
+
+	@Test
+	public void tilesRoundTrip() throws Exception {
+		write(mFile, true);
+		TilePyramid pyramid = TilePyramid.open(mFile);
+		assertEquals(WIDTH, pyramid.getWidth());
+		assertEquals(HEIGHT, pyramid.getHeight());
+		assertEquals(TILE_SIZE, pyramid.getTileSize());
+		assertEquals(3, pyramid.getLevelCount());
+		assertEquals(TilePyramid.CODEC_DEFLATE, pyramid.getCodec());
+		assertEquals(4, pyramid.getColumns(0));
+		assertEquals(2, pyramid.getColumns(1));
+		assertEquals(1, pyramid.getRows(2));
+		assertEquals(1000 - 3 * 256, pyramid.getTileWidth(0, 3));
+		for (int level = 0; level < pyramid.getLevelCount(); level++) {
+			for (int row = 0; row < pyramid.getRows(level); row++) {
+				for (int col = 0; col < pyramid.getColumns(level); col++) {
+					int width = pyramid.getTileWidth(level, col), height = pyramid.getTileHeight(level, row);
+					int[] pixels = inflate(pyramid.getTile(level, col, row), width, height);
+					assertArrayEquals("tile " + col + "," + row + " at level " + level,
+							pattern(level, col, row, width, height), pixels);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void tileOutOfLevelIsRejected() throws Exception {
+		write(mFile, true);
+		TilePyramid pyramid = TilePyramid.open(mFile);
+		try {
+			pyramid.getTile(1, 2, 0);
+			fail("level 1 has 2 columns");
+		} catch (IndexOutOfBoundsException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void unclosedWriterIsRejected() throws Exception {
+		write(mFile, false);		//header and index are written only when closed
+		assertRejected(mFile);
+	}
+
+	@Test
+	public void missingTileFailsCloseAndIsRejected() throws Exception {
+		TilePyramidWriter writer = new TilePyramidWriter(mFile, WIDTH, HEIGHT, TILE_SIZE, TilePyramid.CODEC_DEFLATE);
+		byte[] data = TilePyramidWriter.encodeDeflate(pattern(0, 0, 0, TILE_SIZE, TILE_SIZE), 0, TILE_SIZE,
+				TILE_SIZE, TILE_SIZE);
+		writer.writeTile(0, 0, 0, data, 0, data.length);
+		try {
+			writer.close();
+			fail("tiles are missing");
+		} catch (IOException e) {
+			//expected
+		}
+		assertRejected(mFile);
+	}
+
+	@Test
+	public void truncatedFileIsRejected() throws Exception {
+		write(mFile, true);
+		RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+		try {
+			file.setLength(file.length() - 1);		//the last entry of index is cut
+		} finally {
+			file.close();
+		}
+		assertRejected(mFile);
+
+		file = new RandomAccessFile(mFile, "rw");
+		try {
+			file.setLength(TilePyramid.HEADER_SIZE - 1);
+		} finally {
+			file.close();
+		}
+		assertRejected(mFile);
+	}
+
+	@Test
+	public void levelSizeRoundsUp() {
+		assertEquals(5, TilePyramid.levelSize(5, 0));
+		assertEquals(3, TilePyramid.levelSize(5, 1));
+		assertEquals(2, TilePyramid.levelSize(5, 2));
+		assertEquals(1, TilePyramid.levelSize(5, 3));
+		assertEquals(1, TilePyramid.levelSize(1, 4));
+		assertEquals(126, TilePyramid.levelSize(1001, 3));
+		assertEquals(125, TilePyramid.levelSize(1000, 3));
+		assertEquals(1 << 30, TilePyramid.levelSize(Integer.MAX_VALUE, 1));		//no overflow
+	}
+
+	@Test
+	public void levelCountStopsAtOneTile() {
+		assertEquals(1, TilePyramid.levelCount(512, 512, 512));
+		assertEquals(2, TilePyramid.levelCount(513, 1, 512));
+		assertEquals(2, TilePyramid.levelCount(1024, 1023, 512));
+		assertEquals(3, TilePyramid.levelCount(1025, 1, 512));
+	}
+
+	//Write every tile of a 3-level container, and close it only if complete is true
+	private static void write(File file, boolean complete) throws IOException {
+		TilePyramidWriter writer = new TilePyramidWriter(file, WIDTH, HEIGHT, TILE_SIZE, TilePyramid.CODEC_DEFLATE);
+		//from the top level down, as tiles may come in any order
+		for (int level = writer.getLevelCount() - 1; level >= 0; level--) {
+			for (int row = 0; row < writer.getRows(level); row++) {
+				for (int col = 0; col < writer.getColumns(level); col++) {
+					int width = Math.min(TILE_SIZE, TilePyramid.levelSize(WIDTH, level) - col * TILE_SIZE);
+					int height = Math.min(TILE_SIZE, TilePyramid.levelSize(HEIGHT, level) - row * TILE_SIZE);
+					byte[] data = TilePyramidWriter.encodeDeflate(pattern(level, col, row, width, height), 0, width,
+							width, height);
+					writer.writeTile(level, col, row, data, 0, data.length);
+				}
+			}
+		}
+		if (complete) {
+			writer.close();
+		}
+	}
+
+	//Pixels that differ in each tile and each position
+	private static int[] pattern(int level, int col, int row, int width, int height) {
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0xff000000 | (level << 20) | (row << 16) | (col << 12) | ((i * 31 + i / width) & 0xfff);
+		}
+		return pixels;
+	}
+
+	private static void assertRejected(File file) {
+		try {
+			TilePyramid.open(file);
+			fail("container is not complete");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	//Inflate a tile of CODEC_DEFLATE into ARGB pixels
+	static int[] inflate(ByteBuffer tile, int width, int height) throws IOException {
+		byte[] data = new byte[tile.remaining()];
+		tile.get(data);
+		byte[] bytes = new byte[width * height * 4];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			int inflated = 0;
+			while (inflated < bytes.length && !inflater.finished()) {
+				int n = inflater.inflate(bytes, inflated, bytes.length - inflated);
+				if (n == 0 && inflater.needsInput()) {
+					break;
+				}
+				inflated += n;
+			}
+			assertEquals(bytes.length, inflated);
+		} catch (DataFormatException e) {
+			throw new IOException(e.getMessage());
+		} finally {
+			inflater.end();
+		}
+		int[] argb = new int[width * height];
+		ByteBuffer.wrap(bytes).asIntBuffer().get(argb);
+		return argb;
+	}
+}
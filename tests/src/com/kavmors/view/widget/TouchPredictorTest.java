@@ -0,0 +1,160 @@
+package com.kavmors.view.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Replays synthetic touch traces through {@link TouchPredictor} and checks the error of prediction
+ * against the real position at the predicted time.
+ */
+public class TouchPredictorTest {
+	private static final long HORIZON = 16;		//predict about one frame ahead
+
+	//Position of a finger at a time in milliseconds
+	private interface Trace {
+		void position(long time, float[] out);
+	}
+
+	//Mean and maximal error of prediction, and of no prediction, over a trace
+	private static class Errors {
+		double mean, max, lagMean;
+	}
+
+	private static Errors replay(Trace trace, long interval, long duration, float noise) {
+		TouchPredictor predictor = new TouchPredictor();
+		Random random = new Random(42);
+		float[] sample = new float[2];
+		float[] predicted = new float[2];
+		float[] real = new float[2];
+		Errors errors = new Errors();
+		int count = 0;
+		for (long time = 0; time <= duration; time += interval) {
+			trace.position(time, sample);
+			predictor.addSample(time, sample[0] + (float) random.nextGaussian() * noise,
+					sample[1] + (float) random.nextGaussian() * noise);
+			if (!predictor.predict(time + HORIZON, predicted)) {
+				continue;
+			}
+			trace.position(time + HORIZON, real);
+			double error = Math.hypot(predicted[0] - real[0], predicted[1] - real[1]);
+			errors.mean += error;
+			errors.max = Math.max(errors.max, error);
+			errors.lagMean += Math.hypot(sample[0] - real[0], sample[1] - real[1]);
+			count++;
+		}
+		errors.mean /= count;
+		errors.lagMean /= count;
+		return errors;
+	}
+
+	@Test
+	public void constantVelocityIsExact() {
+		Trace trace = new Trace() {
+			@Override
+			public void position(long time, float[] out) {
+				out[0] = 100 + 1.5f * time;
+				out[1] = 300 - 0.8f * time;
+			}
+		};
+		Errors errors = replay(trace, 8, 500, 0);
+		assertEquals(0, errors.max, 0.01);
+	}
+
+	@Test
+	public void noisyCircleAt8ms() {
+		Errors errors = replay(circle(), 8, 2000, 1f);
+		assertTrue("mean error " + errors.mean, errors.mean < 3.5);
+		assertTrue("max error " + errors.max, errors.max < 8);
+		assertTrue("no better than lag " + errors.lagMean, errors.mean < errors.lagMean / 4);
+	}
+
+	@Test
+	public void noisyCircleAt16ms() {
+		Errors errors = replay(circle(), 16, 2000, 1f);
+		assertTrue("mean error " + errors.mean, errors.mean < 4);
+		assertTrue("max error " + errors.max, errors.max < 10);
+		assertTrue("no better than lag " + errors.lagMean, errors.mean < errors.lagMean / 4);
+	}
+
+	@Test
+	public void deceleratingFling() {
+		//finger slows down exponentially from 3 px/ms, as at the end of a swipe
+		Trace trace = new Trace() {
+			@Override
+			public void position(long time, float[] out) {
+				out[0] = (float) (3 * 120 * (1 - Math.exp(-time / 120.0)));
+				out[1] = out[0] / 2;
+			}
+		};
+		Errors errors = replay(trace, 8, 400, 0.5f);
+		//a line fit overshoots while the finger slows down, but still far less than the lag
+		assertTrue("mean error " + errors.mean, errors.mean < 5);
+		assertTrue("max error " + errors.max, errors.max < 15);
+		assertTrue("no better than lag " + errors.lagMean, errors.mean < errors.lagMean / 2);
+	}
+
+	@Test
+	public void predictionIsCapped() {
+		TouchPredictor predictor = new TouchPredictor();
+		for (long time = 0; time <= 40; time += 8) {
+			predictor.addSample(time, time, 0);
+		}
+		float[] out = new float[2];
+		assertTrue(predictor.predict(40 + 1000, out));
+		assertEquals(40 + TouchPredictor.MAX_HORIZON, out[0], 0.01);
+	}
+
+	@Test
+	public void tooFewSamplesGivesLatest() {
+		TouchPredictor predictor = new TouchPredictor();
+		float[] out = new float[2];
+		assertFalse(predictor.predict(16, out));
+		predictor.addSample(0, 10, 20);
+		predictor.addSample(8, 18, 20);
+		assertFalse(predictor.predict(24, out));
+		assertEquals(18, out[0], 0);
+		assertEquals(20, out[1], 0);
+	}
+
+	@Test
+	public void oldSamplesAreOutOfWindow() {
+		TouchPredictor predictor = new TouchPredictor();
+		predictor.addSample(0, 0, 0);
+		predictor.addSample(8, 100, 0);		//a jump long before the recent samples
+		for (long time = 100; time <= 140; time += 8) {
+			predictor.addSample(time, 500, 0);
+		}
+		float[] out = new float[2];
+		assertTrue(predictor.velocity(out));
+		assertEquals(0, out[0], 0.001);
+	}
+
+	@Test
+	public void timeGoingBackStartsNewStream() {
+		TouchPredictor predictor = new TouchPredictor();
+		for (long time = 1000; time <= 1040; time += 8) {
+			predictor.addSample(time, time, 0);
+		}
+		predictor.addSample(0, 5, 5);
+		float[] out = new float[2];
+		assertFalse(predictor.predict(16, out));
+		assertEquals(0, predictor.getLatestTime());
+	}
+
+	//Finger drawing circles of 200px radius, once in 1.2 seconds
+	private static Trace circle() {
+		return new Trace() {
+			@Override
+			public void position(long time, float[] out) {
+				double angle = 2 * Math.PI * time / 1200.0;
+				out[0] = (float) (400 + 200 * Math.cos(angle));
+				out[1] = (float) (400 + 200 * Math.sin(angle));
+			}
+		};
+	}
+}
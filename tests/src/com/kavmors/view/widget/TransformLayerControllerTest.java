@@ -0,0 +1,140 @@
+package com.kavmors.view.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * State transitions of {@link TransformLayerController}, driven by a fake clock and a recording callback.
+ */
+public class TransformLayerControllerTest {
+	private RecordingCallback mCallback;
+	private TransformLayerController mController;
+
+	//Records decisions of controller, and the delay of idle check that is pending
+	private static class RecordingCallback implements TransformLayerController.Callback {
+		final ArrayList<String> events = new ArrayList<String>();
+		long pendingDelay = -1;
+
+		@Override
+		public void onPromote() {
+			events.add("promote");
+		}
+
+		@Override
+		public void onDemote() {
+			events.add("demote");
+		}
+
+		@Override
+		public void scheduleIdleCheck(long delay) {
+			pendingDelay = delay;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		mCallback = new RecordingCallback();
+		mController = new TransformLayerController(mCallback);
+		mController.setEnabled(true, 0);
+	}
+
+	@Test
+	public void promotesOnFirstTransformOnly() {
+		mController.onTransform(0);
+		mController.onTransform(16);
+		mController.onTransform(32);
+		assertTrue(mController.isPromoted());
+		assertEquals(1, mCallback.events.size());
+		assertEquals("promote", mCallback.events.get(0));
+		assertEquals(TransformLayerController.IDLE_DELAY, mCallback.pendingDelay);
+		assertEquals(1, mController.getPromotions());
+		assertEquals(3, mController.getPromotedFrames());
+	}
+
+	@Test
+	public void staysPromotedWhileTransformsContinue() {
+		mController.onTransform(0);
+		mController.onTransform(80);
+		mController.onIdleCheck(TransformLayerController.IDLE_DELAY);
+		assertTrue(mController.isPromoted());
+		//checks again when the idle delay from the last transform is over
+		assertEquals(80, mCallback.pendingDelay);
+	}
+
+	@Test
+	public void demotesWhenIdle() {
+		mController.onTransform(0);
+		mController.onIdleCheck(TransformLayerController.IDLE_DELAY);
+		assertFalse(mController.isPromoted());
+		assertEquals("demote", mCallback.events.get(mCallback.events.size() - 1));
+		assertEquals(TransformLayerController.IDLE_DELAY, mController.getPromotedTime(1000));
+	}
+
+	@Test
+	public void demotesSoonAfterTransformEnds() {
+		mController.onTransform(0);
+		mController.onTransformEnd(10);
+		assertEquals(TransformLayerController.END_DELAY, mCallback.pendingDelay);
+		mController.onIdleCheck(10 + TransformLayerController.END_DELAY - 1);
+		assertTrue(mController.isPromoted());
+		mController.onIdleCheck(10 + TransformLayerController.END_DELAY);
+		assertFalse(mController.isPromoted());
+	}
+
+	@Test
+	public void transformAfterEndKeepsLayer() {
+		mController.onTransform(0);
+		mController.onTransformEnd(10);
+		mController.onTransform(20);		//spring back follows the drag
+		mController.onIdleCheck(10 + TransformLayerController.END_DELAY);
+		assertTrue(mController.isPromoted());
+		assertEquals(1, mController.getPromotions());
+		mController.onIdleCheck(20 + TransformLayerController.IDLE_DELAY);
+		assertFalse(mController.isPromoted());
+	}
+
+	@Test
+	public void promotesAgainAfterDemote() {
+		mController.onTransform(0);
+		mController.demote(50);
+		mController.onTransform(200);
+		assertTrue(mController.isPromoted());
+		assertEquals(2, mController.getPromotions());
+		assertEquals(50 + 30, mController.getPromotedTime(230));
+	}
+
+	@Test
+	public void ignoresTransformWhenDisabled() {
+		mController.setEnabled(false, 0);
+		mController.onTransform(0);
+		mController.onTransformEnd(10);
+		assertFalse(mController.isPromoted());
+		assertTrue(mCallback.events.isEmpty());
+		assertEquals(0, mController.getPromotedFrames());
+	}
+
+	@Test
+	public void disablingDemotes() {
+		mController.onTransform(0);
+		mController.setEnabled(false, 40);
+		assertFalse(mController.isPromoted());
+		assertFalse(mController.isEnabled());
+		assertEquals("demote", mCallback.events.get(1));
+		assertEquals(40, mController.getPromotedTime(100));
+	}
+
+	@Test
+	public void lateIdleCheckAfterDemoteDoesNothing() {
+		mController.onTransform(0);
+		mController.demote(10);
+		mController.onIdleCheck(TransformLayerController.IDLE_DELAY);
+		mController.onTransformEnd(120);
+		assertEquals(2, mCallback.events.size());
+	}
+}
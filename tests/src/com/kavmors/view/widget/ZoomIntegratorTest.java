@@ -0,0 +1,79 @@
+package com.kavmors.view.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Scale of {@link ZoomIntegrator} must not depend on how a gesture is split into events or frames.
+ */
+public class ZoomIntegratorTest {
+	private static final float WEIGHT = 100f;		//pixels that double scale, at density 1
+
+	@Test
+	public void scaleDoesNotDependOnEventRate() {
+		ZoomIntegrator whole = new ZoomIntegrator(WEIGHT, 1f);
+		float one = whole.add(0, 150);
+		ZoomIntegrator split = new ZoomIntegrator(WEIGHT, 1f);
+		float product = 1f;
+		for (int i = 1; i <= 1500; i++) {
+			product *= split.add(i, 0.1f);
+		}
+		assertEquals(Math.pow(2, 1.5), one, 1e-5);
+		assertEquals(one, product, 1e-4);
+	}
+
+	@Test
+	public void roundingDoesNotAddUp() {
+		ZoomIntegrator integrator = new ZoomIntegrator(WEIGHT, 1f);
+		float product = 1f;
+		for (int i = 0; i < 20000; i++) {
+			product *= integrator.add(i, i % 2 == 0? 0.37f: -0.37f);		//back and forth, ends where it starts
+		}
+		assertEquals(1f, product, 1e-5);
+	}
+
+	@Test
+	public void momentumDoesNotDependOnFrameRate() {
+		double[] totals = new double[3];
+		long[] intervals = {8, 16, 33};
+		for (int i = 0; i < intervals.length; i++) {
+			ZoomIntegrator integrator = swipe();
+			assertTrue(integrator.startMomentum(100));
+			double product = 1;
+			long time = 100;
+			while (!integrator.isMomentumFinished(time)) {
+				time += intervals[i];
+				product *= integrator.momentumStep(time);
+			}
+			totals[i] = product;
+		}
+		//v / k in log2 scale, v is 2 log2 scale per second
+		double expected = Math.pow(2, 2 / ZoomIntegrator.DECELERATION);
+		for (int i = 0; i < totals.length; i++) {
+			assertEquals(expected, totals[i], expected * 0.005);
+		}
+	}
+
+	@Test
+	public void noMomentumForSlowOrStaleGesture() {
+		ZoomIntegrator slow = new ZoomIntegrator(WEIGHT, 1f);
+		for (long time = 0; time <= 100; time += 10) {
+			slow.add(time, 0.01f);
+		}
+		assertFalse(slow.startMomentum(100));
+		ZoomIntegrator stale = swipe();
+		assertFalse(stale.startMomentum(100 + TouchPredictor.WINDOW + 1));
+	}
+
+	//Zoom in at 2 log2 scale per second, released at 100ms
+	private static ZoomIntegrator swipe() {
+		ZoomIntegrator integrator = new ZoomIntegrator(WEIGHT, 1f);
+		for (long time = 0; time <= 100; time += 10) {
+			integrator.add(time, time == 0? 0: 2 * WEIGHT * 10 / 1000f);
+		}
+		return integrator;
+	}
+}
@@ -0,0 +1,116 @@
+package com.kavmors.view.widget;
+
+import java.util.Random;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+
+/**
+ * Benchmark of drawing an {@link ImageOverlay} of many items in frames of a pinch, from the whole image in view
+ * to zoomed in far. Each frame queries the spatial grid for items in view and maps them by one mapPoints call,
+ * the same as {@link GestureImageView} does. It is compared with mapping every item in each frame.
+ * Matrix and RectF are of the framework, so it runs on a device, e.g. with classes of src and this file dexed
+ * into bench.jar:
+ * <pre>
+ * adb push bench.jar /data/local/tmp
+ * adb shell CLASSPATH=/data/local/tmp/bench.jar app_process / com.kavmors.view.widget.OverlayBenchmark [items]
+ * </pre>
+ */
+public class OverlayBenchmark {
+	private static final int IMAGE_SIZE = 8192;		//square image in pixels
+	private static final int VIEW_WIDTH = 1080, VIEW_HEIGHT = 1920;
+	private static final int STEPS = 12;		//scales of the pinch, evenly in log scale
+	private static final float MAX_SCALE = 8f;
+	private static final float MARGIN = 24;		//half size of a marker icon
+	private static final long RUN_NANOS = 200000000L;		//time of each measurement
+
+	private static int sDrawn;		//items drawn, kept so drawing is not optimized out
+
+	public static void main(String[] args) {
+		int count = args.length > 0? Integer.parseInt(args[0]): 20000;
+		ImageOverlay<Integer> overlay = new ImageOverlay<Integer>() {
+			@Override
+			protected void onDrawItem(Canvas canvas, Integer item, RectF rect) {
+				sDrawn++;
+			}
+		};
+		overlay.setMargin(MARGIN);
+		//markers at points, and one in ten items covers a region
+		float[] corners = new float[count * 4];
+		Random random = new Random(42);
+		for (int i = 0; i < count; i++) {
+			float x = random.nextFloat() * IMAGE_SIZE, y = random.nextFloat() * IMAGE_SIZE;
+			float size = i % 10 == 0? 20 + random.nextFloat() * 200: 0;
+			overlay.add(i, x, y, x + size, y + size);
+			corners[i * 4] = x;
+			corners[i * 4 + 1] = y;
+			corners[i * 4 + 2] = x + size;
+			corners[i * 4 + 3] = y + size;
+		}
+		float[] mapped = new float[corners.length];
+
+		Matrix matrix = new Matrix();
+		Matrix inverse = new Matrix();
+		float fitScale = (float) VIEW_WIDTH / IMAGE_SIZE;
+		System.out.println(count + " items over " + IMAGE_SIZE + "x" + IMAGE_SIZE + ", view " + VIEW_WIDTH + "x" + VIEW_HEIGHT);
+		System.out.println(String.format("%8s %8s %12s %12s", "scale", "visible", "grid us", "all us"));
+		for (int step = 0; step <= STEPS; step++) {
+			float scale = (float) (fitScale * Math.pow(MAX_SCALE / fitScale, (double) step / STEPS));
+			//zoom at the center of image, kept at the center of view
+			matrix.setTranslate(-IMAGE_SIZE / 2f, -IMAGE_SIZE / 2f);
+			matrix.postScale(scale, scale);
+			matrix.postTranslate(VIEW_WIDTH / 2f, VIEW_HEIGHT / 2f);
+			matrix.invert(inverse);
+
+			sDrawn = 0;
+			overlay.draw(null, matrix, inverse, 0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+			int visible = sDrawn;
+			double grid = nanosPerFrame(overlay, matrix, inverse) / 1000;
+			double all = nanosPerFrame(matrix, corners, mapped) / 1000;
+			System.out.println(String.format("%8.3f %8d %12.1f %12.1f", scale, visible, grid, all));
+		}
+	}
+
+	//Frame of overlay: query the grid, map visible items and draw them
+	private static double nanosPerFrame(ImageOverlay<Integer> overlay, Matrix matrix, Matrix inverse) {
+		for (int round = 0; round < 2; round++) {		//the first round warms up
+			long frames = 0;
+			long start = System.nanoTime();
+			long elapsed;
+			do {
+				overlay.draw(null, matrix, inverse, 0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+				frames++;
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < RUN_NANOS);
+			if (round == 1) {
+				return (double) elapsed / frames;
+			}
+		}
+		return 0;
+	}
+
+	//Frame without index: map every item, then draw those in view
+	private static double nanosPerFrame(Matrix matrix, float[] corners, float[] mapped) {
+		for (int round = 0; round < 2; round++) {
+			long frames = 0;
+			long start = System.nanoTime();
+			long elapsed;
+			do {
+				matrix.mapPoints(mapped, 0, corners, 0, corners.length / 2);
+				for (int i = 0; i < mapped.length; i += 4) {
+					if (mapped[i + 2] >= -MARGIN && mapped[i] <= VIEW_WIDTH + MARGIN
+							&& mapped[i + 3] >= -MARGIN && mapped[i + 1] <= VIEW_HEIGHT + MARGIN) {
+						sDrawn++;
+					}
+				}
+				frames++;
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < RUN_NANOS);
+			if (round == 1) {
+				return (double) elapsed / frames;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,138 @@
+package com.kavmors.view.widget.tools;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.kavmors.view.widget.DecoderPool;
+
+/**
+ * Benchmark of tiles decoded per second by {@link DecoderPool} with 1, 2, 4 and 8 decoders, on a server JVM.
+ * An ImageIO reader stands in for BitmapRegionDecoder: it decodes one region at a time, and a region decode
+ * parses the entropy-coded data again, so it scales by decoders in the same way.
+ * <pre>
+ * java com.kavmors.view.widget.tools.DecoderPoolBenchmark [image.jpg]
+ * </pre>
+ * Without an image, a 4096x3072 JPEG is generated in the temporary directory.
+ */
+public class DecoderPoolBenchmark {
+	private static final int TILE_SIZE = 512;		//same as ImageSourceDrawable
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) throws Exception {
+		final File file = args.length > 0? new File(args[0]): generate();
+		ImageReader probe = openReader(file);
+		int width = probe.getWidth(0), height = probe.getHeight(0);
+		closeReader(probe);
+		ArrayList<Rectangle> tiles = new ArrayList<Rectangle>();
+		for (int y = 0; y < height; y += TILE_SIZE) {
+			for (int x = 0; x < width; x += TILE_SIZE) {
+				tiles.add(new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y)));
+			}
+		}
+		System.out.println(file + ": " + width + "x" + height + ", " + tiles.size() + " tiles, "
+				+ Runtime.getRuntime().availableProcessors() + " cores");
+
+		int[] counts = {1, 2, 4, 8};
+		double base = 0;
+		for (int count : counts) {
+			DecoderPool<ImageReader> pool = new DecoderPool<ImageReader>(new DecoderPool.Factory<ImageReader>() {
+				@Override
+				public ImageReader create() throws IOException {
+					return openReader(file);
+				}
+
+				@Override
+				public void recycle(ImageReader decoder) {
+					closeReader(decoder);
+				}
+			}, count);
+			ExecutorService executor = Executors.newFixedThreadPool(count);
+			decodeAll(pool, executor, tiles);		//warm up, and create decoders
+			long start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++) {
+				decodeAll(pool, executor, tiles);
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			executor.shutdown();
+			pool.close();
+			double rate = tiles.size() * ROUNDS / seconds;
+			if (base == 0) {
+				base = rate;
+			}
+			System.out.println(String.format("%d decoders: %.1f tiles/s, %.2fx", count, rate, rate / base));
+		}
+	}
+
+	private static void decodeAll(final DecoderPool<ImageReader> pool, ExecutorService executor,
+			ArrayList<Rectangle> tiles) throws Exception {
+		ArrayList<Future<BufferedImage>> results = new ArrayList<Future<BufferedImage>>();
+		for (final Rectangle tile : tiles) {
+			results.add(executor.submit(new Callable<BufferedImage>() {
+				@Override
+				public BufferedImage call() throws IOException {
+					ImageReader reader = pool.acquire();
+					try {
+						ImageReadParam param = reader.getDefaultReadParam();
+						param.setSourceRegion(tile);
+						return reader.read(0, param);
+					} finally {
+						pool.release(reader);
+					}
+				}
+			}));
+		}
+		for (Future<BufferedImage> result : results) {
+			result.get();
+		}
+	}
+
+	private static ImageReader openReader(File file) throws IOException {
+		ImageInputStream stream = ImageIO.createImageInputStream(file);
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+		if (!readers.hasNext()) {
+			stream.close();
+			throw new IOException("Unsupported image " + file);
+		}
+		ImageReader reader = readers.next();
+		reader.setInput(stream, true);
+		return reader;
+	}
+
+	private static void closeReader(ImageReader reader) {
+		Object input = reader.getInput();
+		reader.dispose();
+		if (input instanceof ImageInputStream) {
+			try {
+				((ImageInputStream) input).close();
+			} catch (IOException e) {
+				//ignore
+			}
+		}
+	}
+
+	private static File generate() throws IOException {
+		int width = 4096, height = 3072;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, ((x * 7) ^ (y * 3)) & 0xffffff);
+			}
+		}
+		File file = new File(System.getProperty("java.io.tmpdir"), "decoder-pool-benchmark.jpg");
+		ImageIO.write(image, "jpeg", file);
+		return file;
+	}
+}
@@ -0,0 +1,207 @@
+package com.kavmors.view.widget.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.kavmors.view.widget.ImageHeaderParser;
+
+/**
+ * Benchmark of {@link ImageHeaderParser} against reading bounds and decoding by ImageIO, on a server JVM.
+ * An ImageIO reader stands in for BitmapFactory: reading width and height by it is like decoding with
+ * inJustDecodeBounds, and ImageIO.read is like a full decode. Build it with ImageHeaderParser and TilePyramid of src.
+ * <pre>
+ * java com.kavmors.view.widget.tools.ImageHeaderParserBenchmark [image...]
+ * </pre>
+ * Without images, a corpus of JPEG with EXIF, PNG, GIF and WebP headers is generated in memory.
+ */
+public class ImageHeaderParserBenchmark {
+	private static final long RUN_NANOS = 1000000000L;		//time of each measurement
+
+	private static volatile Object sSink;		//keeps results alive, so calls are not optimized out
+
+	private interface Probe {
+		Object run(byte[] data) throws IOException;
+	}
+
+	public static void main(String[] args) throws IOException {
+		ArrayList<String> names = new ArrayList<String>();
+		ArrayList<byte[]> corpus = new ArrayList<byte[]>();
+		if (args.length > 0) {
+			for (String arg : args) {
+				names.add(new File(arg).getName());
+				corpus.add(readFile(new File(arg)));
+			}
+		} else {
+			generate(names, corpus);
+		}
+
+		Probe stream = new Probe() {
+			@Override
+			public Object run(byte[] data) throws IOException {
+				return ImageHeaderParser.parse(new ByteArrayInputStream(data));
+			}
+		};
+		Probe positional = new Probe() {
+			@Override
+			public Object run(final byte[] data) throws IOException {
+				return ImageHeaderParser.parse(new ImageHeaderParser.ByteSource() {
+					@Override
+					public int read(long position, byte[] buffer, int offset, int count) {
+						if (position >= data.length) {
+							return -1;
+						}
+						count = (int) Math.min(count, data.length - position);
+						System.arraycopy(data, (int) position, buffer, offset, count);
+						return count;
+					}
+				});
+			}
+		};
+		Probe bounds = new Probe() {
+			@Override
+			public Object run(byte[] data) throws IOException {
+				ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data));
+				try {
+					Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+					if (!readers.hasNext()) {
+						return null;
+					}
+					ImageReader reader = readers.next();
+					try {
+						reader.setInput(in, true);
+						return reader.getWidth(0) + "x" + reader.getHeight(0);
+					} finally {
+						reader.dispose();
+					}
+				} finally {
+					in.close();
+				}
+			}
+		};
+		Probe decode = new Probe() {
+			@Override
+			public Object run(byte[] data) throws IOException {
+				return ImageIO.read(new ByteArrayInputStream(data));
+			}
+		};
+
+		System.out.println(String.format("%-12s %10s %12s %12s %12s %12s", "image", "bytes",
+				"stream ns", "position ns", "bounds ns", "decode ns"));
+		for (int i = 0; i < corpus.size(); i++) {
+			byte[] data = corpus.get(i);
+			ImageHeaderParser.Header header = ImageHeaderParser.parse(new ByteArrayInputStream(data));
+			System.out.println(String.format("%-12s %10d %12.0f %12.0f %12s %12s  %s", names.get(i), data.length,
+					measure(stream, data), measure(positional, data), format(bounds, data), format(decode, data), header));
+		}
+	}
+
+	//Nanoseconds per call, after a warm up of the same length
+	private static double measure(Probe probe, byte[] data) throws IOException {
+		for (int round = 0; round < 2; round++) {
+			long count = 0;
+			long start = System.nanoTime();
+			long elapsed;
+			do {
+				sSink = probe.run(data);
+				count++;
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < RUN_NANOS);
+			if (round == 1) {
+				return (double) elapsed / count;
+			}
+		}
+		return 0;
+	}
+
+	//ImageIO has no reader of some formats, such as WebP
+	private static String format(Probe probe, byte[] data) throws IOException {
+		if (probe.run(data) == null) {
+			return "-";
+		}
+		return String.format("%.0f", measure(probe, data));
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] data = new byte[(int) in.length()];
+			in.readFully(data);
+			return data;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void generate(ArrayList<String> names, ArrayList<byte[]> corpus) throws IOException {
+		BufferedImage photo = pattern(3264, 2448);
+		byte[] jpeg = encode(photo, "jpeg");
+		names.add("photo.jpg");
+		corpus.add(insertExif(jpeg, 6));
+		names.add("photo.png");
+		corpus.add(encode(pattern(1600, 1200), "png"));
+		names.add("anim.gif");
+		corpus.add(encode(pattern(480, 360), "gif"));
+		names.add("photo.webp");
+		corpus.add(webpHeader(3264, 2448));
+	}
+
+	private static BufferedImage pattern(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, ((x * 7) ^ (y * 3)) & 0xffffff);
+			}
+		}
+		return image;
+	}
+
+	private static byte[] encode(BufferedImage image, String format) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (!ImageIO.write(image, format, out)) {
+			throw new IOException("No writer of " + format);
+		}
+		return out.toByteArray();
+	}
+
+	//Put an APP1 segment of EXIF with orientation after SOI, as cameras write it
+	private static byte[] insertExif(byte[] jpeg, int orientation) {
+		byte[] app1 = {
+				(byte) 0xff, (byte) 0xe1, 0, 34,
+				'E', 'x', 'i', 'f', 0, 0,
+				'M', 'M', 0, 42, 0, 0, 0, 8,		//TIFF header, IFD0 at 8
+				0, 1,		//one entry
+				0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,		//orientation, SHORT
+				0, 0, 0, 0		//no next IFD
+		};
+		byte[] result = new byte[jpeg.length + app1.length];
+		System.arraycopy(jpeg, 0, result, 0, 2);
+		System.arraycopy(app1, 0, result, 2, app1.length);
+		System.arraycopy(jpeg, 2, result, 2 + app1.length, jpeg.length - 2);
+		return result;
+	}
+
+	//Header of an extended WebP, followed by an empty image chunk
+	private static byte[] webpHeader(int width, int height) {
+		byte[] data = new byte[64];
+		byte[] magic = {'R', 'I', 'F', 'F', 56, 0, 0, 0, 'W', 'E', 'B', 'P', 'V', 'P', '8', 'X', 10, 0, 0, 0};
+		System.arraycopy(magic, 0, data, 0, magic.length);
+		int w = width - 1, h = height - 1;
+		data[24] = (byte) w;
+		data[25] = (byte) (w >> 8);
+		data[26] = (byte) (w >> 16);
+		data[27] = (byte) h;
+		data[28] = (byte) (h >> 8);
+		data[29] = (byte) (h >> 16);
+		return data;
+	}
+}
@@ -0,0 +1,142 @@
+package com.kavmors.view.widget.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import com.kavmors.view.widget.TilePyramid;
+import com.kavmors.view.widget.TilePyramidBuilder;
+
+/**
+ * Command line tool that prepares {@link TilePyramid} containers of images on a server JVM, to be opened by
+ * {@link com.kavmors.view.widget.TilePyramidSource}. Build it with the classes of src that have no Android
+ * dependency: TilePyramid, TilePyramidWriter and TilePyramidBuilder.
+ * <pre>
+ * java com.kavmors.view.widget.tools.PyramidTool [-threads n] [-tile size] [-jpeg quality] -out dir image...
+ * </pre>
+ */
+public class PyramidTool {
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int tileSize = 512;
+		float quality = -1;		//-1 for lossless deflate
+		File outDir = null;
+		ArrayList<File> inputs = new ArrayList<File>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-tile")) {
+				tileSize = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-jpeg")) {
+				quality = Integer.parseInt(args[++i]) / 100f;
+			} else if (args[i].equals("-out")) {
+				outDir = new File(args[++i]);
+			} else {
+				inputs.add(new File(args[i]));
+			}
+		}
+		if (outDir == null || inputs.isEmpty()) {
+			System.err.println("Usage: PyramidTool [-threads n] [-tile size] [-jpeg quality] -out dir image...");
+			System.exit(2);
+		}
+		if (!outDir.isDirectory() && !outDir.mkdirs()) {
+			throw new IOException("Cannot create " + outDir);
+		}
+
+		TilePyramidBuilder builder = new TilePyramidBuilder(threads);
+		builder.setTileSize(tileSize);
+		if (quality >= 0) {
+			builder.setEncoder(new JpegEncoder(quality));
+		}
+		long pixels = 0, millis = 0;
+		try {
+			for (File input : inputs) {
+				BufferedImage image = ImageIO.read(input);		//whole image is decoded, tiles are read from it
+				if (image == null) {
+					System.err.println(input + ": unsupported format");
+					continue;
+				}
+				File output = new File(outDir, input.getName() + ".tpyr");
+				TilePyramidBuilder.Report report = builder.build(new ImageSource(image), output);
+				System.out.println(output + ": " + report);
+				pixels += report.pixels;
+				millis += report.millis;
+			}
+		} finally {
+			builder.shutdown();
+		}
+		System.out.println(String.format("total %.1f MP, %.2f MP/s with %d threads",
+				pixels / 1e6, pixels / 1e6 / Math.max(1, millis) * 1000, threads));
+	}
+
+	//Pixels of a decoded image, which can be read by several threads at once
+	private static class ImageSource implements TilePyramidBuilder.Source {
+		final BufferedImage image;
+
+		ImageSource(BufferedImage image) {
+			this.image = image;
+		}
+
+		@Override
+		public int getWidth() {
+			return image.getWidth();
+		}
+
+		@Override
+		public int getHeight() {
+			return image.getHeight();
+		}
+
+		@Override
+		public void read(int x, int y, int width, int height, int[] out, int offset, int stride) {
+			image.getRGB(x, y, width, height, out, offset, stride);
+		}
+	}
+
+	//Lossy tiles by ImageIO, for photos that are large in deflate
+	private static class JpegEncoder implements TilePyramidBuilder.Encoder {
+		final float quality;
+
+		JpegEncoder(float quality) {
+			this.quality = quality;
+		}
+
+		@Override
+		public int getCodec() {
+			return TilePyramid.CODEC_JPEG;
+		}
+
+		@Override
+		public byte[] encode(int[] argb, int offset, int stride, int width, int height) throws IOException {
+			BufferedImage tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			tile.setRGB(0, 0, width, height, argb, offset, stride);
+			Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+			if (!writers.hasNext()) {
+				throw new IOException("No JPEG writer");
+			}
+			ImageWriter writer = writers.next();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes);
+			try {
+				ImageWriteParam param = writer.getDefaultWriteParam();
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(quality);
+				writer.setOutput(out);
+				writer.write(null, new IIOImage(tile, null, null), param);
+			} finally {
+				writer.dispose();
+				out.close();
+			}
+			return bytes.toByteArray();
+		}
+	}
+}